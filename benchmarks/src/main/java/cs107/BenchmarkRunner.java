@@ -0,0 +1,47 @@
+package cs107;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the options of the JMH command line, always adding the gc profiler,
+ * so that the allocation rate is reported next to the throughput.
+ * <p>
+ * For instance, from the root of the project:
+ * <pre>
+ * mvn package
+ * java -jar benchmarks/target/benchmarks.jar Thinning -p image=1_1,7_3
+ * </pre>
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {}
+
+    public static void main(String[] args) throws Exception {
+
+        final CommandLineOptions COMMAND_LINE = new CommandLineOptions(args);
+
+        // the listing and help options print and exit, as with the usual JMH main class
+        if (COMMAND_LINE.shouldHelp() || COMMAND_LINE.shouldList() || COMMAND_LINE.shouldListWithParams()
+                || COMMAND_LINE.shouldListProfilers() || COMMAND_LINE.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        final Options OPTIONS = new OptionsBuilder()
+                .parent(COMMAND_LINE)
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        try {
+            new Runner(OPTIONS).run();
+        } catch (RunnerException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
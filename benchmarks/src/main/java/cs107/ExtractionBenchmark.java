@@ -0,0 +1,55 @@
+package cs107;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Benchmarks the extraction of the minutiae from the skeletons, and the orientation of a single
+ * minutia.
+ */
+public class ExtractionBenchmark extends BenchmarkDefaults {
+
+    /**
+     * The buffers reused by the bit-packed variants, as {@link Fingerprint#extract(BinaryImage)} does.
+     */
+    @State(Scope.Thread)
+    public static class Buffers {
+        final ConnectedPixels window = new ConnectedPixels();
+        final OrientationEstimator estimator = new OrientationEstimator();
+    }
+
+    @Benchmark
+    public boolean[][] connectedPixels(FingerprintState state) {
+        return Fingerprint.connectedPixels(state.thinned, state.row, state.col, Fingerprint.ORIENTATION_DISTANCE);
+    }
+
+    @Benchmark
+    public int connectedPixelsBinaryImage(FingerprintState state, Buffers buffers) {
+        return Fingerprint.connectedPixels(state.thinnedImage, state.row, state.col,
+                Fingerprint.ORIENTATION_DISTANCE, buffers.window);
+    }
+
+    @Benchmark
+    public int computeOrientation(FingerprintState state) {
+        return Fingerprint.computeOrientation(state.thinned, state.row, state.col, Fingerprint.ORIENTATION_DISTANCE);
+    }
+
+    @Benchmark
+    public int computeOrientationBinaryImage(FingerprintState state, Buffers buffers) {
+        return Fingerprint.computeOrientation(state.thinnedImage, state.row, state.col,
+                Fingerprint.ORIENTATION_DISTANCE, buffers.estimator);
+    }
+
+    @Benchmark
+    public List<int[]> extract(FingerprintState state) {
+        return Fingerprint.extract(state.thinned);
+    }
+
+    @Benchmark
+    public MinutiaeSet extractBinaryImage(FingerprintState state) {
+        return Fingerprint.extract(state.thinnedImage);
+    }
+}
@@ -0,0 +1,78 @@
+package cs107;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * A fingerprint of resources/fingerprints at every stage of the pipeline, computed once per trial
+ * so that each benchmark only measures its own stage.
+ * <p>
+ * The benchmarks run on the first impression of every finger by default, any other image being
+ * chosen with <code>-p image=...</code>.
+ *
+ * @see PairState
+ */
+@State(Scope.Benchmark)
+public class FingerprintState {
+
+    /**
+     * The directory of the images, relative to the directory the benchmarks are run from.
+     */
+    @Param("resources/fingerprints")
+    public String directory;
+
+    /**
+     * The name of the image, without its extension.
+     */
+    @Param({"1_1", "2_1", "3_1", "4_1", "5_1", "6_1", "7_1", "8_1",
+            "9_1", "10_1", "11_1", "12_1", "13_1", "14_1", "15_1", "16_1"})
+    public String image;
+
+    // the image, as read and as binarized
+    String path;
+    int[][] argb;
+    boolean[][] binary;
+    BinaryImage binaryImage;
+
+    // the skeleton and its minutiae
+    boolean[][] thinned;
+    BinaryImage thinnedImage;
+    List<int[]> minutiae;
+    MinutiaeSet minutiaeSet;
+
+    // the minutia whose orientation is computed
+    int row;
+    int col;
+
+    @Setup
+    public void setUp() {
+
+        path = directory + "/" + image + ".png";
+        argb = Helper.readARGB(path);
+
+        if (argb == null) {
+            throw new IllegalStateException("cannot read the image: " + path);
+        }
+
+        binary = Helper.toBinary(argb);
+        binaryImage = BinaryImage.fromArray(binary);
+
+        thinned = Fingerprint.thin(binary);
+        thinnedImage = BinaryImage.fromArray(thinned);
+        minutiae = Fingerprint.extract(thinned);
+        minutiaeSet = MinutiaeSet.fromList(minutiae);
+
+        if (minutiae.isEmpty()) {
+            throw new IllegalStateException("no minutia in the image: " + path);
+        }
+
+        // a minutia of the middle of the list, rather than one of the border of the image
+        final int[] MINUTIA = minutiae.get(minutiae.size() / 2);
+        row = MINUTIA[0];
+        col = MINUTIA[1];
+    }
+}
@@ -0,0 +1,24 @@
+package cs107;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Benchmarks the reading and the binarization of the images.
+ */
+public class ImageBenchmark extends BenchmarkDefaults {
+
+    @Benchmark
+    public boolean[][] readBinary(FingerprintState state) {
+        return Helper.readBinary(state.path);
+    }
+
+    @Benchmark
+    public boolean[][] toBinary(FingerprintState state) {
+        return Helper.toBinary(state.argb);
+    }
+
+    @Benchmark
+    public BinaryImage toBinaryImage(FingerprintState state) {
+        return Helper.toBinaryImage(state.argb);
+    }
+}
@@ -0,0 +1,41 @@
+package cs107;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.util.List;
+
+/**
+ * Benchmarks the comparison of the minutiae of two fingerprints, of the same finger or not: a
+ * single alignment, the count of the overlapping minutiae once aligned, and the whole search of
+ * {@link Fingerprint#match}.
+ */
+public class MatchingBenchmark extends BenchmarkDefaults {
+
+    @Benchmark
+    public List<int[]> applyTransformation(PairState state) {
+        return Fingerprint.applyTransformation(state.otherMinutiae, state.centerRow, state.centerCol,
+                state.rowTranslation, state.colTranslation, state.rotation);
+    }
+
+    @Benchmark
+    public int matchingMinutiaeCount(PairState state) {
+        return Fingerprint.matchingMinutiaeCount(state.minutiae, state.transformedMinutiae,
+                Fingerprint.DISTANCE_THRESHOLD, Fingerprint.ORIENTATION_THRESHOLD);
+    }
+
+    @Benchmark
+    public int matchingMinutiaeCountMinutiaeSet(PairState state) {
+        return Fingerprint.matchingMinutiaeCount(state.minutiaeSet, state.transformedMinutiaeSet,
+                Fingerprint.DISTANCE_THRESHOLD, Fingerprint.ORIENTATION_THRESHOLD);
+    }
+
+    @Benchmark
+    public boolean match(PairState state) {
+        return Fingerprint.match(state.minutiae, state.otherMinutiae);
+    }
+
+    @Benchmark
+    public boolean matchHough(PairState state) {
+        return Fingerprint.match(state.minutiaeSet, state.otherMinutiaeSet, Fingerprint.AlignmentMode.HOUGH);
+    }
+}
@@ -0,0 +1,100 @@
+package cs107;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * A fingerprint of resources/fingerprints and a second one to compare it with.
+ * <p>
+ * The second fingerprint is the second impression of the same finger for the genuine pairs,
+ * which {@link Fingerprint#match} accepts as soon as an alignment reaches the threshold, and of
+ * the next finger for the impostor pairs, which dominate an identification and for which every
+ * alignment is tried.
+ * <p>
+ * The second fingerprint is also moved onto the first one with the alignment of
+ * {@link Fingerprint#match} having the most overlapping minutiae, so that the counts measure
+ * the work of an alignment which finds matches for the genuine pairs, and few for the impostors.
+ */
+@State(Scope.Benchmark)
+public class PairState extends FingerprintState {
+
+    /**
+     * Whether the second fingerprint is of the same finger, <code>genuine</code>, or of the next
+     * one, <code>impostor</code>.
+     */
+    @Param({"genuine", "impostor"})
+    public String pair;
+
+    // the second fingerprint
+    List<int[]> otherMinutiae;
+    MinutiaeSet otherMinutiaeSet;
+
+    // the best alignment of a minutia of the second fingerprint on one of the first, as tried by match
+    int centerRow;
+    int centerCol;
+    int rowTranslation;
+    int colTranslation;
+    int rotation;
+
+    // the second fingerprint moved by the alignment
+    List<int[]> transformedMinutiae;
+    MinutiaeSet transformedMinutiaeSet;
+
+    @Setup
+    public void setUpPair() {
+
+        final int FINGER = Integer.parseInt(image.substring(0, image.indexOf('_')));
+        final int OTHER_FINGER = pair.equals("genuine") ? FINGER : FINGER % 16 + 1;
+
+        final String OTHER_PATH = directory + "/" + OTHER_FINGER + "_2.png";
+        final boolean[][] OTHER = Helper.readBinary(OTHER_PATH);
+
+        if (OTHER == null) {
+            throw new IllegalStateException("cannot read the image: " + OTHER_PATH);
+        }
+
+        otherMinutiae = Fingerprint.extract(Fingerprint.thin(OTHER));
+        otherMinutiaeSet = MinutiaeSet.fromList(otherMinutiae);
+
+        if (otherMinutiae.isEmpty()) {
+            throw new IllegalStateException("no minutia in the image: " + OTHER_PATH);
+        }
+
+        // tries every alignment of match, moving the second fingerprint around a minutia of the first one
+        final MinutiaeGrid GRID = new MinutiaeGrid(minutiaeSet, Fingerprint.DISTANCE_THRESHOLD);
+        final MinutiaeSet TRANSFORMED = new MinutiaeSet(otherMinutiaeSet.size());
+        int best = -1;
+
+        for (int[] minutia : minutiae) {
+            for (int[] otherMinutia : otherMinutiae) {
+                for (int offset = -Fingerprint.MATCH_ANGLE_OFFSET; offset <= Fingerprint.MATCH_ANGLE_OFFSET; offset++) {
+
+                    final int ROTATION = minutia[2] - otherMinutia[2] + offset;
+                    otherMinutiaeSet.transformInto(TRANSFORMED, minutia[0], minutia[1], otherMinutia[0] - minutia[0],
+                            otherMinutia[1] - minutia[1], ROTATION);
+
+                    final int COUNT = GRID.countMatches(TRANSFORMED, Fingerprint.DISTANCE_THRESHOLD,
+                            Fingerprint.ORIENTATION_THRESHOLD);
+
+                    // ...and keeps the one with the most overlapping minutiae
+                    if (COUNT > best) {
+                        best = COUNT;
+                        centerRow = minutia[0];
+                        centerCol = minutia[1];
+                        rowTranslation = otherMinutia[0] - minutia[0];
+                        colTranslation = otherMinutia[1] - minutia[1];
+                        rotation = ROTATION;
+                    }
+                }
+            }
+        }
+
+        transformedMinutiae = Fingerprint.applyTransformation(otherMinutiae, centerRow, centerCol, rowTranslation,
+                colTranslation, rotation);
+        transformedMinutiaeSet = MinutiaeSet.fromList(transformedMinutiae);
+    }
+}
@@ -0,0 +1,19 @@
+package cs107;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Benchmarks the thinning of the binarized images.
+ */
+public class ThinningBenchmark extends BenchmarkDefaults {
+
+    @Benchmark
+    public boolean[][] thin(FingerprintState state) {
+        return Fingerprint.thin(state.binary);
+    }
+
+    @Benchmark
+    public BinaryImage thinBinaryImage(FingerprintState state) {
+        return Fingerprint.thin(state.binaryImage);
+    }
+}
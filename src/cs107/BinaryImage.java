@@ -0,0 +1,298 @@
+package cs107;
+
+import java.util.Arrays;
+
+/**
+ * Binary image storing 64 pixels per <code>long</code>.
+ * <p>
+ * The pixels are stored row by row: each row starts on a new word and the pixel in
+ * column <code>col</code> is stored in bit <code>col % 64</code> of the word <code>col / 64</code>
+ * of that row. A set bit (<code>1</code>) is a black pixel, a cleared bit (<code>0</code>) a white pixel.
+ * <p>
+ * The bits past the last column of each row are always kept cleared, so that whole words can be
+ * compared and counted without any masking.
+ */
+public final class BinaryImage {
+
+    // the number of pixels stored in each word
+    static final int WORD_SIZE = 64;
+
+    // the number of bits to shift a column by to get the index of its word
+    static final int ADDRESS_BITS = 6;
+
+    // the mask giving the position of a column inside its word
+    static final int BIT_INDEX_MASK = WORD_SIZE - 1;
+
+    // the dimensions of the image
+    private final int height;
+    private final int width;
+
+    // the number of words used to store each row of the image
+    private final int wordsPerRow;
+
+    // the pixels of the image, row-major
+    private final long[] words;
+
+    /**
+     * Creates a new, entirely white, image
+     * @param height number of rows in the image
+     * @param width number of columns in the image
+     * @throws IllegalArgumentException if either of the dimensions is negative
+     */
+    public BinaryImage(int height, int width) {
+
+        // checks the dimensions of the image are valid
+        if (height < 0 || width < 0) {
+            String errorMessage = String.format("Invalid image dimensions ! height and width must be positive" +
+                    " current dimensions: height = %s width = %s", height, width);
+            throw new IllegalArgumentException(errorMessage);
+        }
+
+        this.height = height;
+        this.width = width;
+        this.wordsPerRow = (width + WORD_SIZE - 1) >>> ADDRESS_BITS;
+        this.words = new long[height * wordsPerRow];
+    }
+
+    // region adapters
+
+    /**
+     * Creates a bit-packed copy of an image
+     * @param image array containing each pixel's boolean value
+     * @return the same image, stored 64 pixels per word
+     */
+    public static BinaryImage fromArray(boolean[][] image) {
+
+        // the dimensions of the image
+        final int IMAGE_HEIGHT = image.length;
+        final int IMAGE_WIDTH = IMAGE_HEIGHT == 0 ? 0 : image[0].length;
+
+        BinaryImage binaryImage = new BinaryImage(IMAGE_HEIGHT, IMAGE_WIDTH);
+
+        // loops through every row of pixels in the image...
+        for (int y = 0; y < IMAGE_HEIGHT; y++) {
+
+            // the index of the first word of the row
+            final int ROW_START = y * binaryImage.wordsPerRow;
+
+            // ...and packs each black pixel in its word
+            for (int x = 0; x < IMAGE_WIDTH; x++) {
+                if (image[y][x]) {
+                    binaryImage.words[ROW_START + (x >>> ADDRESS_BITS)] |= 1L << x;
+                }
+            }
+        }
+
+        return binaryImage;
+    }
+
+    /**
+     * Unpacks the image into a new array
+     * @return array containing each pixel's boolean value
+     */
+    public boolean[][] toArray() {
+
+        boolean[][] image = new boolean[height][width];
+
+        // loops through every row of pixels in the image...
+        for (int y = 0; y < height; y++) {
+
+            // the index of the first word of the row
+            final int ROW_START = y * wordsPerRow;
+
+            // ...and unpacks every pixel of that row
+            for (int x = 0; x < width; x++) {
+                image[y][x] = (words[ROW_START + (x >>> ADDRESS_BITS)] & (1L << x)) != 0;
+            }
+        }
+
+        return image;
+    }
+
+    // endregion
+
+    // region accessors
+
+    /**
+     * @return the number of rows in the image
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the number of columns in the image
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the number of words used to store each row of the image
+     */
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    /**
+     * Gives direct access to the packed pixels, used by the thinning kernels.
+     * Callers must keep the bits past the last column of each row cleared.
+     * @return the backing array of the image
+     */
+    long[] words() {
+        return words;
+    }
+
+    /**
+     * Returns true if the coordinates are inside the image
+     * @param row y-coordinates of the pixel
+     * @param col x-coordinates of the pixel
+     * @return whether the pixel exists
+     */
+    public boolean contains(int row, int col) {
+        return row >= 0 && row < height && col >= 0 && col < width;
+    }
+
+    /**
+     * Returns true if the selected pixel is black
+     * @param row y-coordinates of the pixel
+     * @param col x-coordinates of the pixel
+     * @return whether the pixel is black
+     * @throws IndexOutOfBoundsException if the pixel is outside the image
+     */
+    public boolean isBlack(int row, int col) {
+        checkCoordinates(row, col);
+        return (words[row * wordsPerRow + (col >>> ADDRESS_BITS)] & (1L << col)) != 0;
+    }
+
+    /**
+     * Returns true if the selected pixel is black, pixels outside the image being considered white
+     * @param row y-coordinates of the pixel
+     * @param col x-coordinates of the pixel
+     * @return whether the pixel exists and is black
+     */
+    public boolean isBlackOrOutside(int row, int col) {
+        return contains(row, col) && (words[row * wordsPerRow + (col >>> ADDRESS_BITS)] & (1L << col)) != 0;
+    }
+
+    /**
+     * Sets the value of the selected pixel
+     * @param row y-coordinates of the pixel
+     * @param col x-coordinates of the pixel
+     * @param black whether the pixel should be black
+     * @throws IndexOutOfBoundsException if the pixel is outside the image
+     */
+    public void set(int row, int col, boolean black) {
+        checkCoordinates(row, col);
+
+        final int WORD = row * wordsPerRow + (col >>> ADDRESS_BITS);
+
+        if (black) {
+            words[WORD] |= 1L << col;
+        } else {
+            words[WORD] &= ~(1L << col);
+        }
+    }
+
+    /**
+     * Computes the number of black pixels in the image
+     * @return the number of black pixels
+     */
+    public int count() {
+
+        int numBlackPixels = 0;
+
+        // the bits past the last column are always cleared, so every word can be counted as is
+        for (long word : words) {
+            numBlackPixels += Long.bitCount(word);
+        }
+
+        return numBlackPixels;
+    }
+
+    /**
+     * Returns true if both images have the same dimensions
+     * @param other image to compare the dimensions with
+     * @return whether the images are of the same size
+     */
+    public boolean hasSameSize(BinaryImage other) {
+        return height == other.height && width == other.width;
+    }
+
+    // endregion
+
+    // region copying
+
+    /**
+     * Sets every pixel of the image to white
+     */
+    public void clear() {
+        Arrays.fill(words, 0L);
+    }
+
+    /**
+     * @return a new image with the same pixels
+     */
+    public BinaryImage copy() {
+        BinaryImage copy = new BinaryImage(height, width);
+        System.arraycopy(words, 0, copy.words, 0, words.length);
+        return copy;
+    }
+
+    /**
+     * Copies every pixel of the image into another image of the same size
+     * @param destination image to overwrite
+     * @throws IllegalArgumentException if the images are not of the same size
+     */
+    public void copyTo(BinaryImage destination) {
+        checkSameSize(destination);
+        System.arraycopy(words, 0, destination.words, 0, words.length);
+    }
+
+    // endregion
+
+    // region error handling
+
+    private void checkCoordinates(int row, int col) {
+
+        // if the pixel coordinates are invalid...
+        if (!contains(row, col)) {
+
+            // ...formats a new error message
+            String errorMessage = String.format("Invalid pixel coordinates ! valid coordinates are" +
+                            "0 < x < %s and 0 < y < %s ! current coordinates: x = %s y = %s",
+                    width - 1, height - 1, col, row);
+
+            throw new IndexOutOfBoundsException(errorMessage);
+        }
+    }
+
+    void checkSameSize(BinaryImage other) {
+
+        // if the images are not the same size...
+        if (!hasSameSize(other)) {
+
+            // ...formats a new error message
+            String errorMessage = String.format("Images must be of the same size ! expected: %sx%s current: %sx%s",
+                    width, height, other.width, other.height);
+
+            throw new IllegalArgumentException(errorMessage);
+        }
+    }
+
+    // endregion
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof BinaryImage)) return false;
+
+        BinaryImage image = (BinaryImage) other;
+        return hasSameSize(image) && Arrays.equals(words, image.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * height + width) + Arrays.hashCode(words);
+    }
+}
@@ -0,0 +1,42 @@
+package cs107;
+
+/**
+ * Helpers reading the words of a bit-packed image shifted towards one of their neighbours.
+ * <p>
+ * The arrays are laid out like the words of a {@link BinaryImage}. Rows outside the image and
+ * pixels outside the edges of a row are considered white, so that each returned word holds, in the
+ * bit of every pixel, the value of one of its neighbours.
+ */
+final class BitPlanes {
+
+    private BitPlanes() {}
+
+    /**
+     * @return the word <code>w</code> of a row, rows outside the image being white
+     */
+    static long row(long[] words, int row, int height, int wordsPerRow, int w) {
+        return row < 0 || row >= height ? 0 : words[row * wordsPerRow + w];
+    }
+
+    /**
+     * @return the word <code>w</code> of a row, shifted so that each bit holds the value of the pixel to its left
+     */
+    static long westNeighbours(long[] words, int row, int height, int wordsPerRow, int w) {
+        if (row < 0 || row >= height) return 0;
+
+        final int WORD = row * wordsPerRow + w;
+        final long PREVIOUS = w == 0 ? 0 : words[WORD - 1];
+        return (words[WORD] << 1) | (PREVIOUS >>> (BinaryImage.WORD_SIZE - 1));
+    }
+
+    /**
+     * @return the word <code>w</code> of a row, shifted so that each bit holds the value of the pixel to its right
+     */
+    static long eastNeighbours(long[] words, int row, int height, int wordsPerRow, int w) {
+        if (row < 0 || row >= height) return 0;
+
+        final int WORD = row * wordsPerRow + w;
+        final long NEXT = w == wordsPerRow - 1 ? 0 : words[WORD + 1];
+        return (words[WORD] >>> 1) | (NEXT << (BinaryImage.WORD_SIZE - 1));
+    }
+}
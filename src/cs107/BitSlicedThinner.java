@@ -0,0 +1,214 @@
+package cs107;
+
+/**
+ * Thinning algorithm deciding the deletion of 64 pixels at once.
+ * <p>
+ * For each word of the image, the 8 neighbours of its 64 pixels are gathered into 8 words (the
+ * neighbour planes) by shifting the words of the row and of the rows above and below it. The
+ * conditions of {@link Fingerprint#thinningStep(boolean[][], int)} are then evaluated as pure boolean
+ * logic over these planes: the number of black neighbours is counted with a bitwise adder tree,
+ * giving for every pixel a 4-bit count spread over 4 words, and the single white to black
+ * transition is checked with a bitwise saturating counter.
+ * <p>
+ * Like {@link DoubleBufferedThinner}, the steps ping-pong between two reusable buffers, so
+ * instances are not thread-safe: use one thinner per thread.
+ */
+public final class BitSlicedThinner implements Thinner {
+
+    // the buffers the steps read from and write to
+    private BinaryImage buffer1;
+    private BinaryImage buffer2;
+
+    @Override
+    public BinaryImage thin(BinaryImage image) {
+
+        // makes sure the buffers are of the right size
+        if (buffer1 == null || !buffer1.hasSameSize(image)) {
+            buffer1 = new BinaryImage(image.getHeight(), image.getWidth());
+            buffer2 = new BinaryImage(image.getHeight(), image.getWidth());
+        }
+
+        image.copyTo(buffer1);
+
+        // the number of pixels deleted by the second step of the current iteration
+        int deletedInStep2;
+
+        // while the second step of the last iteration still removed some pixels...
+        do {
+            // ...applies both steps, the result ending back in the first buffer
+            thinningStep(buffer1, buffer2, 1);                      // step 1
+            deletedInStep2 = thinningStep(buffer2, buffer1, 0);     // step 2
+
+        } while (deletedInStep2 != 0);
+
+        // returns the thinned image
+        return buffer1.copy();
+    }
+
+    /**
+     * Applies one thinning step, 64 pixels at a time.
+     *
+     * @param source      the image to thin, left untouched.
+     * @param destination the image receiving the result of the step, must be of the same size as
+     *                    <code>source</code> and distinct from it.
+     * @param step        the step to apply, Step 0 or Step 1.
+     * @return the number of pixels deleted by the step.
+     */
+    static int thinningStep(BinaryImage source, BinaryImage destination, int step) {
+        return thinningStep(source, destination, step, 0, source.getHeight());
+    }
+
+    /**
+     * Applies one thinning step to a band of rows, 64 pixels at a time.
+     * <p>
+     * Only the rows of the band are written to <code>destination</code>, but the rows directly above
+     * and below the band are read from <code>source</code>.
+     *
+     * @param source      the image to thin, left untouched.
+     * @param destination the image receiving the result of the step, must be of the same size as
+     *                    <code>source</code> and distinct from it.
+     * @param step        the step to apply, Step 0 or Step 1.
+     * @param fromRow     the first row of the band (included).
+     * @param toRow       the last row of the band (excluded).
+     * @return the number of pixels deleted in the band.
+     */
+    static int thinningStep(BinaryImage source, BinaryImage destination, int step, int fromRow, int toRow) {
+
+        final long[] SOURCE = source.words();
+        final long[] DESTINATION = destination.words();
+
+        // the dimensions of the image
+        final int IMAGE_HEIGHT = source.getHeight();
+        final int WORDS_PER_ROW = source.getWordsPerRow();
+
+        int deletedPixels = 0;
+
+        // loops through every word of the band...
+        for (int y = fromRow; y < toRow; y++) {
+            for (int w = 0; w < WORDS_PER_ROW; w++) {
+
+                final int WORD = y * WORDS_PER_ROW + w;
+                final long PIXELS = SOURCE[WORD];
+
+                // ...skipping the words which only contain white pixels
+                if (PIXELS == 0) {
+                    DESTINATION[WORD] = 0;
+                    continue;
+                }
+
+                // ...and deletes every pixel satisfying all the conditions
+                final long DELETIONS = PIXELS & deletionMask(
+                        BitPlanes.row(SOURCE, y - 1, IMAGE_HEIGHT, WORDS_PER_ROW, w),               // pixel 0
+                        BitPlanes.eastNeighbours(SOURCE, y - 1, IMAGE_HEIGHT, WORDS_PER_ROW, w),    // pixel 1
+                        BitPlanes.eastNeighbours(SOURCE, y, IMAGE_HEIGHT, WORDS_PER_ROW, w),        // pixel 2
+                        BitPlanes.eastNeighbours(SOURCE, y + 1, IMAGE_HEIGHT, WORDS_PER_ROW, w),    // pixel 3
+                        BitPlanes.row(SOURCE, y + 1, IMAGE_HEIGHT, WORDS_PER_ROW, w),               // pixel 4
+                        BitPlanes.westNeighbours(SOURCE, y + 1, IMAGE_HEIGHT, WORDS_PER_ROW, w),    // pixel 5
+                        BitPlanes.westNeighbours(SOURCE, y, IMAGE_HEIGHT, WORDS_PER_ROW, w),        // pixel 6
+                        BitPlanes.westNeighbours(SOURCE, y - 1, IMAGE_HEIGHT, WORDS_PER_ROW, w),    // pixel 7
+                        step);
+
+                DESTINATION[WORD] = PIXELS & ~DELETIONS;
+                deletedPixels += Long.bitCount(DELETIONS);
+            }
+        }
+
+        return deletedPixels;
+    }
+
+    /**
+     * Evaluates the deletion conditions of a step for 64 pixels at once.
+     * <p>
+     * Each parameter holds, in the bit of every pixel, the value of one of its neighbours,
+     * following the convention described in {@link Fingerprint#getNeighbours(boolean[][], int, int)}.
+     *
+     * @param step the step to apply, Step 0 or Step 1.
+     * @return the pixels which should be deleted if they are black.
+     */
+    static long deletionMask(long p0, long p1, long p2, long p3, long p4, long p5, long p6, long p7, int step) {
+
+        // region number of black neighbours between 2 and 6
+
+        // counts the black neighbours with an adder tree, each count being spread over 4 words
+
+        // first layer: two full adders and one half adder, giving 3 bits of weight 1 and 3 of weight 2
+        final long SUM_012 = p0 ^ p1 ^ p2;
+        final long CARRY_012 = (p0 & p1) | (p2 & (p0 ^ p1));
+        final long SUM_345 = p3 ^ p4 ^ p5;
+        final long CARRY_345 = (p3 & p4) | (p5 & (p3 ^ p4));
+        final long SUM_67 = p6 ^ p7;
+        final long CARRY_67 = p6 & p7;
+
+        // bit 0 of the count, and a 4th bit of weight 2
+        final long BIT_0 = SUM_012 ^ SUM_345 ^ SUM_67;
+        final long CARRY_ONES = (SUM_012 & SUM_345) | (SUM_67 & (SUM_012 ^ SUM_345));
+
+        // adds the 4 bits of weight 2, giving bit 1 of the count and 2 bits of weight 4
+        final long SUM_TWOS = CARRY_012 ^ CARRY_345 ^ CARRY_67;
+        final long CARRY_TWOS = (CARRY_012 & CARRY_345) | (CARRY_67 & (CARRY_012 ^ CARRY_345));
+
+        final long BIT_1 = SUM_TWOS ^ CARRY_ONES;
+        final long CARRY_BIT_1 = SUM_TWOS & CARRY_ONES;
+
+        // adds the 2 bits of weight 4 (their carry, bit 3, is only set when all 8 neighbours are black)
+        final long BIT_2 = CARRY_TWOS ^ CARRY_BIT_1;
+
+        // at least 2 (bit 1 or bit 2 set) and neither 7 (bits 0, 1 and 2 set) nor 8 (only bit 3 set)
+        final long VALID_NUM_NEIGHBOURS = (BIT_1 | BIT_2) & ~(BIT_0 & BIT_1 & BIT_2);
+
+        // endregion
+
+        // region only one white to black transition
+
+        // counts the transitions with a 2-bit saturating counter:
+        // whether at least one and at least two transitions have been seen
+        long atLeastOne = ~p7 & p0;
+        long atLeastTwo = 0;
+
+        long transition = ~p0 & p1;
+        atLeastTwo |= atLeastOne & transition;
+        atLeastOne |= transition;
+
+        transition = ~p1 & p2;
+        atLeastTwo |= atLeastOne & transition;
+        atLeastOne |= transition;
+
+        transition = ~p2 & p3;
+        atLeastTwo |= atLeastOne & transition;
+        atLeastOne |= transition;
+
+        transition = ~p3 & p4;
+        atLeastTwo |= atLeastOne & transition;
+        atLeastOne |= transition;
+
+        transition = ~p4 & p5;
+        atLeastTwo |= atLeastOne & transition;
+        atLeastOne |= transition;
+
+        transition = ~p5 & p6;
+        atLeastTwo |= atLeastOne & transition;
+        atLeastOne |= transition;
+
+        transition = ~p6 & p7;
+        atLeastTwo |= atLeastOne & transition;
+        atLeastOne |= transition;
+
+        final long ONLY_ONE_TRANSITION = atLeastOne & ~atLeastTwo;
+
+        // endregion
+
+        // region white tiles specific to each step
+
+        final long WHITE_TILES;
+
+        if (step == 1) {    // step 1
+            WHITE_TILES = ~(p0 & p2 & p4) & ~(p2 & p4 & p6);
+        } else {            // step 2
+            WHITE_TILES = ~(p0 & p2 & p6) & ~(p0 & p4 & p6);
+        }
+
+        // endregion
+
+        return VALID_NUM_NEIGHBOURS & ONLY_ONE_TRANSITION & WHITE_TILES;
+    }
+}
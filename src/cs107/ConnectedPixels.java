@@ -0,0 +1,293 @@
+package cs107;
+
+import java.util.Arrays;
+
+/**
+ * Reusable buffers computing the pixels connected to a pixel within a given distance.
+ * <p>
+ * The search is an iterative flood fill over the 8 neighbours of each pixel, bounded to the
+ * <code>(2 * distance + 1)</code> by <code>(2 * distance + 1)</code> window centered on the starting
+ * pixel. The window, the stack of the flood fill and the list of pixels found are kept between
+ * calls and only grown when needed, so computing the connected pixels of every minutia of a print
+ * with the same instance produces no garbage.
+ * <p>
+ * While the pixels are found, the sums needed by the linear regression of
+ * {@link Fingerprint#computeSlope(boolean[][], int, int)} are accumulated, so the slope is known
+ * as soon as the search ends, without scanning the window again.
+ * <p>
+ * Instances are not thread-safe: use one per thread.
+ */
+public final class ConnectedPixels {
+
+    // the pixels of the window already found, as a bit set indexed by windowRow * side + windowCol
+    private long[] visited = new long[0];
+
+    // the stack of the flood fill, as window indices
+    private int[] stack = new int[0];
+
+    // the pixels found, as window indices, in the order they were found
+    private int[] pixels = new int[0];
+    private int numPixels;
+
+    // the regression sums of the pixels found, relatively to the pixel of interest
+    // (x growing to the right and y growing upwards)
+    private long sumXX;
+    private long sumYY;
+    private long sumXY;
+
+    // the current window
+    private int originRow;
+    private int originCol;
+    private int distance;
+    private int side;
+
+    /**
+     * Computes the pixels connected to the pixel at coordinates <code>(row, col)</code>.
+     *
+     * @param image    array containing each pixel's boolean value.
+     * @param row      the first coordinate of the pixel of interest.
+     * @param col      the second coordinate of the pixel of interest.
+     * @param distance the maximum distance at which a pixel is considered.
+     * @return the number of connected pixels, including the pixel of interest.
+     * @see Fingerprint#connectedPixels(boolean[][], int, int, int)
+     */
+    public int compute(boolean[][] image, int row, int col, int distance) {
+
+        // the part of the window which is inside the image
+        final int MIN_ROW = Math.max(0, row - distance);
+        final int MAX_ROW = Math.min(image.length - 1, row + distance);
+        final int MIN_COL = Math.max(0, col - distance);
+        final int MAX_COL = Math.min(image[0].length - 1, col + distance);
+
+        // a white pixel is not connected to anything
+        if (!start(row, col, distance, image[row][col])) {
+            return 0;
+        }
+
+        // while some pixels still have to be explored...
+        for (int top = 1; top > 0; ) {
+
+            final int PIXEL = stack[--top];
+            final int PIXEL_ROW = originRow + PIXEL / side;
+            final int PIXEL_COL = originCol + PIXEL % side;
+
+            // ...adds their black neighbours which were not found yet
+            for (int neighbour = 0; neighbour < 8; neighbour++) {
+
+                final int Y = PIXEL_ROW + Fingerprint.NEIGHBOUR_ROW_OFFSETS[neighbour];
+                final int X = PIXEL_COL + Fingerprint.NEIGHBOUR_COL_OFFSETS[neighbour];
+
+                if (Y >= MIN_ROW && Y <= MAX_ROW && X >= MIN_COL && X <= MAX_COL && image[Y][X]) {
+                    top = visit(Y, X, top);
+                }
+            }
+        }
+
+        return numPixels;
+    }
+
+    /**
+     * Computes the pixels connected to the pixel at coordinates <code>(row, col)</code>.
+     *
+     * @param image    bit-packed image.
+     * @param row      the first coordinate of the pixel of interest.
+     * @param col      the second coordinate of the pixel of interest.
+     * @param distance the maximum distance at which a pixel is considered.
+     * @return the number of connected pixels, including the pixel of interest.
+     * @see Fingerprint#connectedPixels(boolean[][], int, int, int)
+     */
+    public int compute(BinaryImage image, int row, int col, int distance) {
+
+        // the part of the window which is inside the image
+        final int MIN_ROW = Math.max(0, row - distance);
+        final int MAX_ROW = Math.min(image.getHeight() - 1, row + distance);
+        final int MIN_COL = Math.max(0, col - distance);
+        final int MAX_COL = Math.min(image.getWidth() - 1, col + distance);
+
+        final long[] WORDS = image.words();
+        final int WORDS_PER_ROW = image.getWordsPerRow();
+
+        // a white pixel is not connected to anything
+        if (!start(row, col, distance, image.isBlack(row, col))) {
+            return 0;
+        }
+
+        // while some pixels still have to be explored...
+        for (int top = 1; top > 0; ) {
+
+            final int PIXEL = stack[--top];
+            final int PIXEL_ROW = originRow + PIXEL / side;
+            final int PIXEL_COL = originCol + PIXEL % side;
+
+            // ...adds their black neighbours which were not found yet
+            for (int neighbour = 0; neighbour < 8; neighbour++) {
+
+                final int Y = PIXEL_ROW + Fingerprint.NEIGHBOUR_ROW_OFFSETS[neighbour];
+                final int X = PIXEL_COL + Fingerprint.NEIGHBOUR_COL_OFFSETS[neighbour];
+
+                if (Y >= MIN_ROW && Y <= MAX_ROW && X >= MIN_COL && X <= MAX_COL
+                        && (WORDS[Y * WORDS_PER_ROW + (X >>> BinaryImage.ADDRESS_BITS)] & (1L << X)) != 0) {
+                    top = visit(Y, X, top);
+                }
+            }
+        }
+
+        return numPixels;
+    }
+
+    // region results
+
+    /**
+     * @return the number of connected pixels found by the last computation
+     */
+    public int size() {
+        return numPixels;
+    }
+
+    /**
+     * @return the sum of <code>x * x</code> over the connected pixels found by the last computation
+     */
+    public long getSumXX() {
+        return sumXX;
+    }
+
+    /**
+     * @return the sum of <code>y * y</code> over the connected pixels found by the last computation
+     */
+    public long getSumYY() {
+        return sumYY;
+    }
+
+    /**
+     * @return the sum of <code>x * y</code> over the connected pixels found by the last computation
+     */
+    public long getSumXY() {
+        return sumXY;
+    }
+
+    /**
+     * @param index the index of a connected pixel, between <code>0</code> and {@link #size()} (excluded)
+     * @return the row of the pixel in the image
+     */
+    public int getRow(int index) {
+        return originRow + pixels[index] / side;
+    }
+
+    /**
+     * @param index the index of a connected pixel, between <code>0</code> and {@link #size()} (excluded)
+     * @return the column of the pixel in the image
+     */
+    public int getCol(int index) {
+        return originCol + pixels[index] % side;
+    }
+
+    /**
+     * Returns true if a pixel was found to be connected by the last computation
+     * @param row y-coordinates of the pixel in the image
+     * @param col x-coordinates of the pixel in the image
+     * @return whether the pixel is connected
+     */
+    public boolean isConnected(int row, int col) {
+
+        final int WINDOW_ROW = row - originRow;
+        final int WINDOW_COL = col - originCol;
+
+        // pixels outside the window are never connected
+        if (WINDOW_ROW < 0 || WINDOW_ROW >= side || WINDOW_COL < 0 || WINDOW_COL >= side) {
+            return false;
+        }
+
+        final int INDEX = WINDOW_ROW * side + WINDOW_COL;
+        return (visited[INDEX >>> BinaryImage.ADDRESS_BITS] & (1L << INDEX)) != 0;
+    }
+
+    /**
+     * Writes the connected pixels found by the last computation into an image
+     * @param height number of rows in the image
+     * @param width number of columns in the image
+     * @return array where <code>true</code> means that the pixel is connected
+     */
+    public boolean[][] toArray(int height, int width) {
+
+        boolean[][] connectedPixels = new boolean[height][width];
+
+        for (int i = 0; i < numPixels; i++) {
+            connectedPixels[getRow(i)][getCol(i)] = true;
+        }
+
+        return connectedPixels;
+    }
+
+    // endregion
+
+    // region flood fill helper methods
+
+    /**
+     * Prepares the buffers for a new window, and adds the starting pixel if it is black
+     * @return whether the starting pixel is black
+     */
+    private boolean start(int row, int col, int newDistance, boolean isBlack) {
+
+        distance = newDistance;
+        side = 2 * distance + 1;
+        originRow = row - distance;
+        originCol = col - distance;
+        numPixels = 0;
+        sumXX = 0;
+        sumYY = 0;
+        sumXY = 0;
+
+        // grows the buffers if the window is larger than any window before
+        final int WINDOW_SIZE = side * side;
+        final int NUM_WORDS = (WINDOW_SIZE + BinaryImage.WORD_SIZE - 1) >>> BinaryImage.ADDRESS_BITS;
+
+        if (stack.length < WINDOW_SIZE) {
+            stack = new int[WINDOW_SIZE];
+            pixels = new int[WINDOW_SIZE];
+        }
+
+        if (visited.length < NUM_WORDS) {
+            visited = new long[NUM_WORDS];
+        } else {
+            Arrays.fill(visited, 0, NUM_WORDS, 0L);
+        }
+
+        if (!isBlack) {
+            return false;
+        }
+
+        visit(row, col, 0);
+        return true;
+    }
+
+    /**
+     * Marks a black pixel as connected and pushes it on the stack, if it was not found yet
+     * @return the new top of the stack
+     */
+    private int visit(int row, int col, int top) {
+
+        final int INDEX = (row - originRow) * side + (col - originCol);
+        final int WORD = INDEX >>> BinaryImage.ADDRESS_BITS;
+        final long BIT = 1L << INDEX;
+
+        // if the pixel was already found, there is nothing to do
+        if ((visited[WORD] & BIT) != 0) {
+            return top;
+        }
+
+        visited[WORD] |= BIT;
+        pixels[numPixels++] = INDEX;
+
+        // adds the pixel to the regression sums
+        final int X = col - originCol - distance;
+        final int Y = originRow + distance - row;
+        sumXX += X * X;
+        sumYY += Y * Y;
+        sumXY += X * Y;
+
+        stack[top] = INDEX;
+        return top + 1;
+    }
+
+    // endregion
+}
@@ -0,0 +1,164 @@
+package cs107;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Listener saving debug images of the thinning algorithm.
+ * <p>
+ * The images after each of the first steps of the thinning are placed side by side in a single
+ * image, the pixels about to be deleted by the following step being colored in red. Optionally,
+ * the pixels connected to a given pixel of the skeleton are saved in a second image.
+ * <p>
+ * The images are written each time a skeleton is computed, overwriting the previous ones, so this
+ * listener is only meant for debugging a single thread.
+ */
+public final class DebugImageListener implements FingerprintListener {
+
+    // the maximum number of steps saved in the debug image
+    private static final int MAX_DEBUG_STEPS = 20;
+
+    // the color of the pixels deleted by the next step
+    private static final int DELETED_COLOR = Helper.toARGB(0, 255, 0, 0);
+
+    // the path of the image showing the thinning steps
+    private final String stepsPath;
+
+    // the path of the image showing the connected pixels, and the pixel to start from
+    private final String connectedPixelsPath;
+    private final int connectedRow;
+    private final int connectedCol;
+    private final int connectedDistance;
+
+    // the debug images of the thinning currently running on each thread
+    private final ThreadLocal<List<int[][]>> debugImages = ThreadLocal.withInitial(ArrayList::new);
+
+    /**
+     * Creates a listener saving the thinning steps in <code>debug_fingerprints.png</code>
+     */
+    public DebugImageListener() {
+        this("debug_fingerprints.png");
+    }
+
+    /**
+     * Creates a listener saving the thinning steps
+     * @param stepsPath the path of the image showing the thinning steps
+     */
+    public DebugImageListener(String stepsPath) {
+        this(stepsPath, null, 0, 0, 0);
+    }
+
+    /**
+     * Creates a listener saving the thinning steps and the pixels connected to a pixel of the skeleton
+     * @param stepsPath the path of the image showing the thinning steps
+     * @param connectedPixelsPath the path of the image showing the connected pixels
+     * @param row the row of the pixel to start from
+     * @param col the column of the pixel to start from
+     * @param distance the maximum distance at which a pixel is considered
+     * @see Fingerprint#connectedPixels(boolean[][], int, int, int)
+     */
+    public DebugImageListener(String stepsPath, String connectedPixelsPath, int row, int col, int distance) {
+        this.stepsPath = stepsPath;
+        this.connectedPixelsPath = connectedPixelsPath;
+        this.connectedRow = row;
+        this.connectedCol = col;
+        this.connectedDistance = distance;
+    }
+
+    @Override
+    public void onThinningIteration(int iteration, BinaryImage afterStep1, BinaryImage afterStep2) {
+
+        List<int[][]> images = debugImages.get();
+
+        // only keeps the first steps of the thinning
+        if (images.size() >= MAX_DEBUG_STEPS) {
+            return;
+        }
+
+        int[][] afterStep1Int = Helper.fromBinary(afterStep1.toArray());
+        int[][] afterStep2Int = Helper.fromBinary(afterStep2.toArray());
+
+        emphasizeDifferences(afterStep1Int, afterStep2Int);
+
+        // saves the 1st step
+        images.add(afterStep1Int);
+        // saves the 2nd step
+        images.add(afterStep2Int);
+    }
+
+    @Override
+    public void onThinningFinished(BinaryImage skeleton) {
+
+        List<int[][]> images = debugImages.get();
+
+        // generates a debug image based on all the steps taken in thinning the fingerprint
+        if (!images.isEmpty()) {
+            Helper.writeARGB(stepsPath, createDebugImage(images));
+        }
+
+        // the images are only kept for a single thinning
+        debugImages.remove();
+
+        if (connectedPixelsPath != null) {
+            boolean[][] connectedPixels = Fingerprint.connectedPixels(skeleton.toArray(),
+                    connectedRow, connectedCol, connectedDistance);
+            Helper.writeBinary(connectedPixelsPath, connectedPixels);
+        }
+    }
+
+    // region debug image methods
+
+    private static void emphasizeDifferences(int[][] original, int[][] toCompare) {
+
+        // the size of the image
+        final int IMAGE_HEIGHT = original.length;
+        final int IMAGE_WIDTH = original[0].length;
+
+        // loops through every row of the image...
+        for (int y = 0; y < IMAGE_HEIGHT; y++) {
+            // ...and every pixel for that row
+            for (int x = 0; x < IMAGE_WIDTH; x++) {
+                // ...if the pixels in both images are not same, and the original pixel was black
+                if (original[y][x] != toCompare[y][x]) {
+                    // ...sets its color to red
+                    original[y][x] = DELETED_COLOR;
+                }
+            }
+        }
+    }
+
+    private static int[][] createDebugImage(List<int[][]> debugImages) {
+
+        // the number of debug images
+        final int NUM_IMAGES = debugImages.size();
+
+        // the size of each individual debug image
+        final int IMAGE_HEIGHT = debugImages.get(0).length;
+        final int IMAGE_WIDTH = debugImages.get(0)[0].length;
+
+        // the width of the final image
+        final int FINAL_IMAGE_WIDTH = IMAGE_WIDTH * NUM_IMAGES;
+
+        // formatted debug image
+        final int[][] FINAL_DEBUG_IMAGE = new int[IMAGE_HEIGHT][FINAL_IMAGE_WIDTH];
+
+        // adds every debug image end-to-end to the final image
+        for (int y = 0; y < IMAGE_HEIGHT; y++) {
+            for (int x = 0; x < FINAL_IMAGE_WIDTH; x++) {
+
+                // the current debug image to add
+                int currentImage = x / IMAGE_WIDTH;
+
+                // the index of the pixel to add from the debug image
+                int currentPixel = x % (IMAGE_WIDTH);
+
+                // adds the currently selected pixel to the final image
+                FINAL_DEBUG_IMAGE[y][x] = debugImages.get(currentImage)[y][currentPixel];
+            }
+        }
+
+        return FINAL_DEBUG_IMAGE;
+    }
+
+    // endregion
+}
@@ -0,0 +1,139 @@
+package cs107;
+
+/**
+ * Thinning algorithm ping-ponging between two reusable buffers.
+ * <p>
+ * Each step reads one buffer and writes the other, counting the pixels it deletes. The thinning
+ * stops as soon as the second step of an iteration deletes nothing, so no image is allocated per
+ * iteration and no extra pass is needed to compare the images.
+ * <p>
+ * The buffers are kept between calls and only reallocated when the size of the image changes.
+ * Instances are therefore not thread-safe: use one thinner per thread.
+ */
+public final class DoubleBufferedThinner implements Thinner {
+
+    // the buffers the steps read from and write to
+    private BinaryImage buffer1;
+    private BinaryImage buffer2;
+
+    // statistics on the last image thinned
+    private int iterations;
+    private int deletedPixels;
+
+    @Override
+    public BinaryImage thin(BinaryImage image) {
+
+        // makes sure the buffers are of the right size
+        if (buffer1 == null || !buffer1.hasSameSize(image)) {
+            buffer1 = new BinaryImage(image.getHeight(), image.getWidth());
+            buffer2 = new BinaryImage(image.getHeight(), image.getWidth());
+        }
+
+        image.copyTo(buffer1);
+
+        iterations = 0;
+        deletedPixels = 0;
+
+        // the number of pixels deleted by the second step of the current iteration
+        int deletedInStep2;
+
+        // while the second step of the last iteration still removed some pixels...
+        do {
+            // ...applies both steps, the result ending back in the first buffer
+            deletedPixels += thinningStep(buffer1, buffer2, 1);     // step 1
+            deletedInStep2 = thinningStep(buffer2, buffer1, 0);     // step 2
+
+            iterations++;
+            deletedPixels += deletedInStep2;
+
+        } while (deletedInStep2 != 0);
+
+        // returns the thinned image
+        return buffer1.copy();
+    }
+
+    /**
+     * @return the number of iterations (both steps) applied to the last image thinned,
+     * including the last one whose second step did not delete anything
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return the number of pixels deleted from the last image thinned
+     */
+    public int getDeletedPixels() {
+        return deletedPixels;
+    }
+
+    /**
+     * Applies one thinning step, without allocating anything.
+     *
+     * @param source      the image to thin, left untouched.
+     * @param destination the image receiving the result of the step, must be of the same size as
+     *                    <code>source</code> and distinct from it.
+     * @param step        the step to apply, Step 0 or Step 1.
+     * @return the number of pixels deleted by the step.
+     * @see Fingerprint#thinningStep(boolean[][], int)
+     */
+    static int thinningStep(BinaryImage source, BinaryImage destination, int step) {
+        return thinningStep(source, destination, step, 0, source.getHeight());
+    }
+
+    /**
+     * Applies one thinning step to a band of rows, without allocating anything.
+     * <p>
+     * Only the rows of the band are written to <code>destination</code>, but the rows directly above
+     * and below the band are read from <code>source</code>, so bands of the same image can be
+     * processed concurrently as long as nothing writes to <code>source</code>.
+     *
+     * @param source      the image to thin, left untouched.
+     * @param destination the image receiving the result of the step, must be of the same size as
+     *                    <code>source</code> and distinct from it.
+     * @param step        the step to apply, Step 0 or Step 1.
+     * @param fromRow     the first row of the band (included).
+     * @param toRow       the last row of the band (excluded).
+     * @return the number of pixels deleted in the band.
+     */
+    static int thinningStep(BinaryImage source, BinaryImage destination, int step, int fromRow, int toRow) {
+
+        final long[] SOURCE = source.words();
+        final long[] DESTINATION = destination.words();
+
+        // the dimensions of the image
+        final int WORDS_PER_ROW = source.getWordsPerRow();
+
+        int deletedPixels = 0;
+
+        // loops through every word of the band...
+        for (int y = fromRow; y < toRow; y++) {
+            for (int w = 0; w < WORDS_PER_ROW; w++) {
+
+                final int WORD = y * WORDS_PER_ROW + w;
+                long word = SOURCE[WORD];
+                long remaining = word;
+
+                // ...and only checks the black pixels it contains
+                while (remaining != 0) {
+
+                    final int BIT = Long.numberOfTrailingZeros(remaining);
+                    final int X = (w << BinaryImage.ADDRESS_BITS) + BIT;
+
+                    // if the pixel satisfies all the conditions to be deleted...
+                    if (ThinningTable.canBeDeleted(ThinningTable.neighbourhood(source, y, X), step)) {
+                        // ...removes it from the image (sets it to white)
+                        word &= ~(1L << BIT);
+                        deletedPixels++;
+                    }
+
+                    remaining &= remaining - 1;
+                }
+
+                DESTINATION[WORD] = word;
+            }
+        }
+
+        return deletedPixels;
+    }
+}
@@ -0,0 +1,635 @@
+package cs107;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+
+/**
+ * Enrolls every image of a directory as a template file, in a pipeline of concurrent stages.
+ * <p>
+ * Each image goes through the {@link Stage stages} in order: it is decoded, binarized, thinned,
+ * its minutiae are extracted, and its template is written in {@link TemplateFormat}, in the output
+ * directory, at the same relative path with the <code>.fpt</code> extension. Every stage has its
+ * own worker threads, and hands the images over to the next stage through a bounded queue: when a
+ * stage falls behind, the queue before it fills up and the stages before it wait, so that at most
+ * a few images are in memory at once.
+ * <p>
+ * A template is written to a temporary file first, and moved to its final name once complete.
+ * The images whose paths only differ by their extension, like <code>a.png</code> and
+ * <code>a.gif</code>, would share a template: only the first one, in the order of their paths,
+ * is enrolled, and the others fail at the {@link Stage#PERSIST} stage without being decoded.
+ * The images whose template already exists are skipped, so an interrupted enrollment resumes
+ * where it stopped when it is run again. An image which cannot be enrolled is counted as failed
+ * and recorded in the {@link Report} with its cause, without stopping the others.
+ * <p>
+ * Instances are not thread-safe: configure them, then {@link #run()} them from a single thread.
+ */
+public final class EnrollmentPipeline {
+
+    /**
+     * The extension of the template files.
+     */
+    public static final String TEMPLATE_EXTENSION = ".fpt";
+
+    // the extensions of the images enrolled, in lower case
+    private static final String[] IMAGE_EXTENSIONS = {".png", ".jpg", ".jpeg", ".bmp", ".gif"};
+
+    /**
+     * The stages of the pipeline, in order.
+     */
+    public enum Stage {
+
+        /**
+         * Reads and decodes an image file.
+         */
+        DECODE,
+
+        /**
+         * Turns the colors of an image into black and white pixels.
+         */
+        BINARIZE,
+
+        /**
+         * Thins the black and white image, see {@link Fingerprint#thin(BinaryImage)}.
+         */
+        THIN,
+
+        /**
+         * Extracts the minutiae of the skeleton, see {@link Fingerprint#extract(BinaryImage)}.
+         */
+        EXTRACT,
+
+        /**
+         * Writes the template file.
+         */
+        PERSIST
+    }
+
+    // the end of the images, sent to every worker of a stage once the stage before it is done
+    private static final Job END = new Job(null, null);
+
+    private final Path inputDirectory;
+    private final Path outputDirectory;
+
+    // the number of worker threads of every stage, and the capacity of the queues between them
+    private final Map<Stage, Integer> workers = new EnumMap<>(Stage.class);
+    private int queueCapacity = 16;
+
+    /**
+     * Creates a pipeline with one worker per stage, except for the thinning and the extraction
+     * which get one per core.
+     *
+     * @param inputDirectory  the directory of the images, walked recursively.
+     * @param outputDirectory the directory receiving the templates, created if needed.
+     */
+    public EnrollmentPipeline(Path inputDirectory, Path outputDirectory) {
+        this.inputDirectory = inputDirectory;
+        this.outputDirectory = outputDirectory;
+
+        final int CORES = Runtime.getRuntime().availableProcessors();
+        for (Stage stage : Stage.values()) {
+            workers.put(stage, stage == Stage.THIN || stage == Stage.EXTRACT ? CORES : 1);
+        }
+    }
+
+    /**
+     * Sets the number of worker threads of a stage.
+     *
+     * @param stage      the stage.
+     * @param numWorkers the number of worker threads, at least 1.
+     * @return this pipeline.
+     * @throws IllegalArgumentException if the number of workers is not strictly positive.
+     */
+    public EnrollmentPipeline setWorkers(Stage stage, int numWorkers) {
+
+        if (numWorkers <= 0) {
+            throw new IllegalArgumentException("number of workers must be strictly positive, current number: "
+                    + numWorkers);
+        }
+
+        workers.put(stage, numWorkers);
+        return this;
+    }
+
+    /**
+     * @param stage the stage
+     * @return the number of worker threads of the stage
+     */
+    public int getWorkers(Stage stage) {
+        return workers.get(stage);
+    }
+
+    /**
+     * Sets the capacity of the queues between the stages, bounding the number of images waiting
+     * for each stage.
+     *
+     * @param capacity the number of images a queue can hold, at least 1.
+     * @return this pipeline.
+     * @throws IllegalArgumentException if the capacity is not strictly positive.
+     */
+    public EnrollmentPipeline setQueueCapacity(int capacity) {
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be strictly positive, current capacity: " + capacity);
+        }
+
+        queueCapacity = capacity;
+        return this;
+    }
+
+    /**
+     * @return the number of images a queue between two stages can hold
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Enrolls every image of the input directory whose template does not exist yet, and waits
+     * until they are all enrolled.
+     * <p>
+     * If the calling thread is interrupted, the workers are interrupted too, and the templates
+     * already written are kept for the next run.
+     *
+     * @return the work done by every stage.
+     * @throws IOException if the input directory cannot be walked.
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    public Report run() throws IOException, InterruptedException {
+
+        final long START = System.nanoTime();
+        final Report REPORT = new Report(workers);
+
+        // every template of the run is extracted with the mode recorded in it
+        final Fingerprint.OrientationMode MODE = Fingerprint.getOrientationMode();
+
+        // region starting the stages
+
+        final Stage[] STAGES = Stage.values();
+        final List<BlockingQueue<Job>> QUEUES = new ArrayList<>();
+        for (int i = 0; i < STAGES.length; i++) {
+            QUEUES.add(new ArrayBlockingQueue<>(queueCapacity));
+        }
+
+        final List<Thread> THREADS = new ArrayList<>();
+
+        for (int i = 0; i < STAGES.length; i++) {
+
+            final Stage STAGE = STAGES[i];
+            final BlockingQueue<Job> IN = QUEUES.get(i);
+            final BlockingQueue<Job> OUT = i + 1 < STAGES.length ? QUEUES.get(i + 1) : null;
+            final int NEXT_WORKERS = i + 1 < STAGES.length ? workers.get(STAGES[i + 1]) : 0;
+            final AtomicInteger RUNNING = new AtomicInteger(workers.get(STAGE));
+
+            for (int w = 0; w < workers.get(STAGE); w++) {
+                final Thread THREAD = new Thread(() -> work(STAGE, MODE, IN, OUT, NEXT_WORKERS, RUNNING, REPORT),
+                        "enroll-" + STAGE.name().toLowerCase(Locale.ROOT) + "-" + w);
+                THREAD.setDaemon(true);
+                THREADS.add(THREAD);
+                THREAD.start();
+            }
+        }
+
+        // endregion
+
+        // region feeding the first stage
+
+        try {
+            final List<Path> IMAGES;
+            try (Stream<Path> files = Files.walk(inputDirectory)) {
+                IMAGES = files.filter(Files::isRegularFile).filter(EnrollmentPipeline::isImage).sorted()
+                        .collect(Collectors.toList());
+            }
+
+            // the image owning every template, so that no two images write the same one
+            final Map<Path, Path> OWNERS = new HashMap<>();
+
+            for (Path image : IMAGES) {
+
+                final Path TEMPLATE = templatePath(image);
+                final Path OWNER = OWNERS.putIfAbsent(TEMPLATE, image);
+
+                if (OWNER != null) {
+                    REPORT.failures.add(new Failure(image, Stage.PERSIST, new FileAlreadyExistsException(
+                            TEMPLATE.toString(), null, "template of " + OWNER)));
+                    continue;
+                }
+
+                // the image was enrolled by a previous run
+                if (Files.exists(TEMPLATE)) {
+                    REPORT.skipped.increment();
+                    continue;
+                }
+
+                final long BLOCKED = System.nanoTime();
+                QUEUES.get(0).put(new Job(image, TEMPLATE));
+                REPORT.walkBlockedNanos.add(System.nanoTime() - BLOCKED);
+                REPORT.submitted.increment();
+            }
+
+            for (int w = 0; w < workers.get(STAGES[0]); w++) {
+                QUEUES.get(0).put(END);
+            }
+
+            for (Thread thread : THREADS) {
+                thread.join();
+            }
+
+        } catch (IOException | InterruptedException | RuntimeException e) {
+
+            // stops the workers, the templates being written are not moved to their final name
+            for (Thread thread : THREADS) {
+                thread.interrupt();
+            }
+            for (Thread thread : THREADS) {
+                thread.join();
+            }
+            throw e;
+        }
+
+        // endregion
+
+        REPORT.elapsedNanos = System.nanoTime() - START;
+        return REPORT;
+    }
+
+    // region stages
+
+    /**
+     * Processes the images of a stage until the end of the images, and sends the end to the next
+     * stage once the last worker of the stage is done
+     */
+    private void work(Stage stage, Fingerprint.OrientationMode mode, BlockingQueue<Job> in, BlockingQueue<Job> out,
+                      int nextWorkers, AtomicInteger running, Report report) {
+
+        final StageCounters COUNTERS = report.stages.get(stage);
+
+        try {
+            while (true) {
+
+                final Job JOB = in.take();
+                if (JOB == END) {
+                    break;
+                }
+
+                final long START = System.nanoTime();
+                boolean processed;
+
+                // an error, such as running out of memory while decoding a huge image, only fails its image
+                try {
+                    process(stage, mode, JOB);
+                    processed = true;
+                } catch (IOException | RuntimeException | Error e) {
+                    report.failures.add(new Failure(JOB.image, stage, e));
+                    JOB.data = null;
+                    processed = false;
+                }
+
+                COUNTERS.busyNanos.add(System.nanoTime() - START);
+
+                if (!processed) {
+                    COUNTERS.failed.increment();
+                    continue;
+                }
+
+                COUNTERS.processed.increment();
+
+                // waits for room in the next stage, which is where the backpressure comes from
+                if (out != null) {
+                    final long BLOCKED = System.nanoTime();
+                    out.put(JOB);
+                    COUNTERS.blockedNanos.add(System.nanoTime() - BLOCKED);
+                }
+            }
+
+        } catch (InterruptedException e) {
+            // the enrollment is stopped, by the thread running it
+            Thread.currentThread().interrupt();
+
+        } finally {
+            // the next stage ends once every worker of this one is gone, however it went
+            if (running.decrementAndGet() == 0 && out != null && !Thread.currentThread().isInterrupted()) {
+                try {
+                    for (int w = 0; w < nextWorkers; w++) {
+                        out.put(END);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a stage on an image, replacing its data by the output of the stage
+     */
+    private static void process(Stage stage, Fingerprint.OrientationMode mode, Job job) throws IOException {
+
+        switch (stage) {
+
+            case DECODE:
+                final BufferedImage DECODED = ImageIO.read(job.image.toFile());
+                if (DECODED == null) {
+                    throw new IOException("not a supported image");
+                }
+                job.data = DECODED;
+                break;
+
+            case BINARIZE:
+                job.data = Helper.toBinaryImage((BufferedImage) job.data);
+                break;
+
+            case THIN:
+                job.data = Fingerprint.thin((BinaryImage) job.data);
+                break;
+
+            case EXTRACT:
+                final BinaryImage SKELETON = (BinaryImage) job.data;
+                job.data = new Template(SKELETON.getWidth(), SKELETON.getHeight(), mode,
+                        Fingerprint.ORIENTATION_DISTANCE, Fingerprint.extract(SKELETON, mode));
+                break;
+
+            case PERSIST:
+                // the final name only ever holds a complete template
+                Files.createDirectories(job.template.getParent());
+                final Path TEMPORARY = job.template.resolveSibling(job.template.getFileName() + ".tmp");
+
+                try {
+                    TemplateFormat.write((Template) job.data, TEMPORARY);
+                    Files.move(TEMPORARY, job.template, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException | RuntimeException | Error e) {
+                    // a failed template leaves nothing behind
+                    try {
+                        Files.deleteIfExists(TEMPORARY);
+                    } catch (IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                    throw e;
+                }
+                job.data = null;
+                break;
+
+            default:
+                throw new AssertionError(stage);
+        }
+    }
+
+    // endregion
+
+    // region helper methods
+
+    private static boolean isImage(Path file) {
+
+        final String NAME = file.getFileName().toString().toLowerCase(Locale.ROOT);
+
+        for (String extension : IMAGE_EXTENSIONS) {
+            if (NAME.endsWith(extension)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the path of the template of an image, in the output directory
+     */
+    private Path templatePath(Path image) {
+
+        final Path RELATIVE = inputDirectory.relativize(image);
+        final String NAME = RELATIVE.getFileName().toString();
+
+        return outputDirectory.resolve(RELATIVE).resolveSibling(NAME.substring(0, NAME.lastIndexOf('.'))
+                + TEMPLATE_EXTENSION);
+    }
+
+    /**
+     * An image going through the pipeline
+     */
+    private static final class Job {
+
+        final Path image;
+        final Path template;
+
+        // the output of the last stage the image went through, only read by the next stage
+        Object data;
+
+        Job(Path image, Path template) {
+            this.image = image;
+            this.template = template;
+        }
+    }
+
+    // endregion
+
+    /**
+     * An image which could not be enrolled.
+     */
+    public static final class Failure {
+
+        private final Path image;
+        private final Stage stage;
+        private final Throwable cause;
+
+        private Failure(Path image, Stage stage, Throwable cause) {
+            this.image = image;
+            this.stage = stage;
+            this.cause = cause;
+        }
+
+        /**
+         * @return the path of the image
+         */
+        public Path getImage() {
+            return image;
+        }
+
+        /**
+         * @return the stage which failed to process the image, {@link Stage#PERSIST} for an image
+         * whose template is the one of another image
+         */
+        public Stage getStage() {
+            return stage;
+        }
+
+        /**
+         * @return the exception or error thrown by the stage
+         */
+        public Throwable getCause() {
+            return cause;
+        }
+
+        @Override
+        public String toString() {
+            return image + " (" + stage + "): " + cause;
+        }
+    }
+
+    /**
+     * The work done by a stage.
+     */
+    public static final class StageCounters {
+
+        private final int workers;
+        private final LongAdder processed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+        private final LongAdder blockedNanos = new LongAdder();
+
+        private StageCounters(int workers) {
+            this.workers = workers;
+        }
+
+        /**
+         * @return the number of worker threads of the stage
+         */
+        public int getWorkers() {
+            return workers;
+        }
+
+        /**
+         * @return the number of images the stage processed and handed over to the next one
+         */
+        public long getProcessed() {
+            return processed.sum();
+        }
+
+        /**
+         * @return the number of images the stage failed to process
+         */
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        /**
+         * @return the time spent processing images, summed over the workers, in nanoseconds
+         */
+        public long getBusyNanos() {
+            return busyNanos.sum();
+        }
+
+        /**
+         * @return the time spent waiting for room in the queue of the next stage, summed over the
+         * workers, in nanoseconds
+         */
+        public long getBlockedNanos() {
+            return blockedNanos.sum();
+        }
+    }
+
+    /**
+     * The work done by a run of the pipeline.
+     */
+    public static final class Report {
+
+        private final Map<Stage, StageCounters> stages = new EnumMap<>(Stage.class);
+        private final LongAdder submitted = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder walkBlockedNanos = new LongAdder();
+        private final ConcurrentLinkedQueue<Failure> failures = new ConcurrentLinkedQueue<>();
+        private long elapsedNanos;
+
+        private Report(Map<Stage, Integer> workers) {
+            for (Stage stage : Stage.values()) {
+                stages.put(stage, new StageCounters(workers.get(stage)));
+            }
+        }
+
+        /**
+         * @param stage the stage
+         * @return the work done by the stage
+         */
+        public StageCounters getStage(Stage stage) {
+            return stages.get(stage);
+        }
+
+        /**
+         * @return the number of images sent through the pipeline
+         */
+        public long getSubmitted() {
+            return submitted.sum();
+        }
+
+        /**
+         * @return the number of images skipped because their template already existed
+         */
+        public long getSkipped() {
+            return skipped.sum();
+        }
+
+        /**
+         * @return the number of images whose template was written
+         */
+        public long getEnrolled() {
+            return stages.get(Stage.PERSIST).getProcessed();
+        }
+
+        /**
+         * @return the images which could not be enrolled, in the order they failed
+         */
+        public List<Failure> getFailures() {
+            return Collections.unmodifiableList(new ArrayList<>(failures));
+        }
+
+        /**
+         * @return the time spent waiting for room in the queue of the first stage, in nanoseconds
+         */
+        public long getWalkBlockedNanos() {
+            return walkBlockedNanos.sum();
+        }
+
+        /**
+         * @return the duration of the run, in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+
+            final StringBuilder BUILDER = new StringBuilder();
+            final double SECONDS = elapsedNanos / 1e9;
+
+            BUILDER.append(String.format(Locale.ROOT, "%d enrolled, %d skipped, %d submitted in %.1f ms (%.1f images/s)%n",
+                    getEnrolled(), getSkipped(), getSubmitted(), elapsedNanos / 1e6, getEnrolled() / SECONDS));
+            BUILDER.append(String.format(Locale.ROOT, "%-8s %7s %9s %6s %10s %11s %13s%n", "stage", "workers",
+                    "processed", "failed", "busy ms", "blocked ms", "images/s busy"));
+
+            for (Stage stage : Stage.values()) {
+                final StageCounters COUNTERS = stages.get(stage);
+                final double BUSY_SECONDS = COUNTERS.getBusyNanos() / 1e9 / COUNTERS.getWorkers();
+
+                BUILDER.append(String.format(Locale.ROOT, "%-8s %7d %9d %6d %10.1f %11.1f %13.1f%n", stage,
+                        COUNTERS.getWorkers(), COUNTERS.getProcessed(), COUNTERS.getFailed(),
+                        COUNTERS.getBusyNanos() / 1e6, COUNTERS.getBlockedNanos() / 1e6,
+                        BUSY_SECONDS == 0 ? 0 : COUNTERS.getProcessed() / BUSY_SECONDS));
+            }
+
+            for (Failure failure : failures) {
+                BUILDER.append("cannot enroll ").append(failure).append(System.lineSeparator());
+            }
+
+            return BUILDER.toString();
+        }
+    }
+}
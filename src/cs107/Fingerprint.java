@@ -2,6 +2,9 @@ package cs107;
 
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Provides tools to compare fingerprint.
@@ -12,49 +15,109 @@ public class Fingerprint {
    * The number of pixels to consider in each direction when doing the linear
    * regression to compute the orientation.
    */
-    public final int ORIENTATION_DISTANCE = 16;
+    public static final int ORIENTATION_DISTANCE = 16;
 
   /**
    * The maximum distance between two minutiae to be considered matching.
    */
-    public final int DISTANCE_THRESHOLD = 5;
+    public static final int DISTANCE_THRESHOLD = 5;
 
   /**
    * The number of matching minutiae needed for two fingerprints to be considered
    * identical.
    */
-    public final int FOUND_THRESHOLD = 20;
+    public static final int FOUND_THRESHOLD = 20;
 
   /**
    * The distance between two angle to be considered identical.
    */
-    public final int ORIENTATION_THRESHOLD = 20;
+    public static final int ORIENTATION_THRESHOLD = 20;
 
   /**
    * The offset in each direction for the rotation to test when doing the
    * matching.
    */
-    public final int MATCH_ANGLE_OFFSET = 2;
+    public static final int MATCH_ANGLE_OFFSET = 2;
 
-    // the coordinates of the neighbours relatively to the current pixel
-    private static final Map<Integer, Integer[]> relativeNeighbourCoords = new HashMap<>();
+    // the coordinates of the neighbours relatively to the current pixel, indexed like in getNeighbours
+    static final int[] NEIGHBOUR_ROW_OFFSETS = {-1, -1, 0, 1, 1, 1, 0, -1};
+    static final int[] NEIGHBOUR_COL_OFFSETS = {0, 1, 1, 1, 0, -1, -1, -1};
 
-    static {
-        // format: index in neighbours, {col, row}
+    /**
+     * The methods computing the orientation of the minutiae in {@link #extract(boolean[][])}.
+     */
+    public enum OrientationMode {
+
+        /**
+         * A linear regression over the pixels connected to each minutia, as in
+         * {@link #computeOrientation(boolean[][], int, int, int)}.
+         */
+        PER_MINUTIA,
+
+        /**
+         * An orientation field computed once per skeleton, see {@link OrientationField}.
+         */
+        FIELD
+    }
+
+    /**
+     * The methods finding the alignments tried by {@link #match(MinutiaeSet, MinutiaeSet, AlignmentMode)}.
+     */
+    public enum AlignmentMode {
+
+        /**
+         * Every pair of minutiae, one from each fingerprint, as in {@link #match(List, List)}.
+         */
+        EXHAUSTIVE,
+
+        /**
+         * The pairs voting for the most likely alignments, see {@link HoughAligner}, or every pair
+         * when the minutiae are too far apart to vote.
+         */
+        HOUGH
+    }
+
+    // the accumulators of the Hough alignments, reused by every comparison of a thread
+    private static final ThreadLocal<HoughAligner> ALIGNERS = ThreadLocal.withInitial(HoughAligner::new);
 
-        // pixels above current pixel
-        relativeNeighbourCoords.put(7, new Integer[]{-1, -1});                                              // pixel 7
-        relativeNeighbourCoords.put(0, new Integer[]{-1, 0});                                               // pixel 0
-        relativeNeighbourCoords.put(1, new Integer[]{-1, 1});                                               // pixel 1
+    // the method computing the orientation of the minutiae
+    private static volatile OrientationMode orientationMode = OrientationMode.PER_MINUTIA;
 
-        // pixels on the same row as current pixel
-        relativeNeighbourCoords.put(2, new Integer[]{0, 1});                                                // pixel 2
-        relativeNeighbourCoords.put(6, new Integer[]{0, -1});                                               // pixel 6
+    // the listener receiving the diagnostics, null when nobody is listening
+    private static volatile FingerprintListener listener = null;
 
-        // pixels below current pixel
-        relativeNeighbourCoords.put(3, new Integer[]{1, 1});                                                // pixel 3
-        relativeNeighbourCoords.put(4, new Integer[]{1, 0});                                                // pixel 4
-        relativeNeighbourCoords.put(5, new Integer[]{1, -1});                                               // pixel 5
+    /**
+     * Registers the listener receiving the diagnostics of every stage.
+     * <p>
+     * When no listener is registered (the default), none of the diagnostics are computed.
+     *
+     * @param newListener the listener, or <code>null</code> to stop listening.
+     */
+    public static void setListener(FingerprintListener newListener) {
+        listener = newListener;
+    }
+
+    /**
+     * @return the listener receiving the diagnostics, or <code>null</code> if nobody is listening.
+     */
+    public static FingerprintListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Selects the method computing the orientation of the minutiae.
+     *
+     * @param newMode the method, {@link OrientationMode#PER_MINUTIA} by default.
+     */
+    public static void setOrientationMode(OrientationMode newMode) {
+        orientationMode = Objects.requireNonNull(newMode);
+    }
+
+    /**
+     * @return the method computing the orientation of the minutiae.
+     */
+    public static OrientationMode getOrientationMode() {
+        return orientationMode;
     }
 
     // TODO implement properly as part of a custom image class
@@ -95,6 +158,17 @@ public class Fingerprint {
         }
     }
 
+    /**
+     * Returns true if the selected pixel is black
+     * @param image bit-packed image which contains the pixel
+     * @param row y-coordinates of the pixel
+     * @param col x-coordinates of the pixel
+     * @return whether the pixel is black
+     */
+    public static boolean isBlack(BinaryImage image, int row, int col) {
+        return image.isBlack(row, col);
+    }
+
     /**
      * Returns true if the selected pixel is black
      * @param neighbours neighbouring pixels to another pixel
@@ -116,6 +190,17 @@ public class Fingerprint {
         return !isBlack(image, row, col);
     }
 
+    /**
+     * Returns true if the selected pixel is white
+     * @param image bit-packed image which contains the pixel
+     * @param row y-coordinates of the pixel
+     * @param col x-coordinates of the pixel
+     * @return whether the pixel is white
+     */
+    public static boolean isWhite(BinaryImage image, int row, int col) {
+        return !isBlack(image, row, col);
+    }
+
     /**
      * Returns true if the selected pixel is white
      * @param neighbours neighbouring pixels to another pixel
@@ -183,6 +268,42 @@ public class Fingerprint {
         return neighBoringValues;
     }
 
+    /**
+     * Returns an array containing the value of the 8 neighbours of the pixel at
+     * coordinates <code>(row, col)</code> in a bit-packed image.
+     * <p>
+     * The pixels follow the convention described in {@link #getNeighbours(boolean[][], int, int)},
+     * neighbours out of bounds of the image being considered white.
+     *
+     * @param image bit-packed image containing the pixel.
+     * @param row   the row of the pixel of interest.
+     * @param col   the column of the pixel of interest.
+     * @return An array containing each neighbours' value.
+     */
+    public static boolean[] getNeighbours(BinaryImage image, int row, int col) {
+        assert (image != null);
+
+        // the values around the current pixel
+        boolean[] neighbouringValues = new boolean[8];
+
+        // pixels above the current pixel
+        neighbouringValues[7] = image.isBlackOrOutside(row - 1, col - 1);   // the pixel in position 7
+        neighbouringValues[0] = image.isBlackOrOutside(row - 1, col);       // the pixel in position 0
+        neighbouringValues[1] = image.isBlackOrOutside(row - 1, col + 1);   // the pixel in position 1
+
+        // pixels on the same row as the current pixel
+        neighbouringValues[6] = image.isBlackOrOutside(row, col - 1);       // the pixel in position 6
+        neighbouringValues[2] = image.isBlackOrOutside(row, col + 1);       // the pixel in position 2
+
+        // pixels below the current pixel
+        neighbouringValues[5] = image.isBlackOrOutside(row + 1, col - 1);   // the pixel in position 5
+        neighbouringValues[4] = image.isBlackOrOutside(row + 1, col);       // the pixel in position 4
+        neighbouringValues[3] = image.isBlackOrOutside(row + 1, col + 1);   // the pixel in position 3
+
+        // returns the values around the current pixel
+        return neighbouringValues;
+    }
+
     // region getNeighbours helper methods
 
     private static boolean hasPixelToRight(boolean[][] image, int col) {
@@ -501,6 +622,20 @@ public class Fingerprint {
         return true;
     }
 
+    /**
+     * Returns <code>true</code> if the bit-packed images are identical and false otherwise.
+     * <p>
+     * The images are compared 64 pixels at a time.
+     *
+     * @param image1 bit-packed image.
+     * @param image2 bit-packed image.
+     * @return <code>True</code> if they are identical, <code>false</code>
+     *         otherwise.
+     */
+    public static boolean identical(BinaryImage image1, BinaryImage image2) {
+        return image1.equals(image2);
+    }
+
     /**
     * Internal method used by {@link #thin(boolean[][])}.
     *
@@ -526,34 +661,9 @@ public class Fingerprint {
             // loops through every pixel in each row
             for (int x = 0; x < IMAGE_WIDTH; x++) {
 
-                // the neighbours of the current pixel
-                boolean[] currentNeighbours = getNeighbours(image, y, x);
-                int currentBlackNeighbours = blackNeighbours(currentNeighbours);
-
-                // the condition for the pixel to be deleted
-                boolean isBlackPixel = image[y][x];
-                boolean allNeighboursAreNotNull = currentNeighbours != null;
-                boolean hasValidNumNeighbours = currentBlackNeighbours >= 2 && currentBlackNeighbours <= 6;
-                boolean isOnlyOneTransition = transitions(currentNeighbours) == 1;
-
-                // the value of the specific tiles to check for each step
-                boolean check1White;
-                boolean check2White;
-
-                if (step == 1) {    // step 1
-                    check1White = !currentNeighbours[0] || !currentNeighbours[2] || !currentNeighbours[4];
-                    check2White = !currentNeighbours[2] || !currentNeighbours[4] || !currentNeighbours[6];
-                } else {            // step 2
-                    check1White = !currentNeighbours[0] || !currentNeighbours[2] || !currentNeighbours[6];
-                    check2White = !currentNeighbours[0] || !currentNeighbours[4] || !currentNeighbours[6];
-                }
-
-                // if the pixel satisfies all the above condition...
-                if (isBlackPixel
-                        && allNeighboursAreNotNull
-                        && hasValidNumNeighbours
-                        && isOnlyOneTransition
-                        && check1White && check2White) {
+                // if the pixel satisfies all the conditions to be deleted...
+                // (the neighbours are packed into a single int and looked up, so that nothing is allocated)
+                if (image[y][x] && ThinningTable.canBeDeleted(ThinningTable.neighbourhood(image, y, x), step)) {
 
                     // ...removes it from the image (sets it to white)
                     imageCopy[y][x] = false;
@@ -565,6 +675,57 @@ public class Fingerprint {
         return imageCopy;
     }
 
+    /**
+     * Applies one thinning step to a bit-packed image.
+     *
+     * @param image bit-packed image.
+     * @param step  the step to apply, Step 0 or Step 1.
+     * @return A new image containing each pixel's value after the step.
+     * @see #thinningStep(boolean[][], int)
+     */
+    public static BinaryImage thinningStep(BinaryImage image, int step) {
+
+        // the image receiving the result of the step
+        BinaryImage thinnedImage = new BinaryImage(image.getHeight(), image.getWidth());
+
+        // applies the step, 64 pixels at a time
+        BitSlicedThinner.thinningStep(image, thinnedImage, step);
+
+        // returns the formatted image
+        return thinnedImage;
+    }
+
+    /**
+     * Checks whether a black pixel should be removed during a thinning step.
+     * This is the reference used to build the tables of {@link ThinningTable}.
+     * @param neighbours the neighbours of the pixel, as returned by {@link #getNeighbours(boolean[][], int, int)}
+     * @param step the step to apply, Step 0 or Step 1
+     * @return whether the pixel should be set to white
+     */
+    static boolean canBeDeleted(boolean[] neighbours, int step) {
+
+        // the number of black pixels around the current pixel
+        int currentBlackNeighbours = blackNeighbours(neighbours);
+
+        // the condition for the pixel to be deleted
+        boolean hasValidNumNeighbours = currentBlackNeighbours >= 2 && currentBlackNeighbours <= 6;
+        boolean isOnlyOneTransition = transitions(neighbours) == 1;
+
+        // the value of the specific tiles to check for each step
+        boolean check1White;
+        boolean check2White;
+
+        if (step == 1) {    // step 1
+            check1White = !neighbours[0] || !neighbours[2] || !neighbours[4];
+            check2White = !neighbours[2] || !neighbours[4] || !neighbours[6];
+        } else {            // step 2
+            check1White = !neighbours[0] || !neighbours[2] || !neighbours[6];
+            check2White = !neighbours[0] || !neighbours[4] || !neighbours[6];
+        }
+
+        return hasValidNumNeighbours && isOnlyOneTransition && check1White && check2White;
+    }
+
     /**
     * Compute the skeleton of a boolean image.
     *
@@ -574,260 +735,257 @@ public class Fingerprint {
     */
     public static boolean[][] thin(boolean[][] image) {
 
-        // debug images for each thinning step
-        ArrayList<int[][]> debugImages = new ArrayList<>();
-
-        // the dimensions of the image
-        final int IMAGE_HEIGHT = image.length;
-        final int IMAGE_WIDTH  = image[0].length;
+        // thins a bit-packed copy of the image, 64 pixels at a time
+        return thin(BinaryImage.fromArray(image)).toArray();
+    }
 
-        // the image from the last and current step
-        boolean[][] previousImage = new boolean[IMAGE_HEIGHT][IMAGE_WIDTH];
-        boolean[][] currentImage = new boolean[IMAGE_HEIGHT][IMAGE_WIDTH];
+    /**
+     * Compute the skeleton of a bit-packed image.
+     *
+     * @param image bit-packed image.
+     * @return a new image containing the value of each pixel after
+     *         applying the thinning algorithm.
+     * @see #thin(boolean[][])
+     */
+    public static BinaryImage thin(BinaryImage image) {
 
-        // initialises the current image as a copy of the initial image
-        copy2DArray(image, currentImage);
+        // reads the listener once, so that it cannot change halfway through
+        final FingerprintListener LISTENER = listener;
 
-        // for debug purposes, used to generate an image of the fingerprint for each thinning step taken
-        int i = 0;
+        // if nobody is listening, thins the image as fast as possible...
+        if (LISTENER == null) {
+            return new BitSlicedThinner().thin(image);
+        }
 
-        // while we can still apply some thinning to the image...
-        while (!identical(previousImage, currentImage)) {
+        // ...otherwise applies the steps one by one to report each iteration
+        final long START = System.nanoTime();
 
-            // applies thinning to the image
-            previousImage = thinningStep(currentImage, 1); // step 1
-            currentImage = thinningStep(previousImage, 0); // step 2
+        // the dimensions of the image
+        final int IMAGE_HEIGHT = image.getHeight();
+        final int IMAGE_WIDTH  = image.getWidth();
 
-            // generates up to the first 20 steps in thinning the fingerprint
-            if (i < 20) {
+        BinaryImage currentImage = image.copy();
 
-                int[][] previousImageInt = Helper.fromBinary(previousImage);
-                int[][] currentImageInt = Helper.fromBinary(currentImage);
+        // the number of pixels deleted by the second step of the current iteration
+        int deletedInStep2;
+        int iteration = 0;
 
-                emphasizeDifferences(previousImageInt, currentImageInt);
+        // while the second step of the last iteration still removed some pixels...
+        do {
+            // ...applies thinning to the image
+            BinaryImage afterStep1 = new BinaryImage(IMAGE_HEIGHT, IMAGE_WIDTH);
+            BinaryImage afterStep2 = new BinaryImage(IMAGE_HEIGHT, IMAGE_WIDTH);
 
-                // saves the 1st step
-                debugImages.add(previousImageInt);
-                i++;
-                // saves the 2nd step
-                debugImages.add(currentImageInt);
-                i++;
-            }
-        }
+            BitSlicedThinner.thinningStep(currentImage, afterStep1, 1);                     // step 1
+            deletedInStep2 = BitSlicedThinner.thinningStep(afterStep1, afterStep2, 0);     // step 2
 
-        // y:3 x:2
-        final boolean[][] connectedPixels = connectedPixels(currentImage, 13, 1, 10);
-        //final boolean[][] connectedPixels = connectedPixels(currentImage, 3, 2, 40);
+            LISTENER.onThinningIteration(iteration++, afterStep1, afterStep2);
+            currentImage = afterStep2;
 
-        Helper.writeBinary("test_connected_pixels.png", connectedPixels);
+        } while (deletedInStep2 != 0);
 
-        // generates a debug image based on all the steps taken in thinning the fingerprint
-        createDebugImage(debugImages);
+        LISTENER.onThinningFinished(currentImage);
+        LISTENER.onStage("thin", System.nanoTime() - START);
 
         // returns the thinned image
         return currentImage;
     }
 
-    private static void copy2DArray(boolean[][] original, boolean[][] copy) {
+    /**
+     * Compute the skeleton of a bit-packed image using a specific thinning algorithm.
+     * <p>
+     * The algorithm is opaque, so only the end of the thinning is reported to the listener.
+     *
+     * @param image   bit-packed image.
+     * @param thinner the algorithm to use.
+     * @return a new image containing the value of each pixel after
+     *         applying the thinning algorithm.
+     * @see #thin(boolean[][])
+     */
+    public static BinaryImage thin(BinaryImage image, Thinner thinner) {
 
-        // size of the array
-        final int ORIGINAL_HEIGHT = original.length;
-        final int ORIGINAL_WIDTH = original[0].length;
+        // reads the listener once, so that it cannot change halfway through
+        final FingerprintListener LISTENER = listener;
 
-        // loops through every row in the array...
-        for (int y = 0; y < ORIGINAL_HEIGHT; y++) {
-            // ...and copies its content
-            copy[y] = Arrays.copyOf(original[y], ORIGINAL_WIDTH);
+        if (LISTENER == null) {
+            return thinner.thin(image);
         }
-    }
 
-    // region thin debug methods
+        final long START = System.nanoTime();
+        BinaryImage skeleton = thinner.thin(image);
 
-    private static void emphasizeDifferences(int[][] original, int[][] toCompare) {
+        LISTENER.onThinningFinished(skeleton);
+        LISTENER.onStage("thin", System.nanoTime() - START);
 
-        // the size of the image
-        final int IMAGE_HEIGHT = original.length;
-        final int IMAGE_WIDTH = original[0].length;
-
-        // loops through every row of the image...
-        for (int y = 0; y < IMAGE_HEIGHT; y++) {
-            // ...and every pixel for that row
-            for (int x = 0; x < IMAGE_WIDTH; x++) {
-                // ...if the pixels in both images are not same, and the original pixel was black
-                if (original[y][x] != toCompare[y][x]) {
-                    // ...sets its color to red
-                    original[y][x] = Helper.toARGB(0, 255, 0, 0);
-                }
-            }
-        }
+        return skeleton;
     }
 
-    private static void createDebugImage(ArrayList<int[][]> debugImages) {
-
-        // the number of debug images
-        final int NUM_IMAGES = debugImages.size();
-
-        // the size of each individual debug image
-        final int IMAGE_HEIGHT = debugImages.get(0).length;
-        final int IMAGE_WIDTH = debugImages.get(0)[0].length;
-
-        // the width of the final image
-        final int FINAL_IMAGE_WIDTH = IMAGE_WIDTH * NUM_IMAGES;
-
-        // formatted debug image
-        final int[][] FINAL_DEBUG_IMAGE = new int[IMAGE_HEIGHT][FINAL_IMAGE_WIDTH];
-
-        // adds every debug image end-to-end to the final image
-        for (int y = 0; y < IMAGE_HEIGHT; y++) {
-            for (int x = 0; x < FINAL_IMAGE_WIDTH; x++) {
-
-                // the current debug image to add
-                int currentImage = x / IMAGE_WIDTH;
+    private static void copy2DArray(boolean[][] original, boolean[][] copy) {
 
-                // the index of the pixel to add from the debug image
-                int currentPixel = x % (IMAGE_WIDTH);
+        // size of the array
+        final int ORIGINAL_HEIGHT = original.length;
+        final int ORIGINAL_WIDTH = original[0].length;
 
-                // adds the currently selected pixel to the final image
-                FINAL_DEBUG_IMAGE[y][x] = debugImages.get(currentImage)[y][currentPixel];
-            }
+        // loops through every row in the array...
+        for (int y = 0; y < ORIGINAL_HEIGHT; y++) {
+            // ...and copies its content
+            copy[y] = Arrays.copyOf(original[y], ORIGINAL_WIDTH);
         }
-
-        // saves the debug image under png format
-        Helper.writeARGB("debug_fingerprints.png", FINAL_DEBUG_IMAGE);
     }
 
-    // endregion
-
     /**
     * Computes all pixels that are connected to the pixel at coordinate
     * <code>(row, col)</code> and within the given distance of the pixel.
+    * <p>
+    * Every pixel reachable through black 8-neighbours without leaving the
+    * <code>(2 * distance + 1)</code> wide window around the pixel is found,
+    * including the ones of every branch of a bifurcation, rather than the
+    * pixels of a single path.
     *
     * @param image    array containing each pixel's boolean value.
     * @param row      the first coordinate of the pixel of interest.
     * @param col      the second coordinate of the pixel of interest.
     * @param distance the maximum distance at which a pixel is considered.
-    * @return An array where <code>true</code> means that the pixel is within
+    * @return An array of the size of <code>image</code>, indexed like it, where
+    *         <code>true</code> means that the pixel is within
     *         <code>distance</code> and connected to the pixel at
     *         <code>(row, col)</code>.
     */
     public static boolean[][] connectedPixels(boolean[][] image, int row, int col, int distance) {
 
-        // the width of the square area to search
-        final int SEARCH_AREA = distance * 2 + 1;
-
-        // the pixels connected to the minutia within the search area
-        final boolean[][] CONNECTED_PIXELS = new boolean[SEARCH_AREA][SEARCH_AREA];
-
-        for (boolean[] pixelRow : CONNECTED_PIXELS) {
-            Arrays.fill(pixelRow, false);
-        }
-
-        // the original coordinates
-        final int[] ORIGINAL_COORDS = new int[]{row, col};
-
-        // the current coordinates
-        int[] currentCords = Arrays.copyOf(ORIGINAL_COORDS, ORIGINAL_COORDS.length);
-
-        // creates a trail of connected pixels within the specified distance
-        trail(CONNECTED_PIXELS, image, ORIGINAL_COORDS, currentCords, distance);
+        // searches the connected pixels within the window around the pixel...
+        ConnectedPixels connectedPixels = new ConnectedPixels();
+        connectedPixels.compute(image, row, col, distance);
 
-        // returns the final array of connected pixels
-        return CONNECTED_PIXELS;
+        // ...and writes them into an image of the same size
+        return connectedPixels.toArray(image.length, image[0].length);
     }
 
-    // region connectedPixels helper methods
-
-    private static void trail(boolean[][] connectedPixels, boolean[][] image,
-                              int[] originalCoords, int[] currentCoords,
-                              int distance) {
+    /**
+     * Computes all pixels that are connected to the pixel at coordinate
+     * <code>(row, col)</code> and within the given distance of the pixel,
+     * reusing the buffers of <code>window</code> instead of allocating an image.
+     *
+     * @param image    bit-packed image.
+     * @param row      the first coordinate of the pixel of interest.
+     * @param col      the second coordinate of the pixel of interest.
+     * @param distance the maximum distance at which a pixel is considered.
+     * @param window   the buffers receiving the connected pixels, see {@link ConnectedPixels#isConnected(int, int)}.
+     * @return the number of connected pixels, including the pixel of interest.
+     */
+    public static int connectedPixels(BinaryImage image, int row, int col, int distance, ConnectedPixels window) {
+        return window.compute(image, row, col, distance);
+    }
 
-        // gets the original coordinates
-        int originalX = originalCoords[1];
-        int originalY = originalCoords[0];
+    /**
+    * Computes the slope of a minutia using linear regression.
+    *
+    * @param connectedPixels the result of
+    *                        {@link #connectedPixels(boolean[][], int, int, int)}.
+    * @param row             the row of the minutia.
+    * @param col             the col of the minutia.
+    * @return the slope.
+    */
+    public static double computeSlope(boolean[][] connectedPixels, int row, int col) {
 
-        // gets the current coordinates
-        int curX = currentCoords[1];
-        int curY = currentCoords[0];
+        // the regression sums, relatively to the minutia
+        long sumXX = 0;
+        long sumYY = 0;
+        long sumXY = 0;
 
-        // stars the trail at the first pixel
-        connectedPixels[curY][curX] = true;
+        // loops through every connected pixel...
+        for (int y = 0; y < connectedPixels.length; y++) {
+            for (int x = 0; x < connectedPixels[y].length; x++) {
 
-        // gets the value of the neighbouring pixels
-        boolean[] neighbours = getNeighbours(image, curY, curX);
+                if (connectedPixels[y][x]) {
+                    // ...and adds its coordinates, x growing to the right and y growing upwards
+                    final int X = x - col;
+                    final int Y = row - y;
 
-        // the number of surrounding pixels
-        final int NUM_NEIGHBOURS = neighbours.length;
+                    sumXX += X * X;
+                    sumYY += Y * Y;
+                    sumXY += X * Y;
+                }
+            }
+        }
 
-        // whether a trail has been found
-        boolean trailFound = false;
+        return slope(sumXX, sumYY, sumXY);
+    }
 
-        // loops through every neighbour...
-        for (int currentNeighbour = 0; currentNeighbour < NUM_NEIGHBOURS; currentNeighbour++) {
+    // region orientation helper methods
 
-            // if a trail has been found...
-            if (trailFound) {
-                // ...exits the for loop
-                break;
-            }
+    /**
+     * Computes the slope of the regression line going through the minutia
+     * @param sumXX the sum of <code>x * x</code> over the connected pixels
+     * @param sumYY the sum of <code>y * y</code> over the connected pixels
+     * @param sumXY the sum of <code>x * y</code> over the connected pixels
+     * @return the slope, infinite if the pixels form a vertical line
+     */
+    static double slope(long sumXX, long sumYY, long sumXY) {
 
-            // the size of the connectedPixels Array
-            final int SIZE = connectedPixels.length;
+        // if every pixel is on the same column as the minutia, the line is vertical
+        if (sumXX == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
 
-            // the difference in x and y coordinates
-            final int DELTA_X = curX - originalX;
-            final int DELTA_Y = curY - originalY;
+        // regresses y on x for lines closer to horizontal, and x on y for lines closer to vertical
+        if (sumXX >= sumYY) {
+            return (double) sumXY / sumXX;
+        } else {
+            return (double) sumYY / sumXY;
+        }
+    }
 
-            // checks that we have not reached the maximum allowed distance
-            final boolean HAVE_NOT_REACHED_MAX_DISTANCE = (DELTA_X < distance) && (DELTA_Y < distance);
-            // checks we are still inside the array
-            final boolean ARE_INSIDE_ARRAY = ((DELTA_X < SIZE) && (DELTA_Y < SIZE));
+    /**
+     * Checks whether a pixel is above the line perpendicular to the slope and going through the minutia
+     * @param x the column of the pixel relatively to the minutia, growing to the right
+     * @param y the row of the pixel relatively to the minutia, growing upwards
+     * @param slope the slope of the minutia
+     * @return whether the pixel is above the perpendicular
+     */
+    static boolean isAbovePerpendicular(int x, int y, double slope) {
+        return y >= -x / slope;
+    }
 
-            // ...if the neighbouring pixel is black, and we haven't reached the maximum allowed distance yet
-            if (isBlack(neighbours, currentNeighbour)
-                    && HAVE_NOT_REACHED_MAX_DISTANCE
-                    && ARE_INSIDE_ARRAY) {
+    /**
+     * Turns the slope into an angle, pointing to the side where most of the connected pixels are
+     * @param slope the slope of the minutia
+     * @param numAbove the number of connected pixels above the perpendicular
+     * @param numBelow the number of connected pixels below the perpendicular
+     * @return the angle in radians, between <code>-PI / 2</code> and <code>3 * PI / 2</code>
+     */
+    static double angle(double slope, int numAbove, int numBelow) {
 
-                // remembers that a trail has been found
-                trailFound = true;
+        double angle = Math.atan(slope);
 
-                // ...gets its coordinates relative to the current pixel
-                Integer[] relativeCoordinates = relativeNeighbourCoords.get(currentNeighbour);
+        // if most pixels are on the other side, turns the angle around
+        // (a horizontal line points to the right, which is above its vertical perpendicular)
+        if ((angle >= 0 && numBelow > numAbove) || (angle < 0 && numAbove > numBelow)) {
+            angle += Math.PI;
+        }
 
-                // converts these to absolute coordinates along the image
-                int absoluteX = curX + relativeCoordinates[1];
-                int absoluteY = curY + relativeCoordinates[0];
+        return angle;
+    }
 
-                // if the selected pixel is already a part of the path...
-                if (connectedPixels[absoluteY][absoluteX] == connectedPixels[curY][curX]) {
-                    // ...disregards it
-                    return;
-                }
+    /**
+     * Converts an angle into an orientation
+     * @param angle the angle in radians, as returned by {@link #computeAngle(boolean[][], int, int, double)}
+     * @return the orientation in degrees, between <code>0</code> and <code>359</code>
+     */
+    static int orientation(double angle) {
 
-                // updates the value of the current coordinates
-                currentCoords = new int[]{absoluteY, absoluteX};
+        int orientation = (int) Math.round(Math.toDegrees(angle));
 
-                // continues the trail from the current pixel
-                trail(connectedPixels, image, originalCoords, currentCoords, distance);
-            }
+        // keeps the orientation positive
+        if (orientation < 0) {
+            orientation += 360;
         }
+
+        return orientation;
     }
 
     // endregion
 
-    /**
-    * Computes the slope of a minutia using linear regression.
-    *
-    * @param connectedPixels the result of
-    *                        {@link #connectedPixels(boolean[][], int, int, int)}.
-    * @param row             the row of the minutia.
-    * @param col             the col of the minutia.
-    * @return the slope.
-    */
-    public static double computeSlope(boolean[][] connectedPixels, int row, int col) {
-      //TODO implement
-      return 0;
-    }
-
     /**
     * Computes the orientation of a minutia in radians.
     *
@@ -840,8 +998,27 @@ public class Fingerprint {
     * @return the orientation of the minutia in radians.
     */
     public static double computeAngle(boolean[][] connectedPixels, int row, int col, double slope) {
-      //TODO implement
-      return 0;
+
+        // the number of connected pixels on each side of the perpendicular
+        int numAbove = 0;
+        int numBelow = 0;
+
+        // loops through every connected pixel...
+        for (int y = 0; y < connectedPixels.length; y++) {
+            for (int x = 0; x < connectedPixels[y].length; x++) {
+
+                // ...and counts it on its side of the perpendicular
+                if (connectedPixels[y][x]) {
+                    if (isAbovePerpendicular(x - col, row - y, slope)) {
+                        numAbove++;
+                    } else {
+                        numBelow++;
+                    }
+                }
+            }
+        }
+
+        return angle(slope, numAbove, numBelow);
     }
 
     /**
@@ -856,8 +1033,33 @@ public class Fingerprint {
     * @return The orientation in degrees.
     */
     public static int computeOrientation(boolean[][] image, int row, int col, int distance) {
-      //TODO implement
-      return 0;
+
+        // the pixels of the ridge ending at the minutia
+        final boolean[][] CONNECTED_PIXELS = connectedPixels(image, row, col, distance);
+
+        // fits a line through them, and finds the side they are on
+        final double SLOPE = computeSlope(CONNECTED_PIXELS, row, col);
+        final double ANGLE = computeAngle(CONNECTED_PIXELS, row, col, SLOPE);
+
+        return orientation(ANGLE);
+    }
+
+    /**
+     * Computes the orientation of the minutia that the coordinate <code>(row,
+     * col)</code>, reusing the buffers of <code>estimator</code>.
+     *
+     * @param image     bit-packed image.
+     * @param row       the first coordinate of the pixel of interest.
+     * @param col       the second coordinate of the pixel of interest.
+     * @param distance  the distance to be considered in each direction to compute
+     *                  the orientation.
+     * @param estimator the buffers used to find the connected pixels.
+     * @return The orientation in degrees.
+     * @see #computeOrientation(boolean[][], int, int, int)
+     */
+    public static int computeOrientation(BinaryImage image, int row, int col, int distance,
+                                         OrientationEstimator estimator) {
+        return estimator.computeOrientation(image, row, col, distance);
     }
 
     /**
@@ -870,8 +1072,104 @@ public class Fingerprint {
     * @see #thin(boolean[][])
     */
     public static List<int[]> extract(boolean[][] image) {
-      //TODO implement
-      return null;
+
+        // extracts the minutiae from a bit-packed copy of the image
+        return extract(BinaryImage.fromArray(image)).toList();
+    }
+
+    /**
+     * Extracts the minutiae from a thinned bit-packed image, with the current orientation mode.
+     *
+     * @param image bit-packed image.
+     * @return The set of all minutiae, in the order of {@link #extract(boolean[][])}.
+     * @see #setOrientationMode(OrientationMode)
+     */
+    public static MinutiaeSet extract(BinaryImage image) {
+        return extract(image, orientationMode, null);
+    }
+
+    /**
+     * Extracts the minutiae from a thinned bit-packed image, with a given orientation mode.
+     * <p>
+     * The callers recording the mode next to the minutiae, in a {@link Template} for instance,
+     * read the current mode once and pass it here, so that a concurrent
+     * {@link #setOrientationMode(OrientationMode)} cannot make them disagree.
+     *
+     * @param image bit-packed image.
+     * @param mode  the method computing the orientation of the minutiae.
+     * @return The set of all minutiae, in the order of {@link #extract(boolean[][])}.
+     */
+    public static MinutiaeSet extract(BinaryImage image, OrientationMode mode) {
+        return extract(image, mode, null);
+    }
+
+    /**
+     * Extracts the minutiae from a thinned bit-packed image, with a given orientation mode,
+     * computing the {@link OrientationField} of {@link OrientationMode#FIELD} on a pool.
+     *
+     * @param image bit-packed image.
+     * @param mode  the method computing the orientation of the minutiae.
+     * @param pool  the pool computing the rows of blocks of the field, or <code>null</code> to
+     *              compute them on the calling thread. It is not used by
+     *              {@link OrientationMode#PER_MINUTIA}.
+     * @return The set of all minutiae, in the order of {@link #extract(boolean[][])}.
+     */
+    public static MinutiaeSet extract(BinaryImage image, OrientationMode mode, ForkJoinPool pool) {
+
+        Objects.requireNonNull(mode);
+
+        // reads the listener once, so that it cannot change halfway through
+        final FingerprintListener LISTENER = listener;
+        final long START = System.nanoTime();
+
+        final long[] WORDS = image.words();
+        final int IMAGE_HEIGHT = image.getHeight();
+        final int IMAGE_WIDTH = image.getWidth();
+        final int WORDS_PER_ROW = image.getWordsPerRow();
+
+        // the buffers reused for the orientation of every minutia, or the field shared by all of them
+        final OrientationEstimator ESTIMATOR = new OrientationEstimator();
+        final OrientationField FIELD = mode == OrientationMode.FIELD
+                ? new OrientationField(image, OrientationField.DEFAULT_BLOCK_SIZE, pool)
+                : null;
+
+        MinutiaeSet minutiae = new MinutiaeSet();
+
+        // loops through every black pixel, apart from the ones on the border of the image...
+        for (int y = 1; y < IMAGE_HEIGHT - 1; y++) {
+            for (int w = 0; w < WORDS_PER_ROW; w++) {
+                for (long remaining = WORDS[y * WORDS_PER_ROW + w]; remaining != 0; remaining &= remaining - 1) {
+
+                    final int X = (w << BinaryImage.ADDRESS_BITS) + Long.numberOfTrailingZeros(remaining);
+
+                    if (X == 0 || X == IMAGE_WIDTH - 1) {
+                        continue;
+                    }
+
+                    // ...and keeps the ridge endings (1 transition) and bifurcations (3 transitions)
+                    final int TRANSITIONS = ThinningTable.transitions(ThinningTable.neighbourhood(image, y, X));
+
+                    if (TRANSITIONS == 1 || TRANSITIONS == 3) {
+
+                        final int ORIENTATION = FIELD == null
+                                ? ESTIMATOR.computeOrientation(image, y, X, ORIENTATION_DISTANCE)
+                                : FIELD.computeOrientation(y, X);
+
+                        minutiae.add(y, X, ORIENTATION);
+
+                        if (LISTENER != null) {
+                            LISTENER.onMinutia(new int[]{y, X, ORIENTATION});
+                        }
+                    }
+                }
+            }
+        }
+
+        if (LISTENER != null) {
+            LISTENER.onStage("extract", System.nanoTime() - START);
+        }
+
+        return minutiae;
     }
 
     /**
@@ -884,8 +1182,24 @@ public class Fingerprint {
     * @return the minutia rotated around the given center.
     */
     public static int[] applyRotation(int[] minutia, int centerRow, int centerCol, int rotation) {
-      //TODO implement
-      return null;
+
+        // the coordinates of the minutia relatively to the center, x growing to the right and y upwards
+        final int X = minutia[1] - centerCol;
+        final int Y = centerRow - minutia[0];
+
+        // the rotation in radians
+        final double ANGLE = Math.toRadians(rotation);
+
+        // rotates the coordinates around the center
+        final double NEW_X = X * Math.cos(ANGLE) - Y * Math.sin(ANGLE);
+        final double NEW_Y = X * Math.sin(ANGLE) + Y * Math.cos(ANGLE);
+
+        // converts them back to rows and columns, keeping the orientation between 0 and 359
+        final int NEW_ROW = (int) Math.round(centerRow - NEW_Y);
+        final int NEW_COL = (int) Math.round(NEW_X + centerCol);
+        final int NEW_ORIENTATION = Math.floorMod(minutia[2] + rotation, 360);
+
+        return new int[]{NEW_ROW, NEW_COL, NEW_ORIENTATION};
     }
 
     /**
@@ -897,8 +1211,7 @@ public class Fingerprint {
     * @return the translated minutia.
     */
     public static int[] applyTranslation(int[] minutia, int rowTranslation, int colTranslation) {
-      //TODO implement
-      return null;
+        return new int[]{minutia[0] - rowTranslation, minutia[1] - colTranslation, minutia[2]};
     }
 
     /**
@@ -915,8 +1228,9 @@ public class Fingerprint {
     */
     public static int[] applyTransformation(int[] minutia, int centerRow, int centerCol, int rowTranslation,
       int colTranslation, int rotation) {
-      //TODO implement
-      return null;
+
+        // translates the minutia, then rotates it around the center
+        return applyRotation(applyTranslation(minutia, rowTranslation, colTranslation), centerRow, centerCol, rotation);
     }
 
     /**
@@ -933,8 +1247,16 @@ public class Fingerprint {
     */
     public static List<int[]> applyTransformation(List<int[]> minutiae, int centerRow, int centerCol, int rowTranslation,
       int colTranslation, int rotation) {
-      //TODO implement
-      return null;
+
+        List<int[]> transformedMinutiae = new ArrayList<>(minutiae.size());
+
+        // transforms every minutia, keeping their order
+        for (int[] minutia : minutiae) {
+            transformedMinutiae.add(applyTransformation(minutia, centerRow, centerCol, rowTranslation,
+                    colTranslation, rotation));
+        }
+
+        return transformedMinutiae;
     }
     /**
     * Counts the number of overlapping minutiae.
@@ -949,8 +1271,52 @@ public class Fingerprint {
     */
     public static int matchingMinutiaeCount(List<int[]> minutiae1, List<int[]> minutiae2, int maxDistance,
       int maxOrientation) {
-      //TODO implement
-      return 0;
+        return matchingMinutiaeCount(MinutiaeSet.fromList(minutiae1), MinutiaeSet.fromList(minutiae2),
+                maxDistance, maxOrientation);
+    }
+
+    /**
+     * Counts the number of overlapping minutiae.
+     *
+     * @param minutiae1      the first set of minutiae.
+     * @param minutiae2      the second set of minutiae.
+     * @param maxDistance    the maximum distance between two minutiae to consider
+     *                       them as overlapping.
+     * @param maxOrientation the maximum difference of orientation between two
+     *                       minutiae to consider them as overlapping.
+     * @return the number of minutiae of the first set overlapping at least one minutia of the second set.
+     * @see #matchingMinutiaeCount(List, List, int, int)
+     */
+    public static int matchingMinutiaeCount(MinutiaeSet minutiae1, MinutiaeSet minutiae2, int maxDistance,
+                                            int maxOrientation) {
+
+        // compares the squared distances, which stays exact with integers
+        final int MAX_SQUARED_DISTANCE = maxDistance * maxDistance;
+
+        int numMatches = 0;
+
+        // for every minutia of the first set...
+        for (int i = 0; i < minutiae1.size(); i++) {
+
+            final int ROW = minutiae1.getRow(i);
+            final int COL = minutiae1.getCol(i);
+            final int ORIENTATION = minutiae1.getOrientation(i);
+
+            // ...looks for a close enough minutia of the second set, with a close enough orientation
+            for (int j = 0; j < minutiae2.size(); j++) {
+
+                final int DELTA_ROW = minutiae2.getRow(j) - ROW;
+                final int DELTA_COL = minutiae2.getCol(j) - COL;
+
+                if (DELTA_ROW * DELTA_ROW + DELTA_COL * DELTA_COL <= MAX_SQUARED_DISTANCE
+                        && Math.abs(minutiae2.getOrientation(j) - ORIENTATION) <= maxOrientation) {
+                    numMatches++;
+                    break;
+                }
+            }
+        }
+
+        return numMatches;
     }
 
     /**
@@ -962,7 +1328,386 @@ public class Fingerprint {
     *         otherwise.
     */
     public static boolean match(List<int[]> minutiae1, List<int[]> minutiae2) {
-      //TODO implement
-      return false;
+        return match(MinutiaeSet.fromList(minutiae1), MinutiaeSet.fromList(minutiae2));
+    }
+
+    /**
+     * Compares the minutiae from two fingerprints.
+     * <p>
+     * Every pair of minutiae is tried as an alignment: the second set is translated so that the
+     * minutia of the second fingerprint lands on the one of the first fingerprint, and rotated
+     * around it so that their orientations agree, give or take {@link #MATCH_ANGLE_OFFSET} degrees.
+     *
+     * @param minutiae1 the set of minutiae of the first fingerprint.
+     * @param minutiae2 the set of minutiae of the second fingerprint.
+     * @return Returns <code>true</code> if they match and <code>false</code>
+     *         otherwise.
+     * @see #match(List, List)
+     */
+    public static boolean match(MinutiaeSet minutiae1, MinutiaeSet minutiae2) {
+
+        // buckets the minutiae which do not move, once for every alignment
+        return match(new MinutiaeGrid(minutiae1, DISTANCE_THRESHOLD), minutiae2);
+    }
+
+    /**
+     * Compares the minutiae from two fingerprints, the first one being already bucketed.
+     * <p>
+     * Building the grid of a fingerprint once and reusing it saves the work when the same
+     * fingerprint is compared with many others.
+     *
+     * @param grid1     the minutiae of the first fingerprint, in cells at least
+     *                  {@link #DISTANCE_THRESHOLD} wide.
+     * @param minutiae2 the set of minutiae of the second fingerprint.
+     * @return Returns <code>true</code> if they match and <code>false</code>
+     *         otherwise.
+     * @see #match(MinutiaeSet, MinutiaeSet)
+     */
+    public static boolean match(MinutiaeGrid grid1, MinutiaeSet minutiae2) {
+        return match(grid1, minutiae2, null);
+    }
+
+    /**
+     * Compares the minutiae from two fingerprints, the first one being already bucketed, and
+     * counts the work done.
+     * <p>
+     * The comparison stops at the first alignment reaching {@link #FOUND_THRESHOLD} matching
+     * minutiae, and every alignment is abandoned as soon as the minutiae left to look up can no
+     * longer reach it (see {@link MinutiaeGrid#countMatches(MinutiaeSet, int, int, int)}). If the
+     * first fingerprint has fewer minutiae than the threshold, no alignment is tried at all.
+     *
+     * @param grid1     the minutiae of the first fingerprint, in cells at least
+     *                  {@link #DISTANCE_THRESHOLD} wide.
+     * @param minutiae2 the set of minutiae of the second fingerprint.
+     * @param counters  the counters receiving the work done, or <code>null</code>.
+     * @return Returns <code>true</code> if they match and <code>false</code>
+     *         otherwise.
+     * @see #match(MinutiaeSet, MinutiaeSet)
+     */
+    public static boolean match(MinutiaeGrid grid1, MinutiaeSet minutiae2, MatchCounters counters) {
+        return match(grid1, minutiae2, AlignmentMode.EXHAUSTIVE, counters);
+    }
+
+    /**
+     * Compares the minutiae from two fingerprints, trying the alignments found by a given method.
+     *
+     * @param minutiae1 the set of minutiae of the first fingerprint.
+     * @param minutiae2 the set of minutiae of the second fingerprint.
+     * @param mode      the method finding the alignments to try.
+     * @return Returns <code>true</code> if they match and <code>false</code>
+     *         otherwise.
+     * @see #match(MinutiaeGrid, MinutiaeSet, AlignmentMode, MatchCounters)
+     */
+    public static boolean match(MinutiaeSet minutiae1, MinutiaeSet minutiae2, AlignmentMode mode) {
+        return match(new MinutiaeGrid(minutiae1, DISTANCE_THRESHOLD), minutiae2, mode, null);
+    }
+
+    /**
+     * Compares the minutiae from two fingerprints, the first one being already bucketed, trying
+     * the alignments found by a given method, and counts the work done.
+     * <p>
+     * With {@link AlignmentMode#EXHAUSTIVE}, every pair of minutiae is tried as an alignment, as in
+     * {@link #match(MinutiaeGrid, MinutiaeSet, MatchCounters)}. With {@link AlignmentMode#HOUGH},
+     * every pair of minutiae only votes for its alignment, and only the pairs which first voted for
+     * the {@link HoughAligner#DEFAULT_NUM_PEAKS} most voted alignments are tried. Both modes try a
+     * pair in the same way, so the Hough mode never finds a match the exhaustive one does not find,
+     * but it can miss one whose best pairs are not among the peaks. Above
+     * {@link HoughAligner#MAX_PAIRS} pairs, only a sample of them votes, and the sets too spread
+     * out for the accumulator are compared exhaustively, see {@link HoughAligner#tryVote}.
+     *
+     * @param grid1     the minutiae of the first fingerprint, in cells at least
+     *                  {@link #DISTANCE_THRESHOLD} wide.
+     * @param minutiae2 the set of minutiae of the second fingerprint.
+     * @param mode      the method finding the alignments to try.
+     * @param counters  the counters receiving the work done, or <code>null</code>.
+     * @return Returns <code>true</code> if they match and <code>false</code>
+     *         otherwise.
+     */
+    public static boolean match(MinutiaeGrid grid1, MinutiaeSet minutiae2, AlignmentMode mode,
+                                MatchCounters counters) {
+
+        final MinutiaeSet minutiae1 = grid1.getMinutiae();
+        boolean found = false;
+
+        // every matching minutia of the first fingerprint is counted once, so the threshold is out of reach
+        if (minutiae1.size() >= FOUND_THRESHOLD) {
+
+            // the transformed minutiae, reused for every alignment
+            final MinutiaeSet TRANSFORMED = new MinutiaeSet(minutiae2.size());
+
+            // the sets too spread out to vote are compared exhaustively
+            final HoughAligner ALIGNER = mode == AlignmentMode.HOUGH ? ALIGNERS.get() : null;
+            final int NUM_PEAKS = ALIGNER == null ? -1
+                    : ALIGNER.tryVote(minutiae1, minutiae2, HoughAligner.DEFAULT_NUM_PEAKS);
+
+            if (NUM_PEAKS >= 0) {
+
+                // tries the pairs of the most voted alignments...
+                for (int peak = 0; peak < NUM_PEAKS && !found; peak++) {
+                    found = tryAlignment(grid1, minutiae2, ALIGNER.getPeakAnchor1(peak),
+                            ALIGNER.getPeakAnchor2(peak), TRANSFORMED, counters);
+                }
+
+            } else {
+
+                // ...or every pair of minutiae
+                for (int i = 0; i < minutiae1.size() && !found; i++) {
+                    for (int j = 0; j < minutiae2.size() && !found; j++) {
+                        found = tryAlignment(grid1, minutiae2, i, j, TRANSFORMED, counters);
+                    }
+                }
+            }
+        }
+
+        if (counters != null) {
+            counters.recordComparison(found);
+        }
+
+        return found;
     }
+
+    /**
+     * Compares the minutiae from two fingerprints, the first one being already bucketed, trying
+     * every pair of minutiae on the threads of a pool, and counts the work done.
+     * <p>
+     * The minutiae of the first fingerprint are split between tasks, each one trying the pairs of
+     * its minutiae with its own {@link MinutiaeGrid#copy()}. As soon as one alignment reaches
+     * {@link #FOUND_THRESHOLD} matching minutiae, every task stops before its next pair. The result
+     * is always the same as {@link #match(MinutiaeGrid, MinutiaeSet, MatchCounters)}, but more
+     * alignments can be tried before stopping, depending on how the tasks are scheduled.
+     * <p>
+     * The comparison uses at most the parallelism of the pool, so a pool dedicated to the
+     * comparisons, like <code>new ForkJoinPool(2)</code>, bounds the cores taken from the other
+     * requests.
+     *
+     * @param grid1     the minutiae of the first fingerprint, in cells at least
+     *                  {@link #DISTANCE_THRESHOLD} wide.
+     * @param minutiae2 the set of minutiae of the second fingerprint.
+     * @param pool      the pool trying the alignments.
+     * @param counters  the counters receiving the work done, or <code>null</code>.
+     * @return Returns <code>true</code> if they match and <code>false</code>
+     *         otherwise.
+     */
+    public static boolean match(MinutiaeGrid grid1, MinutiaeSet minutiae2, ForkJoinPool pool,
+                                MatchCounters counters) {
+
+        Objects.requireNonNull(pool);
+
+        final MinutiaeSet minutiae1 = grid1.getMinutiae();
+        final AtomicBoolean FOUND = new AtomicBoolean(false);
+
+        // every matching minutia of the first fingerprint is counted once, so the threshold is out of reach
+        if (minutiae1.size() >= FOUND_THRESHOLD) {
+            final AlignmentTask TASK = new AlignmentTask(grid1, minutiae2, 0, minutiae1.size(), FOUND,
+                    counters != null);
+            pool.invoke(TASK);
+
+            if (counters != null) {
+                counters.add(TASK.counters);
+            }
+        }
+
+        if (counters != null) {
+            counters.recordComparison(FOUND.get());
+        }
+
+        return FOUND.get();
+    }
+
+    /**
+     * Computes the largest number of matching minutiae over the alignments found by a given method.
+     * <p>
+     * The alignments are the same as in {@link #match(MinutiaeGrid, MinutiaeSet, AlignmentMode, MatchCounters)},
+     * but none of them stops the search: the result is the {@link #matchingMinutiaeCount(MinutiaeSet, MinutiaeSet, int, int)}
+     * of the best one, which scores how well the fingerprints match. Every alignment is abandoned
+     * as soon as it cannot beat the best count so far.
+     *
+     * @param grid1     the minutiae of the first fingerprint, in cells at least
+     *                  {@link #DISTANCE_THRESHOLD} wide.
+     * @param minutiae2 the set of minutiae of the second fingerprint.
+     * @param mode      the method finding the alignments to try.
+     * @return the number of minutiae of the first fingerprint overlapping the second one at the
+     *         best alignment, which is at least {@link #FOUND_THRESHOLD} if and only if the
+     *         fingerprints match.
+     */
+    public static int bestMatchingCount(MinutiaeGrid grid1, MinutiaeSet minutiae2, AlignmentMode mode) {
+
+        final MinutiaeSet minutiae1 = grid1.getMinutiae();
+
+        // the transformed minutiae, reused for every alignment
+        final MinutiaeSet TRANSFORMED = new MinutiaeSet(minutiae2.size());
+
+        int best = 0;
+
+        // the sets too spread out to vote are compared exhaustively
+        final HoughAligner ALIGNER = mode == AlignmentMode.HOUGH ? ALIGNERS.get() : null;
+        final int NUM_PEAKS = ALIGNER == null ? -1
+                : ALIGNER.tryVote(minutiae1, minutiae2, HoughAligner.DEFAULT_NUM_PEAKS);
+
+        if (NUM_PEAKS >= 0) {
+
+            // tries the pairs of the most voted alignments...
+            for (int peak = 0; peak < NUM_PEAKS && best < minutiae1.size(); peak++) {
+                best = bestAlignmentCount(grid1, minutiae2, ALIGNER.getPeakAnchor1(peak),
+                        ALIGNER.getPeakAnchor2(peak), TRANSFORMED, best);
+            }
+
+        } else {
+
+            // ...or every pair of minutiae, until every minutia of the first fingerprint overlaps
+            for (int i = 0; i < minutiae1.size() && best < minutiae1.size(); i++) {
+                for (int j = 0; j < minutiae2.size() && best < minutiae1.size(); j++) {
+                    best = bestAlignmentCount(grid1, minutiae2, i, j, TRANSFORMED, best);
+                }
+            }
+        }
+
+        return best;
+    }
+
+    // region match helper methods
+
+    /**
+     * Aligns a minutia of the second fingerprint on a minutia of the first one, and checks whether
+     * enough minutiae overlap for one of the rotations around their difference of orientation
+     * @param i the index of the minutia of the first fingerprint
+     * @param j the index of the minutia of the second fingerprint
+     * @param transformed the set receiving the transformed minutiae
+     * @return whether one of the rotations makes at least {@link #FOUND_THRESHOLD} minutiae overlap
+     */
+    private static boolean tryAlignment(MinutiaeGrid grid1, MinutiaeSet minutiae2, int i, int j,
+                                        MinutiaeSet transformed, MatchCounters counters) {
+
+        final MinutiaeSet minutiae1 = grid1.getMinutiae();
+
+        // aligns the second minutia on the first one...
+        final int CENTER_ROW = minutiae1.getRow(i);
+        final int CENTER_COL = minutiae1.getCol(i);
+        final int ROW_TRANSLATION = minutiae2.getRow(j) - CENTER_ROW;
+        final int COL_TRANSLATION = minutiae2.getCol(j) - CENTER_COL;
+        final int ROTATION = minutiae1.getOrientation(i) - minutiae2.getOrientation(j);
+
+        // ...tries the rotations around the difference of orientation
+        for (int offset = -MATCH_ANGLE_OFFSET; offset <= MATCH_ANGLE_OFFSET; offset++) {
+
+            minutiae2.transformInto(transformed, CENTER_ROW, CENTER_COL, ROW_TRANSLATION, COL_TRANSLATION,
+                    ROTATION + offset);
+
+            final boolean FOUND = grid1.countMatches(transformed, DISTANCE_THRESHOLD, ORIENTATION_THRESHOLD,
+                    FOUND_THRESHOLD) >= FOUND_THRESHOLD;
+
+            if (counters != null) {
+                counters.recordCandidate(!FOUND && grid1.getLastLookups() < transformed.size(),
+                        grid1.getLastLookups());
+            }
+
+            // ...and stops as soon as enough minutiae overlap
+            if (FOUND) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Aligns a minutia of the second fingerprint on a minutia of the first one, and counts the
+     * overlapping minutiae for the rotations around their difference of orientation
+     * @param i the index of the minutia of the first fingerprint
+     * @param j the index of the minutia of the second fingerprint
+     * @param transformed the set receiving the transformed minutiae
+     * @param best the best count so far
+     * @return the largest of the best count so far and the counts of the rotations
+     */
+    private static int bestAlignmentCount(MinutiaeGrid grid1, MinutiaeSet minutiae2, int i, int j,
+                                          MinutiaeSet transformed, int best) {
+
+        final MinutiaeSet minutiae1 = grid1.getMinutiae();
+
+        // aligns the second minutia on the first one...
+        final int CENTER_ROW = minutiae1.getRow(i);
+        final int CENTER_COL = minutiae1.getCol(i);
+        final int ROW_TRANSLATION = minutiae2.getRow(j) - CENTER_ROW;
+        final int COL_TRANSLATION = minutiae2.getCol(j) - CENTER_COL;
+        final int ROTATION = minutiae1.getOrientation(i) - minutiae2.getOrientation(j);
+
+        // ...and keeps the rotation with the most overlapping minutiae
+        for (int offset = -MATCH_ANGLE_OFFSET; offset <= MATCH_ANGLE_OFFSET; offset++) {
+
+            minutiae2.transformInto(transformed, CENTER_ROW, CENTER_COL, ROW_TRANSLATION, COL_TRANSLATION,
+                    ROTATION + offset);
+
+            best = Math.max(best, grid1.countMatchesIfAtLeast(transformed, DISTANCE_THRESHOLD,
+                    ORIENTATION_THRESHOLD, best + 1));
+        }
+
+        return best;
+    }
+
+    /**
+     * Tries the pairs of a range of minutiae of the first fingerprint, splitting it in two until
+     * it is a single minutia
+     */
+    @SuppressWarnings("serial")
+    private static final class AlignmentTask extends RecursiveAction {
+
+        private final MinutiaeGrid grid1;
+        private final MinutiaeSet minutiae2;
+        private final int from;
+        private final int to;
+
+        // set as soon as an alignment matches, by any task
+        private final AtomicBoolean found;
+
+        // the work done by this task and its subtasks, or null if it is not counted
+        private final MatchCounters counters;
+
+        AlignmentTask(MinutiaeGrid grid1, MinutiaeSet minutiae2, int from, int to, AtomicBoolean found,
+                      boolean counted) {
+            this.grid1 = grid1;
+            this.minutiae2 = minutiae2;
+            this.from = from;
+            this.to = to;
+            this.found = found;
+            this.counters = counted ? new MatchCounters() : null;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (found.get()) {
+                return;
+            }
+
+            // if the range is a single minutia, tries its pairs with a grid of its own
+            if (to - from <= 1) {
+
+                final MinutiaeGrid GRID = grid1.copy();
+                final MinutiaeSet TRANSFORMED = new MinutiaeSet(minutiae2.size());
+
+                for (int i = from; i < to; i++) {
+                    for (int j = 0; j < minutiae2.size() && !found.get(); j++) {
+                        if (tryAlignment(GRID, minutiae2, i, j, TRANSFORMED, counters)) {
+                            found.set(true);
+                        }
+                    }
+                }
+                return;
+            }
+
+            // otherwise splits it in two, and adds up the work of both halves
+            final int MIDDLE = (from + to) >>> 1;
+            final AlignmentTask LEFT = new AlignmentTask(grid1, minutiae2, from, MIDDLE, found, counters != null);
+            final AlignmentTask RIGHT = new AlignmentTask(grid1, minutiae2, MIDDLE, to, found, counters != null);
+            invokeAll(LEFT, RIGHT);
+
+            if (counters != null) {
+                counters.add(LEFT.counters);
+                counters.add(RIGHT.counters);
+            }
+        }
+    }
+
+    // endregion
+
 }
@@ -0,0 +1,46 @@
+package cs107;
+
+/**
+ * Receives diagnostics from the stages of {@link Fingerprint}.
+ * <p>
+ * A listener is registered with {@link Fingerprint#setListener(FingerprintListener)}. When no
+ * listener is registered, none of the diagnostics are computed. Every method does nothing by
+ * default, so implementations only override the events they are interested in.
+ * <p>
+ * The same listener receives the events of every thread using {@link Fingerprint}, so
+ * implementations must be thread-safe.
+ */
+public interface FingerprintListener {
+
+    /**
+     * Called after each iteration (both steps) of the thinning algorithm, including the last one,
+     * whose second step does not delete anything.
+     *
+     * @param iteration  the index of the iteration, starting at <code>0</code>.
+     * @param afterStep1 the image after the first step of the iteration.
+     * @param afterStep2 the image after the second step of the iteration.
+     */
+    default void onThinningIteration(int iteration, BinaryImage afterStep1, BinaryImage afterStep2) {}
+
+    /**
+     * Called once the skeleton of an image has been computed.
+     *
+     * @param skeleton the thinned image.
+     */
+    default void onThinningFinished(BinaryImage skeleton) {}
+
+    /**
+     * Called when a minutia has been extracted from a skeleton.
+     *
+     * @param minutia the minutia, as returned by {@link Fingerprint#extract(boolean[][])}.
+     */
+    default void onMinutia(int[] minutia) {}
+
+    /**
+     * Called once a stage of the pipeline has completed.
+     *
+     * @param stage         the name of the stage, for example <code>"thin"</code>.
+     * @param durationNanos the time spent in the stage, in nanoseconds.
+     */
+    default void onStage(String stage, long durationNanos) {}
+}
@@ -0,0 +1,625 @@
+package cs107;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * HTTP server enrolling, verifying and identifying fingerprints, built on the server of the JDK.
+ * <p>
+ * The operations are:
+ * <ul>
+ *     <li><code>POST /enroll?id=...</code> enrolls a fingerprint in the gallery under an id,
+ *     replacing the one enrolled under this id if any;</li>
+ *     <li><code>POST /verify?id=...</code> tells whether a fingerprint matches the one enrolled
+ *     under an id, <code>404</code> if there is none;</li>
+ *     <li><code>POST /identify?k=...&amp;timeout=...</code> finds the <code>k</code> enrolled
+ *     fingerprints (<code>1</code> by default) matching a fingerprint best, scoring them for at
+ *     most <code>timeout</code> milliseconds (no limit by default);</li>
+ *     <li><code>GET /stats</code> returns the number of requests and the percentiles of their
+ *     latencies, by operation.</li>
+ * </ul>
+ * The body of the posts is an image file, whose template is extracted through a
+ * {@link TemplateCache}, or a template in the {@link TemplateFormat}, which skips the
+ * extraction. The images must be at most {@link #MAX_IMAGE_SIZE} pixels wide and high, and the
+ * templates must have been extracted with the current orientation mode and distance, otherwise
+ * the request is answered <code>400</code>. The responses are JSON objects.
+ * <p>
+ * The verifications and identifications score the fingerprints with
+ * {@link Fingerprint#bestMatchingCount(MinutiaeGrid, MinutiaeSet, Fingerprint.AlignmentMode)} in the
+ * alignment mode of the server, a pair matching when its score reaches
+ * {@link Fingerprint#FOUND_THRESHOLD}. With {@link Fingerprint.AlignmentMode#EXHAUSTIVE}, the
+ * default, the answer is the one of {@link Fingerprint#match(List, List)} of the enrolled
+ * fingerprint and the posted one. A server in {@link Fingerprint.AlignmentMode#HOUGH} only tries
+ * the most voted alignments: it answers faster, but its scores can be lower, so it can reject
+ * pairs which <code>match</code> accepts, never the other way round.
+ * <p>
+ * The requests wait for the templates and the matches, so each one runs on its own thread: a
+ * virtual thread when the Java platform has them, a thread of a cached pool otherwise. The
+ * extractions, the verifications and the identifications run on a pool of platform threads,
+ * bounding the cores used, and at most a given number of them are accepted at the same time:
+ * the requests beyond are answered <code>503</code> at once instead of waiting.
+ * <p>
+ * Instances are thread-safe.
+ */
+public final class FingerprintServer implements Closeable {
+
+    /**
+     * The operations of the server.
+     */
+    public enum Operation {
+        ENROLL, VERIFY, IDENTIFY, STATS
+    }
+
+    // the number of latencies kept, by operation, to compute the percentiles
+    private static final int LATENCIES_KEPT = 10_000;
+
+    // the largest size of a posted image or template
+    private static final int MAX_BODY_SIZE = 16 << 20;
+
+    /**
+     * The largest width and height of the images of the fingerprints, posted as images or as templates.
+     */
+    public static final int MAX_IMAGE_SIZE = 4096;
+
+    private final Gallery gallery;
+    private final TemplateCache cache;
+    private final Fingerprint.AlignmentMode mode;
+
+    // the threads running the requests, and the ones extracting and matching
+    private final ExecutorService requestExecutor;
+    private final ForkJoinPool cpuPool;
+    private final Identifier identifier;
+
+    // the number of extractions and matches which can still be accepted
+    private final Semaphore permits;
+
+    private final Map<Operation, LatencyRecorder> latencies = new EnumMap<>(Operation.class);
+    private final HttpServer server;
+
+    /**
+     * Creates a server on the loopback address, trying every alignment as
+     * {@link Fingerprint.AlignmentMode#EXHAUSTIVE} does. It must be started with {@link #start()}.
+     *
+     * @param port       the port, or <code>0</code> for any free port.
+     * @param gallery    the enrolled fingerprints.
+     * @param cpuThreads the number of platform threads extracting and matching.
+     * @throws IOException if the server cannot listen on the port.
+     * @throws IllegalArgumentException if the number of threads is not strictly positive.
+     */
+    public FingerprintServer(int port, Gallery gallery, int cpuThreads) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), gallery, cpuThreads,
+                4 * cpuThreads, new TemplateCache(1024), Fingerprint.AlignmentMode.EXHAUSTIVE);
+    }
+
+    /**
+     * Creates a server. It must be started with {@link #start()}.
+     *
+     * @param address     the address and port the server listens on.
+     * @param gallery     the enrolled fingerprints.
+     * @param cpuThreads  the number of platform threads extracting and matching.
+     * @param maxPending  the largest number of extractions and matches accepted at the same time,
+     *                    running or waiting for a thread.
+     * @param cache       the cache of the templates extracted from the posted images.
+     * @param mode        the method finding the alignments tried to verify and identify,
+     *                    {@link Fingerprint.AlignmentMode#HOUGH} being faster but able to reject
+     *                    pairs which {@link Fingerprint#match(List, List)} accepts.
+     * @throws IOException if the server cannot listen on the address.
+     * @throws IllegalArgumentException if the number of threads or of pending tasks is not strictly positive.
+     */
+    public FingerprintServer(InetSocketAddress address, Gallery gallery, int cpuThreads, int maxPending,
+                             TemplateCache cache, Fingerprint.AlignmentMode mode) throws IOException {
+
+        if (cpuThreads <= 0) {
+            throw new IllegalArgumentException("number of threads must be strictly positive, current number: "
+                    + cpuThreads);
+        }
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("number of pending tasks must be strictly positive, current number: "
+                    + maxPending);
+        }
+
+        this.gallery = Objects.requireNonNull(gallery);
+        this.cache = Objects.requireNonNull(cache);
+        this.mode = Objects.requireNonNull(mode);
+
+        requestExecutor = newRequestExecutor();
+        cpuPool = new ForkJoinPool(cpuThreads);
+        identifier = new Identifier(gallery, cpuPool, mode);
+        permits = new Semaphore(maxPending);
+
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyRecorder(LATENCIES_KEPT));
+        }
+
+        server = HttpServer.create(address, 0);
+        server.setExecutor(requestExecutor);
+        server.createContext("/enroll", exchange -> handle(exchange, Operation.ENROLL));
+        server.createContext("/verify", exchange -> handle(exchange, Operation.VERIFY));
+        server.createContext("/identify", exchange -> handle(exchange, Operation.IDENTIFY));
+        server.createContext("/stats", exchange -> handle(exchange, Operation.STATS));
+    }
+
+    // region lifecycle
+
+    /**
+     * Starts answering the requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server, waiting at most a given time for the requests being answered.
+     *
+     * @param delay the largest time to wait, in seconds.
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        requestExecutor.shutdown();
+        cpuPool.shutdown();
+    }
+
+    /**
+     * Stops the server at once.
+     */
+    @Override
+    public void close() {
+        stop(0);
+    }
+
+    /**
+     * @return the port the server listens on, useful when it was created on any free port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @param operation an operation.
+     * @return the latencies of the requests of the operation, from their reading to the end of their response
+     */
+    public LatencyRecorder getLatencies(Operation operation) {
+        return latencies.get(operation);
+    }
+
+    // endregion
+
+    // region requests
+
+    /**
+     * Answers a request, and records its latency
+     */
+    private void handle(HttpExchange exchange, Operation operation) throws IOException {
+
+        final long START = System.nanoTime();
+
+        try {
+
+            final boolean POST = operation != Operation.STATS;
+
+            if (!exchange.getRequestMethod().equals(POST ? "POST" : "GET")) {
+                exchange.getResponseHeaders().set("Allow", POST ? "POST" : "GET");
+                respond(exchange, 405, error("method not allowed: " + exchange.getRequestMethod()));
+                return;
+            }
+
+            try {
+                final Map<String, String> PARAMETERS = parameters(exchange.getRequestURI().getRawQuery());
+
+                switch (operation) {
+                    case ENROLL:
+                        enroll(exchange, PARAMETERS);
+                        break;
+                    case VERIFY:
+                        verify(exchange, PARAMETERS);
+                        break;
+                    case IDENTIFY:
+                        identify(exchange, PARAMETERS);
+                        break;
+                    default:
+                        respond(exchange, 200, stats());
+                }
+
+            } catch (BadRequestException e) {
+                respond(exchange, e.status, error(e.getMessage()));
+
+            } catch (IllegalArgumentException | IOException e) {
+                respond(exchange, 400, error(e.getMessage()));
+
+            } catch (RuntimeException e) {
+                respond(exchange, 500, error(e.toString()));
+            }
+
+        } finally {
+            exchange.close();
+            latencies.get(operation).record(System.nanoTime() - START);
+        }
+    }
+
+    private void enroll(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+
+        final String ID = required(parameters, "id");
+        final Template TEMPLATE = template(exchange);
+
+        gallery.enroll(ID, TEMPLATE.getMinutiae());
+        respond(exchange, 200, "{\"id\":" + quote(ID) + ",\"minutiae\":" + TEMPLATE.getMinutiae().size() + "}");
+    }
+
+    private void verify(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+
+        final String ID = required(parameters, "id");
+        final Template TEMPLATE = template(exchange);
+        final MinutiaeSet ENROLLED = gallery.get(ID);
+
+        if (ENROLLED == null) {
+            throw new BadRequestException(404, "no fingerprint enrolled with id: " + ID);
+        }
+
+        final int SCORE = onCpuPool(() -> Fingerprint.bestMatchingCount(
+                new MinutiaeGrid(ENROLLED, Fingerprint.DISTANCE_THRESHOLD), TEMPLATE.getMinutiae(), mode));
+
+        respond(exchange, 200, "{\"id\":" + quote(ID) + ",\"match\":" + (SCORE >= Fingerprint.FOUND_THRESHOLD)
+                + ",\"score\":" + SCORE + "}");
+    }
+
+    private void identify(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+
+        final int NUM_CANDIDATES = integer(parameters, "k", 1);
+        final int TIMEOUT = integer(parameters, "timeout", 0);
+        final Template TEMPLATE = template(exchange);
+
+        // the identifier splits the gallery between the threads of the pool itself
+        final Identifier.Identification IDENTIFICATION = onCpuPool(() -> TIMEOUT == 0
+                ? identifier.identify(TEMPLATE.getMinutiae(), NUM_CANDIDATES)
+                : identifier.identify(TEMPLATE.getMinutiae(), NUM_CANDIDATES, TIMEOUT, TimeUnit.MILLISECONDS));
+
+        final StringBuilder JSON = new StringBuilder("{\"candidates\":[");
+
+        for (Identifier.Candidate candidate : IDENTIFICATION.getCandidates()) {
+            if (JSON.charAt(JSON.length() - 1) != '[') {
+                JSON.append(',');
+            }
+            JSON.append("{\"id\":").append(quote(candidate.getId()))
+                    .append(",\"match\":").append(candidate.isMatch())
+                    .append(",\"score\":").append(candidate.getScore()).append('}');
+        }
+
+        JSON.append("],\"scored\":").append(IDENTIFICATION.getNumScored())
+                .append(",\"gallerySize\":").append(IDENTIFICATION.getGallerySize())
+                .append(",\"complete\":").append(IDENTIFICATION.isComplete()).append('}');
+
+        respond(exchange, 200, JSON.toString());
+    }
+
+    /**
+     * @return the latencies of every operation, in milliseconds
+     */
+    private String stats() {
+
+        final StringBuilder JSON = new StringBuilder("{");
+
+        for (Operation operation : Operation.values()) {
+
+            final LatencyRecorder LATENCIES = latencies.get(operation);
+
+            if (operation.ordinal() > 0) {
+                JSON.append(',');
+            }
+            JSON.append(String.format(Locale.ROOT,
+                    "\"%s\":{\"count\":%d,\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"max\":%.3f}",
+                    operation.name().toLowerCase(Locale.ROOT), LATENCIES.getCount(), LATENCIES.getPercentile(50) / 1e6,
+                    LATENCIES.getPercentile(90) / 1e6, LATENCIES.getPercentile(99) / 1e6, LATENCIES.getMax() / 1e6));
+        }
+
+        return JSON.append('}').toString();
+    }
+
+    // endregion
+
+    // region helper methods
+
+    /**
+     * Reads the template posted, extracting it on the pool if the body is an image
+     * @throws IOException if the body is neither an image nor a valid template
+     * @throws BadRequestException if the image is too large, or if the template was not extracted
+     * as the server extracts the images
+     */
+    private Template template(HttpExchange exchange) throws IOException {
+
+        final byte[] BODY = body(exchange.getRequestBody());
+
+        final boolean IS_TEMPLATE = BODY.length >= Integer.BYTES
+                && ByteBuffer.wrap(BODY).getInt(0) == TemplateFormat.MAGIC;
+
+        // the size of an image is checked from its header, before decoding, thinning and extracting it
+        if (!IS_TEMPLATE) {
+            checkImageSize(BODY);
+        }
+
+        final Template TEMPLATE = IS_TEMPLATE
+                ? TemplateFormat.fromBytes(BODY)
+                : onCpuPool(() -> cache.get(BODY));
+
+        // the minutiae are inside the image, so its size bounds the memory used to compare them
+        checkImageSize(TEMPLATE.getWidth(), TEMPLATE.getHeight());
+
+        // the orientations of the minutiae are only comparable with the ones of the same extraction
+        if (TEMPLATE.getOrientationMode() != Fingerprint.getOrientationMode()
+                || TEMPLATE.getOrientationDistance() != Fingerprint.ORIENTATION_DISTANCE) {
+            throw new BadRequestException(400, "template must be extracted with " + Fingerprint.getOrientationMode()
+                    + " and distance " + Fingerprint.ORIENTATION_DISTANCE + ", current template: "
+                    + TEMPLATE.getOrientationMode() + " and distance " + TEMPLATE.getOrientationDistance());
+        }
+
+        return TEMPLATE;
+    }
+
+    /**
+     * Checks the size of an image, reading it from its header without decoding its pixels
+     * @throws IOException if the content is not an image
+     * @throws BadRequestException if the image is too large
+     */
+    private static void checkImageSize(byte[] image) throws IOException {
+
+        try (ImageInputStream IN = ImageIO.createImageInputStream(new ByteArrayInputStream(image))) {
+
+            final Iterator<ImageReader> READERS = IN == null
+                    ? Collections.emptyIterator()
+                    : ImageIO.getImageReaders(IN);
+
+            if (!READERS.hasNext()) {
+                throw new IOException("body is neither an image nor a template");
+            }
+
+            final ImageReader READER = READERS.next();
+
+            try {
+                READER.setInput(IN, true, true);
+                checkImageSize(READER.getWidth(0), READER.getHeight(0));
+            } finally {
+                READER.dispose();
+            }
+        }
+    }
+
+    /**
+     * @throws BadRequestException if an image of this size is too large
+     */
+    private static void checkImageSize(int width, int height) {
+
+        if (width > MAX_IMAGE_SIZE || height > MAX_IMAGE_SIZE) {
+            throw new BadRequestException(400, "image must be at most " + MAX_IMAGE_SIZE + "x" + MAX_IMAGE_SIZE
+                    + ", current image: " + width + "x" + height);
+        }
+    }
+
+    /**
+     * Runs a task on the pool of platform threads, waiting for its result
+     * @throws BadRequestException if too many tasks are already pending
+     * @throws IOException if the task throws it
+     */
+    private <T> T onCpuPool(Callable<T> task) throws IOException {
+
+        if (!permits.tryAcquire()) {
+            throw new BadRequestException(503, "too many pending requests");
+        }
+
+        try {
+            return cpuPool.submit(task).get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+
+        } catch (ExecutionException e) {
+
+            final Throwable CAUSE = e.getCause();
+
+            if (CAUSE instanceof IOException) {
+                throw (IOException) CAUSE;
+            }
+            if (CAUSE instanceof RuntimeException) {
+                throw (RuntimeException) CAUSE;
+            }
+            if (CAUSE instanceof Error) {
+                throw (Error) CAUSE;
+            }
+            throw new IOException(CAUSE);
+
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Sends a JSON response
+     */
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+
+        final byte[] BYTES = json.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, BYTES.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(BYTES);
+        }
+    }
+
+    /**
+     * Reads a body, up to {@link #MAX_BODY_SIZE} bytes
+     */
+    private static byte[] body(InputStream in) throws IOException {
+
+        final ByteArrayOutputStream OUT = new ByteArrayOutputStream();
+        final byte[] BUFFER = new byte[8192];
+
+        for (int read = in.read(BUFFER); read != -1; read = in.read(BUFFER)) {
+
+            if (OUT.size() + read > MAX_BODY_SIZE) {
+                throw new BadRequestException(413, "body larger than " + MAX_BODY_SIZE + " bytes");
+            }
+            OUT.write(BUFFER, 0, read);
+        }
+
+        return OUT.toByteArray();
+    }
+
+    /**
+     * Decodes the parameters of a query
+     */
+    private static Map<String, String> parameters(String query) throws UnsupportedEncodingException {
+
+        final Map<String, String> PARAMETERS = new HashMap<>();
+
+        if (query == null || query.isEmpty()) {
+            return PARAMETERS;
+        }
+
+        for (String parameter : query.split("&")) {
+
+            final int EQUALS = parameter.indexOf('=');
+            final String NAME = EQUALS < 0 ? parameter : parameter.substring(0, EQUALS);
+            final String VALUE = EQUALS < 0 ? "" : parameter.substring(EQUALS + 1);
+
+            PARAMETERS.put(URLDecoder.decode(NAME, "UTF-8"), URLDecoder.decode(VALUE, "UTF-8"));
+        }
+
+        return PARAMETERS;
+    }
+
+    private static String required(Map<String, String> parameters, String name) {
+
+        final String VALUE = parameters.get(name);
+
+        if (VALUE == null || VALUE.isEmpty()) {
+            throw new BadRequestException(400, "missing parameter: " + name);
+        }
+
+        return VALUE;
+    }
+
+    private static int integer(Map<String, String> parameters, String name, int defaultValue) {
+
+        final String VALUE = parameters.get(name);
+
+        if (VALUE == null) {
+            return defaultValue;
+        }
+
+        try {
+            final int INTEGER = Integer.parseInt(VALUE);
+
+            if (INTEGER < 0) {
+                throw new BadRequestException(400, name + " must be positive, current " + name + ": " + VALUE);
+            }
+
+            return INTEGER;
+
+        } catch (NumberFormatException e) {
+            throw new BadRequestException(400, name + " must be an integer, current " + name + ": " + VALUE);
+        }
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    /**
+     * @return a string as a JSON string literal
+     */
+    private static String quote(String string) {
+
+        if (string == null) {
+            return "null";
+        }
+
+        final StringBuilder QUOTED = new StringBuilder(string.length() + 2).append('"');
+
+        for (int i = 0; i < string.length(); i++) {
+
+            final char C = string.charAt(i);
+
+            if (C == '"' || C == '\\') {
+                QUOTED.append('\\').append(C);
+            } else if (C < 0x20) {
+                QUOTED.append(String.format("\\u%04x", (int) C));
+            } else {
+                QUOTED.append(C);
+            }
+        }
+
+        return QUOTED.append('"').toString();
+    }
+
+    /**
+     * @return an executor starting a virtual thread per request if the Java platform has them,
+     * otherwise a cached pool of daemon threads
+     */
+    private static ExecutorService newRequestExecutor() {
+
+        // looked up reflectively, so that the server still runs on the platforms without them
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+
+        } catch (ReflectiveOperationException e) {
+
+            final AtomicInteger NUM_THREADS = new AtomicInteger();
+
+            return Executors.newCachedThreadPool(runnable -> {
+                final Thread THREAD = new Thread(runnable, "fingerprint-request-" + NUM_THREADS.incrementAndGet());
+                THREAD.setDaemon(true);
+                return THREAD;
+            });
+        }
+    }
+
+    /**
+     * A request which cannot be answered, and the status of its response
+     */
+    @SuppressWarnings("serial")
+    private static final class BadRequestException extends RuntimeException {
+
+        private final int status;
+
+        BadRequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    // endregion
+}
@@ -0,0 +1,56 @@
+package cs107;
+
+/**
+ * Sine and cosine of every integer angle in degrees, in fixed point.
+ * <p>
+ * Rotating a minutia with these tables only takes integer multiplications and shifts. The
+ * fixed-point result is an approximation of the <code>double</code> computation of
+ * {@link Fingerprint#applyRotation(int[], int, int, int)}, so it is only trusted when it is far
+ * enough from a rounding boundary (a half) for both computations to round the same way:
+ * {@link #isNearHalf(long)} tells when the <code>double</code> computation must be used instead.
+ */
+final class FixedPointRotation {
+
+    // the number of fractional bits of the fixed-point values
+    static final int FRACTION_BITS = 30;
+
+    // one and one half, in fixed point
+    static final long ONE = 1L << FRACTION_BITS;
+    static final long HALF = ONE >> 1;
+
+    // the fractional bits of a fixed-point value
+    private static final long FRACTION_MASK = ONE - 1;
+
+    /**
+     * The largest coordinate (relatively to the center of rotation) handled in fixed point.
+     */
+    static final int MAX_COORDINATE = 1 << 15;
+
+    // the largest error of a rotated coordinate: each table entry is rounded by at most half a unit,
+    // and multiplied by a coordinate of at most MAX_COORDINATE, with a safety factor of 2
+    private static final long MARGIN = 2L * MAX_COORDINATE;
+
+    // the sine and cosine of every angle between 0 and 359 degrees
+    static final long[] SIN = new long[360];
+    static final long[] COS = new long[360];
+
+    static {
+        for (int angle = 0; angle < 360; angle++) {
+            SIN[angle] = Math.round(Math.sin(Math.toRadians(angle)) * ONE);
+            COS[angle] = Math.round(Math.cos(Math.toRadians(angle)) * ONE);
+        }
+    }
+
+    private FixedPointRotation() {}
+
+    /**
+     * Checks whether a value, already offset by one half, might round differently in the
+     * <code>double</code> computation
+     * @param offsetValue a rotated coordinate plus {@link #HALF}, in fixed point
+     * @return whether the value is too close to a rounding boundary to be trusted
+     */
+    static boolean isNearHalf(long offsetValue) {
+        final long FRACTION = offsetValue & FRACTION_MASK;
+        return FRACTION < MARGIN || FRACTION > ONE - MARGIN;
+    }
+}
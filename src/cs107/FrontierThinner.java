@@ -0,0 +1,191 @@
+package cs107;
+
+import java.util.Arrays;
+
+/**
+ * Thinning algorithm only revisiting the pixels close to the last deletions.
+ * <p>
+ * Whether a black pixel is deleted by a step only depends on its neighbours, so a pixel only needs
+ * to be checked again once one of its neighbours has been deleted. The algorithm keeps one worklist
+ * per step, stored as a bit-packed mask of the pixels to check: it starts with every black pixel on
+ * the border of a ridge, and each deletion adds the 8 neighbours of the deleted pixel to both
+ * worklists. The cost of an iteration therefore scales with the number of pixels on the border of
+ * the ridges rather than with the area of the image (apart from skipping over the empty words of
+ * the worklist, 64 pixels at a time).
+ * <p>
+ * The deletions of a step are only applied once every pixel of its worklist has been checked, so
+ * the result is exactly the same as applying the full steps of {@link Fingerprint#thinningStep(boolean[][], int)}.
+ * <p>
+ * The worklists are kept between calls and only reallocated when the size of the image changes.
+ * Instances are therefore not thread-safe: use one thinner per thread.
+ */
+public final class FrontierThinner implements Thinner {
+
+    // the pixels to check during the next step 1 and step 2, laid out like the words of the image
+    private long[] worklist1 = new long[0];
+    private long[] worklist2 = new long[0];
+
+    // the pixels deleted by the current step, laid out like the words of the image
+    private long[] deletions = new long[0];
+
+    // statistics on the last image thinned
+    private int iterations;
+    private long checkedPixels;
+
+    @Override
+    public BinaryImage thin(BinaryImage image) {
+
+        BinaryImage skeleton = image.copy();
+
+        final long[] WORDS = skeleton.words();
+        final int IMAGE_HEIGHT = skeleton.getHeight();
+        final int WORDS_PER_ROW = skeleton.getWordsPerRow();
+
+        // makes sure the worklists are of the right size
+        if (worklist1.length != WORDS.length) {
+            worklist1 = new long[WORDS.length];
+            worklist2 = new long[WORDS.length];
+            deletions = new long[WORDS.length];
+        }
+
+        iterations = 0;
+        checkedPixels = 0;
+
+        // region initial frontier
+
+        // queues every black pixel which has at least one white neighbour
+        for (int y = 0; y < IMAGE_HEIGHT; y++) {
+            for (int w = 0; w < WORDS_PER_ROW; w++) {
+
+                // the black pixels whose 8 neighbours are all black
+                long surrounded = WORDS[y * WORDS_PER_ROW + w];
+                for (int dy = -1; dy <= 1 && surrounded != 0; dy++) {
+                    surrounded &= BitPlanes.row(WORDS, y + dy, IMAGE_HEIGHT, WORDS_PER_ROW, w)
+                            & BitPlanes.westNeighbours(WORDS, y + dy, IMAGE_HEIGHT, WORDS_PER_ROW, w)
+                            & BitPlanes.eastNeighbours(WORDS, y + dy, IMAGE_HEIGHT, WORDS_PER_ROW, w);
+                }
+
+                final long FRONTIER = WORDS[y * WORDS_PER_ROW + w] & ~surrounded;
+                worklist1[y * WORDS_PER_ROW + w] = FRONTIER;
+                worklist2[y * WORDS_PER_ROW + w] = FRONTIER;
+            }
+        }
+
+        // endregion
+
+        // the number of pixels deleted by the second step of the current iteration
+        int deletedInStep2;
+
+        // while the second step of the last iteration still removed some pixels...
+        do {
+            // ...applies both steps
+            thinningStep(skeleton, 1);                      // step 1
+            deletedInStep2 = thinningStep(skeleton, 0);     // step 2
+
+            iterations++;
+
+        } while (deletedInStep2 != 0);
+
+        // returns the thinned image
+        return skeleton;
+    }
+
+    /**
+     * @return the number of iterations (both steps) applied to the last image thinned,
+     * including the last one whose second step did not delete anything
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return the number of pixels whose neighbours were checked while thinning the last image
+     */
+    public long getCheckedPixels() {
+        return checkedPixels;
+    }
+
+    /**
+     * Applies one thinning step to the pixels of its worklist
+     * @param image the image to thin, modified in place
+     * @param step the step to apply, Step 0 or Step 1
+     * @return the number of pixels deleted by the step
+     */
+    private int thinningStep(BinaryImage image, int step) {
+
+        final long[] WORDS = image.words();
+        final int IMAGE_HEIGHT = image.getHeight();
+        final int WORDS_PER_ROW = image.getWordsPerRow();
+
+        // the worklist of the step
+        final long[] WORKLIST = step == 1 ? worklist1 : worklist2;
+
+        int numDeletions = 0;
+
+        // region finding the pixels to delete
+
+        // goes through every word of the worklist...
+        for (int y = 0; y < IMAGE_HEIGHT; y++) {
+            for (int w = 0; w < WORDS_PER_ROW; w++) {
+
+                final int WORD = y * WORDS_PER_ROW + w;
+
+                // ...only keeps the pixels which are still black...
+                long remaining = WORKLIST[WORD] & WORDS[WORD];
+                WORKLIST[WORD] = 0;
+
+                checkedPixels += Long.bitCount(remaining);
+
+                // ...and remembers the ones which should be deleted
+                // (the image is left untouched until every pixel of the list has been checked)
+                for (; remaining != 0; remaining &= remaining - 1) {
+
+                    final int BIT = Long.numberOfTrailingZeros(remaining);
+                    final int X = (w << BinaryImage.ADDRESS_BITS) + BIT;
+
+                    if (ThinningTable.canBeDeleted(ThinningTable.neighbourhood(image, y, X), step)) {
+                        deletions[WORD] |= 1L << BIT;
+                        numDeletions++;
+                    }
+                }
+            }
+        }
+
+        // endregion
+
+        // region deleting the pixels
+
+        // if nothing was deleted, there is nothing to update
+        if (numDeletions == 0) {
+            return 0;
+        }
+
+        // removes the pixels from the image...
+        for (int word = 0; word < WORDS.length; word++) {
+            WORDS[word] &= ~deletions[word];
+        }
+
+        // ...and queues their 8 neighbours, whose neighbourhood has changed
+        for (int y = 0; y < IMAGE_HEIGHT; y++) {
+            for (int w = 0; w < WORDS_PER_ROW; w++) {
+
+                // the pixels next to a deleted pixel on the same row or on the row above or below
+                long changed = 0;
+                for (int dy = -1; dy <= 1; dy++) {
+                    changed |= BitPlanes.row(deletions, y + dy, IMAGE_HEIGHT, WORDS_PER_ROW, w)
+                            | BitPlanes.westNeighbours(deletions, y + dy, IMAGE_HEIGHT, WORDS_PER_ROW, w)
+                            | BitPlanes.eastNeighbours(deletions, y + dy, IMAGE_HEIGHT, WORDS_PER_ROW, w);
+                }
+
+                worklist1[y * WORDS_PER_ROW + w] |= changed;
+                worklist2[y * WORDS_PER_ROW + w] |= changed;
+            }
+        }
+
+        Arrays.fill(deletions, 0L);
+
+        // endregion
+
+        return numDeletions;
+    }
+}
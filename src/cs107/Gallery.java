@@ -0,0 +1,154 @@
+package cs107;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * In-memory set of enrolled fingerprints, each one identified by a unique id.
+ * <p>
+ * The minutiae of every fingerprint are copied and bucketed in a {@link MinutiaeGrid} once, when
+ * it is enrolled, so that every identification reuses the grid. The gallery is thread-safe:
+ * fingerprints can be enrolled and removed while identifications are running, each
+ * identification seeing the gallery as it was when it started.
+ *
+ * @see Identifier
+ */
+public final class Gallery {
+
+    // the enrolled fingerprints, by id, in the order of their enrollment
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    // the enrolled fingerprints as they are now, rebuilt after a change when it is first needed
+    private volatile Snapshot snapshot = new Snapshot(new Entry[0]);
+
+    /**
+     * Enrolls a fingerprint, replacing the fingerprint enrolled with the same id if there is one.
+     *
+     * @param id       the id of the fingerprint.
+     * @param minutiae the minutiae of the fingerprint, which are copied.
+     */
+    public void enroll(String id, MinutiaeSet minutiae) {
+
+        final Entry ENTRY = new Entry(Objects.requireNonNull(id), minutiae.copy());
+
+        synchronized (entries) {
+            entries.put(id, ENTRY);
+            snapshot = null;
+        }
+    }
+
+    /**
+     * Removes a fingerprint.
+     *
+     * @param id the id of the fingerprint.
+     * @return whether a fingerprint was enrolled with this id.
+     */
+    public boolean remove(String id) {
+        synchronized (entries) {
+            if (entries.remove(id) == null) {
+                return false;
+            }
+            snapshot = null;
+            return true;
+        }
+    }
+
+    /**
+     * @param id the id of the fingerprint.
+     * @return whether a fingerprint is enrolled with this id.
+     */
+    public boolean contains(String id) {
+        synchronized (entries) {
+            return entries.containsKey(id);
+        }
+    }
+
+    /**
+     * @param id the id of the fingerprint.
+     * @return the minutiae of the fingerprint, which must not be modified, or <code>null</code> if
+     * no fingerprint is enrolled with this id.
+     */
+    public MinutiaeSet get(String id) {
+        synchronized (entries) {
+            final Entry ENTRY = entries.get(id);
+            return ENTRY == null ? null : ENTRY.minutiae;
+        }
+    }
+
+    /**
+     * @return the number of enrolled fingerprints
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the enrolled fingerprints, in the order of their enrollment, which do not change
+     * when fingerprints are enrolled or removed
+     */
+    GalleryView snapshot() {
+
+        Snapshot current = snapshot;
+
+        if (current == null) {
+            synchronized (entries) {
+                if (snapshot == null) {
+                    snapshot = new Snapshot(entries.values().toArray(new Entry[0]));
+                }
+                current = snapshot;
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * The enrolled fingerprints at some point
+     */
+    private static final class Snapshot implements GalleryView {
+
+        private final Entry[] entries;
+
+        Snapshot(Entry[] entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public int size() {
+            return entries.length;
+        }
+
+        @Override
+        public String getId(int index) {
+            return entries[index].id;
+        }
+
+        @Override
+        public MinutiaeGrid getGrid(int index) {
+
+            // the grid of the gallery may be counting on another thread
+            return entries[index].grid.copy();
+        }
+    }
+
+    /**
+     * An enrolled fingerprint
+     */
+    private static final class Entry {
+
+        final String id;
+        final MinutiaeSet minutiae;
+
+        // the grid of the minutiae, only used to make copies counting on every thread
+        final MinutiaeGrid grid;
+
+        Entry(String id, MinutiaeSet minutiae) {
+            this.id = id;
+            this.minutiae = minutiae;
+            this.grid = new MinutiaeGrid(minutiae, Fingerprint.DISTANCE_THRESHOLD);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package cs107;
+
+/**
+ * Enrolled fingerprints as scored by an {@link Identifier}: indexed from <code>0</code>, and not
+ * changing while they are scored.
+ */
+interface GalleryView {
+
+    /**
+     * @return the number of fingerprints
+     */
+    int size();
+
+    /**
+     * @param index the index of the fingerprint, between <code>0</code> and {@link #size()} (excluded)
+     * @return the id of the fingerprint
+     */
+    String getId(int index);
+
+    /**
+     * @param index the index of the fingerprint, between <code>0</code> and {@link #size()} (excluded)
+     * @return a grid of the minutiae of the fingerprint, only used by the calling thread
+     */
+    MinutiaeGrid getGrid(int index);
+}
@@ -4,6 +4,16 @@ import java.awt.Graphics;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
@@ -71,8 +81,48 @@ public final class Helper {
    * @see #write
    */
   public static boolean[][] readBinary(final String name) {
-    final int[][] image = readARGB(name);
-    return image == null ? null : toBinary(image);
+    final BinaryImage image = readBinaryImage(name);
+    return image == null ? null : image.toArray();
+  }
+
+  /**
+   * Reads specified image from the resource folder as a bit-packed binary image.
+   * <p>
+   * The pixels are thresholded as they are decoded, one row at a time, so the
+   * image never exists as an array of ARGB colors.
+   *
+   * @param name Name of the image to read, or path relative to the resource
+   *             folder.
+   * @return Bit-packed image where dark pixels are black, or <code>null</code> on
+   *         failure
+   * @see #readBinary(String)
+   */
+  public static BinaryImage readBinaryImage(final String name) {
+    try {
+      final BufferedImage image = ImageIO.read(new File(name));
+      return toBinaryImage(image);
+    } catch (final IOException e) {
+      System.out.println(e + " Filename: " + name);
+      return null;
+    }
+  }
+
+  /**
+   * Decodes specified image file content as a bit-packed binary image.
+   *
+   * @param bytes Content of an image file, in any format supported by ImageIO
+   * @return Bit-packed image where dark pixels are black, or <code>null</code> if
+   *         the content is not a supported image
+   * @see #readBinaryImage(String)
+   */
+  public static BinaryImage decodeBinaryImage(final byte[] bytes) {
+    try {
+      final BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+      return image == null ? null : toBinaryImage(image);
+    } catch (final IOException e) {
+      System.out.println(e);
+      return null;
+    }
   }
 
   /**
@@ -88,6 +138,54 @@ public final class Helper {
     return writeARGB(path, fromBinary(array));
   }
 
+  /**
+   * Writes specified bit-packed binary image to disk.
+   *
+   * @param path  Output file path
+   * @param image bit-packed binary image
+   * @return {@code true} if write operation was successful, {@code false}
+   *         otherwise
+   * @see #writeBinary(String, boolean[][])
+   */
+  public static boolean writeBinary(final String path, final BinaryImage image) {
+    return writeBinary(path, image.toArray());
+  }
+
+  /**
+   * Reads specified template from disk.
+   *
+   * @param path Path of the template file
+   * @return Template stored in the file, or <code>null</code> on failure
+   * @see TemplateFormat
+   */
+  public static Template readTemplate(final String path) {
+    try {
+      return TemplateFormat.read(new File(path).toPath());
+    } catch (final IOException e) {
+      System.out.println(e + " Filename: " + path);
+      return null;
+    }
+  }
+
+  /**
+   * Writes specified template to disk.
+   *
+   * @param path     Output file path
+   * @param template Template to write
+   * @return {@code true} if write operation was successful, {@code false}
+   *         otherwise
+   * @see TemplateFormat
+   */
+  public static boolean writeTemplate(final String path, final Template template) {
+    try {
+      TemplateFormat.write(template, new File(path).toPath());
+      return true;
+    } catch (final IOException e) {
+      System.out.println(e + " Filename: " + path);
+      return false;
+    }
+  }
+
   public static int toARGB(int A, int R, int G, int B) {
     return A<<24 | R<<16 | G<<8 | B;
   }
@@ -131,16 +229,188 @@ public final class Helper {
     final int width = image.getWidth();
     final int height = image.getHeight();
     final int[][] array = new int[height][width];
+    final RowDecoder decoder = rowDecoder(image);
     for (int row = 0; row < height; ++row) {
+      decoder.decode(row, array[row]);
+    }
+    return array;
+  }
+
+  /**
+   * Convert specified BufferedImage into a bit-packed binary image, using the
+   * same threshold as {@link #toBinary(int[][])}.
+   *
+   * @param image Input image
+   * @return Bit-packed image where dark pixels are black
+   */
+  public static BinaryImage toBinaryImage(final BufferedImage image) {
+    final int width = image.getWidth();
+    final int height = image.getHeight();
+    final BinaryImage result = new BinaryImage(height, width);
+    final long[] words = result.words();
+    final int wordsPerRow = result.getWordsPerRow();
+
+    // a single row of colors is decoded at a time
+    final int[] rgb = new int[width];
+    final RowDecoder decoder = rowDecoder(image);
+
+    // neighbouring pixels usually share the same color, so the last threshold is kept
+    int lastColor = -1;
+    boolean lastIsDark = false;
+
+    for (int row = 0; row < height; ++row) {
+      decoder.decode(row, rgb);
+      final int start = row * wordsPerRow;
       for (int col = 0; col < width; ++col) {
-        array[row][col] = image.getRGB(col, row) & 0xffffff;
+        if (rgb[col] != lastColor) {
+          lastColor = rgb[col];
+          lastIsDark = pixelLuminance(lastColor) < 128;
+        }
+        if (lastIsDark) {
+          words[start + (col >>> BinaryImage.ADDRESS_BITS)] |= 1L << col;
+        }
       }
     }
-    return array;
+    return result;
+  }
+
+  /**
+   * Decodes the rows of an image into packed RGB colors (without alpha).
+   */
+  private interface RowDecoder {
+
+    /**
+     * Decodes a single row.
+     *
+     * @param row the row to decode
+     * @param rgb array receiving the packed RGB color of each pixel of the row
+     */
+    void decode(int row, int[] rgb);
+  }
+
+  /**
+   * Creates a decoder reading the raster of the image in bulk.
+   * <p>
+   * The common layouts read by {@link ImageIO} (<code>TYPE_BYTE_GRAY</code>,
+   * <code>TYPE_BYTE_BINARY</code>, <code>TYPE_3BYTE_BGR</code> and
+   * <code>TYPE_INT_RGB</code>) are read directly from their data buffer. Gray and
+   * indexed pixels go through a table built once per image with the image's own
+   * color model, so the colors are exactly the ones {@link BufferedImage#getRGB}
+   * would give. Any other image goes through {@link BufferedImage#getRGB}, one
+   * row at a time.
+   *
+   * @param image Input image
+   * @return Decoder of the rows of the image
+   */
+  private static RowDecoder rowDecoder(final BufferedImage image) {
+    final int width = image.getWidth();
+    final Raster raster = image.getRaster();
+    final SampleModel sampleModel = raster.getSampleModel();
+    final DataBuffer dataBuffer = raster.getDataBuffer();
+
+    // sub-images share the buffer of their parent, they are left to the generic path
+    final boolean isWholeBuffer = raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+        && dataBuffer.getNumBanks() == 1;
+
+    if (isWholeBuffer) {
+      switch (image.getType()) {
+
+      case BufferedImage.TYPE_BYTE_GRAY: {
+        final byte[] data = ((DataBufferByte) dataBuffer).getData();
+        final ComponentSampleModel model = (ComponentSampleModel) sampleModel;
+        final int offset = dataBuffer.getOffset() + model.getBandOffsets()[0];
+        final int pixelStride = model.getPixelStride();
+        final int scanlineStride = model.getScanlineStride();
+        final int[] palette = palette(image.getColorModel(), 8);
+        return (row, rgb) -> {
+          int index = offset + row * scanlineStride;
+          for (int col = 0; col < width; ++col, index += pixelStride) {
+            rgb[col] = palette[data[index] & 0xff];
+          }
+        };
+      }
+
+      case BufferedImage.TYPE_BYTE_BINARY: {
+        final byte[] data = ((DataBufferByte) dataBuffer).getData();
+        final MultiPixelPackedSampleModel model = (MultiPixelPackedSampleModel) sampleModel;
+        final int bits = model.getPixelBitStride();
+        final int mask = (1 << bits) - 1;
+        final int bitOffset = 8 * dataBuffer.getOffset() + model.getDataBitOffset();
+        final int scanlineStride = model.getScanlineStride();
+        final int[] palette = palette(image.getColorModel(), bits);
+        return (row, rgb) -> {
+          // the pixels are packed from the most significant bit of each byte
+          int bit = bitOffset + 8 * row * scanlineStride;
+          for (int col = 0; col < width; ++col, bit += bits) {
+            rgb[col] = palette[(data[bit >>> 3] >>> (8 - bits - (bit & 7))) & mask];
+          }
+        };
+      }
+
+      case BufferedImage.TYPE_3BYTE_BGR: {
+        final byte[] data = ((DataBufferByte) dataBuffer).getData();
+        final ComponentSampleModel model = (ComponentSampleModel) sampleModel;
+        final int[] bandOffsets = model.getBandOffsets();
+        final int red = dataBuffer.getOffset() + bandOffsets[0];
+        final int green = dataBuffer.getOffset() + bandOffsets[1];
+        final int blue = dataBuffer.getOffset() + bandOffsets[2];
+        final int pixelStride = model.getPixelStride();
+        final int scanlineStride = model.getScanlineStride();
+        return (row, rgb) -> {
+          int index = row * scanlineStride;
+          for (int col = 0; col < width; ++col, index += pixelStride) {
+            rgb[col] = (data[red + index] & 0xff) << 16 | (data[green + index] & 0xff) << 8 | data[blue + index] & 0xff;
+          }
+        };
+      }
+
+      case BufferedImage.TYPE_INT_RGB: {
+        final int[] data = ((DataBufferInt) dataBuffer).getData();
+        final int offset = dataBuffer.getOffset();
+        final int scanlineStride = ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+        return (row, rgb) -> {
+          final int start = offset + row * scanlineStride;
+          for (int col = 0; col < width; ++col) {
+            rgb[col] = data[start + col] & 0xffffff;
+          }
+        };
+      }
+
+      default:
+        break;
+      }
+    }
+
+    // generic path, converting every pixel through the color model
+    return (row, rgb) -> {
+      image.getRGB(0, row, width, 1, rgb, 0, width);
+      for (int col = 0; col < width; ++col) {
+        rgb[col] &= 0xffffff;
+      }
+    };
+  }
+
+  /**
+   * Computes the packed RGB color (without alpha) of every possible pixel value.
+   *
+   * @param colorModel color model of an image with a single band
+   * @param bits       number of bits per pixel
+   * @return Array containing the color of each pixel value
+   */
+  private static int[] palette(final ColorModel colorModel, final int bits) {
+    final int[] palette = new int[1 << bits];
+    final byte[] pixel = new byte[1];
+    for (int value = 0; value < palette.length; ++value) {
+      pixel[0] = (byte) value;
+      palette[value] = colorModel.getRGB(pixel) & 0xffffff;
+    }
+    return palette;
   }
 
   /**
    * Convert specified array int a BufferedImage
+   * <p>
+   * The colors are written directly into the data buffer of the image.
    *
    * @param array Input array
    * @return Buffered Image
@@ -150,9 +420,13 @@ public final class Helper {
     final int width = array[0].length;
     final int height = array.length;
     final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    final int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
     for (int row = 0; row < height; ++row) {
+      final int[] colors = array[row];
+      final int start = row * width;
       for (int col = 0; col < width; ++col) {
-        image.setRGB(col, row, array[row][col] | 0xff000000);
+        // TYPE_INT_RGB has no alpha channel
+        data[start + col] = colors[col] & 0xffffff;
       }
     }
     return image;
@@ -260,6 +534,25 @@ public final class Helper {
     return result;
   }
 
+  /**
+   * Converts an ARGB image to a bit-packed binary image, using the same
+   * threshold as {@link #toBinary(int[][])}.
+   *
+   * @param image array containing each pixel's ARGB value as an int.
+   * @return Bit-packed image where dark pixels are black.
+   */
+  public static BinaryImage toBinaryImage(final int[][] image) {
+    final BinaryImage result = new BinaryImage(image.length, image[0].length);
+    for (int i = 0; i < image.length; i++) {
+      for (int j = 0; j < image[i].length; j++) {
+        if (pixelLuminance(image[i][j]) < 128) {
+          result.set(i, j, true);
+        }
+      }
+    }
+    return result;
+  }
+
   /**
    * Converts a binary image to an ARBG image.
    *
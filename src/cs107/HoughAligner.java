@@ -0,0 +1,364 @@
+package cs107;
+
+/**
+ * Finds the most likely alignments between two sets of minutiae by voting in a quantized
+ * accumulator of rotations and translations.
+ * <p>
+ * Every pair of minutiae (one from each set) defines the alignment that
+ * {@link Fingerprint#match(MinutiaeSet, MinutiaeSet)} would try for it: the rotation is the
+ * difference of their orientations, and the translation brings the minutia of the second set
+ * onto the one of the first set. All the pairs of two matching fingerprints which really
+ * correspond define (almost) the same alignment, while the other pairs spread their votes over
+ * the whole accumulator. The cells holding the most votes are therefore the alignments worth
+ * verifying, and every other one can be skipped.
+ * <p>
+ * To compare the alignments of different pairs, each one is described by where it moves the
+ * centroid of the second set, and by its rotation. The accumulator is made of
+ * {@link #ROTATION_BIN_SIZE} degrees by {@link #TRANSLATION_BIN_SIZE} by
+ * {@link #TRANSLATION_BIN_SIZE} pixels cells, and every cell remembers the first pair which voted
+ * for it, so that a peak can be verified with exactly the same transformation as the exhaustive
+ * search. Only the cells which receive a vote are stored, in a hash table, so the memory used
+ * depends on the number of pairs and not on how far apart the minutiae are.
+ * <p>
+ * The accumulator and the peaks are kept between calls, so instances are not thread-safe.
+ */
+public final class HoughAligner {
+
+    /**
+     * The default number of peaks returned by {@link #vote(MinutiaeSet, MinutiaeSet, int)}.
+     */
+    public static final int DEFAULT_NUM_PEAKS = 64;
+
+    /**
+     * The width of a cell of the accumulator along the rotation, in degrees.
+     */
+    public static final int ROTATION_BIN_SIZE = 10;
+
+    /**
+     * The width of a cell of the accumulator along the row and the column of the translation, in pixels.
+     */
+    public static final int TRANSLATION_BIN_SIZE = 6;
+
+    /**
+     * The largest number of pairs of minutiae voting in a single call, that is of the product of
+     * the sizes of the two sets.
+     */
+    public static final int MAX_PAIRS = 1 << 20;
+
+    // the number of cells along the rotation
+    private static final int NUM_ROTATION_BINS = (360 + ROTATION_BIN_SIZE - 1) / ROTATION_BIN_SIZE;
+
+    // the largest number of slots of the hash table kept between calls, larger ones being released
+    private static final int MAX_RETAINED_SLOTS = 1 << 16;
+
+    // the hash table of the voted cells: the index of the cell, its number of votes (0 for an
+    // empty slot), and the first pair which voted for it
+    private long[] cells = new long[0];
+    private int[] votes = new int[0];
+    private int[] anchors1 = new int[0];
+    private int[] anchors2 = new int[0];
+
+    // the slots of the cells which received at least one vote, in the order of their first vote
+    private int[] votedSlots = new int[0];
+    private int numVotedSlots;
+
+    // the slots of the cells with the most votes, from the most voted one, with their votes and first pair
+    private int[] peakSlots = new int[0];
+    private int[] peakVotes = new int[0];
+    private int[] peakAnchors1 = new int[0];
+    private int[] peakAnchors2 = new int[0];
+    private int numPeaks;
+
+    /**
+     * Votes for the alignments of every pair of minutiae and keeps the most voted ones.
+     *
+     * @param minutiae1 the set of minutiae of the first fingerprint, which does not move.
+     * @param minutiae2 the set of minutiae of the second fingerprint, which is aligned on the first one.
+     * @param maxPeaks  the largest number of peaks to keep.
+     * @return the number of peaks kept, at most <code>maxPeaks</code>.
+     * @throws IllegalArgumentException if the number of peaks is negative, if there are more than
+     *                                  {@link #MAX_PAIRS} pairs of minutiae, or if the minutiae are
+     *                                  too far apart for the cells to be indexed.
+     * @see #tryVote(MinutiaeSet, MinutiaeSet, int)
+     */
+    public int vote(MinutiaeSet minutiae1, MinutiaeSet minutiae2, int maxPeaks) {
+        return vote(minutiae1, minutiae2, maxPeaks, true);
+    }
+
+    /**
+     * Votes for the alignments of the pairs of minutiae and keeps the most voted ones, if the
+     * accumulator can hold them.
+     * <p>
+     * The votes are the same as in {@link #vote(MinutiaeSet, MinutiaeSet, int)}, but the sets
+     * which it rejects are not an error. With more than {@link #MAX_PAIRS} pairs of minutiae,
+     * only a regular sample of the minutiae of each set votes, every second or third one for
+     * instance, so that at most {@link #MAX_PAIRS} pairs vote; the anchors of the peaks are still
+     * indices in the whole sets. The sets whose minutiae are too far apart are reported by the
+     * result, and the caller can then try every pair without voting.
+     *
+     * @param minutiae1 the set of minutiae of the first fingerprint, which does not move.
+     * @param minutiae2 the set of minutiae of the second fingerprint, which is aligned on the first one.
+     * @param maxPeaks  the largest number of peaks to keep.
+     * @return the number of peaks kept, at most <code>maxPeaks</code>, or <code>-1</code> if the
+     *         minutiae are too far apart for the cells to be indexed, in which case there is no peak.
+     * @throws IllegalArgumentException if the number of peaks is negative.
+     */
+    public int tryVote(MinutiaeSet minutiae1, MinutiaeSet minutiae2, int maxPeaks) {
+        return vote(minutiae1, minutiae2, maxPeaks, false);
+    }
+
+    /**
+     * Votes for the alignments of every pair of minutiae and keeps the most voted ones
+     * @param strict whether the sets the accumulator cannot hold throw an exception, instead of returning -1
+     */
+    private int vote(MinutiaeSet minutiae1, MinutiaeSet minutiae2, int maxPeaks, boolean strict) {
+
+        if (maxPeaks < 0) {
+            throw new IllegalArgumentException("number of peaks must be positive, current number: " + maxPeaks);
+        }
+
+        numPeaks = 0;
+
+        final int SIZE_1 = minutiae1.size();
+        final int SIZE_2 = minutiae2.size();
+
+        if (SIZE_1 == 0 || SIZE_2 == 0 || maxPeaks == 0) {
+            return 0;
+        }
+
+        final long NUM_PAIRS = (long) SIZE_1 * SIZE_2;
+
+        // beyond the limit, only every step-th minutia of each set votes
+        int step = 1;
+
+        if (NUM_PAIRS > MAX_PAIRS) {
+            if (strict) {
+                throw new IllegalArgumentException("number of pairs of minutiae must be at most " + MAX_PAIRS
+                        + ", current number: " + NUM_PAIRS);
+            }
+            while ((long) ((SIZE_1 + step - 1) / step) * ((SIZE_2 + step - 1) / step) > MAX_PAIRS) {
+                step++;
+            }
+        }
+
+        final int NUM_VOTING_PAIRS = ((SIZE_1 + step - 1) / step) * ((SIZE_2 + step - 1) / step);
+
+        // region dimensions of the accumulator
+
+        // the centroid of the second set, the point whose destination describes an alignment
+        long sumRows = 0;
+        long sumCols = 0;
+
+        for (int j = 0; j < SIZE_2; j++) {
+            sumRows += minutiae2.getRow(j);
+            sumCols += minutiae2.getCol(j);
+        }
+
+        final long CENTROID_ROW = sumRows / SIZE_2;
+        final long CENTROID_COL = sumCols / SIZE_2;
+
+        // the farthest the centroid can be from a minutia of the second set, in both directions at once
+        long radius = 0;
+
+        for (int j = 0; j < SIZE_2; j++) {
+            radius = Math.max(radius, Math.abs(minutiae2.getRow(j) - CENTROID_ROW)
+                    + Math.abs(minutiae2.getCol(j) - CENTROID_COL));
+        }
+
+        // the centroid lands at most this far from the bounding box of the first set
+        int minRow = Integer.MAX_VALUE;
+        int minCol = Integer.MAX_VALUE;
+        int maxRow = Integer.MIN_VALUE;
+        int maxCol = Integer.MIN_VALUE;
+
+        for (int i = 0; i < SIZE_1; i++) {
+            minRow = Math.min(minRow, minutiae1.getRow(i));
+            minCol = Math.min(minCol, minutiae1.getCol(i));
+            maxRow = Math.max(maxRow, minutiae1.getRow(i));
+            maxCol = Math.max(maxCol, minutiae1.getCol(i));
+        }
+
+        // one more pixel on each side absorbs the rounding of the rotation
+        final long FIRST_ROW = minRow - radius - 1;
+        final long FIRST_COL = minCol - radius - 1;
+        final long NUM_ROW_BINS = (maxRow + radius + 1 - FIRST_ROW) / TRANSLATION_BIN_SIZE + 1;
+        final long NUM_COL_BINS = (maxCol + radius + 1 - FIRST_COL) / TRANSLATION_BIN_SIZE + 1;
+
+        // the cells are indexed by a long, which must not overflow
+        try {
+            Math.multiplyExact(Math.multiplyExact((long) NUM_ROTATION_BINS, NUM_ROW_BINS), NUM_COL_BINS);
+        } catch (ArithmeticException e) {
+            if (!strict) {
+                return -1;
+            }
+            throw new IllegalArgumentException("minutiae must be closer, current bins: " + NUM_ROW_BINS + " rows by "
+                    + NUM_COL_BINS + " columns");
+        }
+
+        // at most one cell per pair, and a table at most half full
+        ensureCapacity(Integer.highestOneBit(NUM_VOTING_PAIRS) << 2, maxPeaks);
+        final int MASK = votes.length - 1;
+
+        // endregion
+
+        // region voting
+
+        // for every pair of minutiae...
+        for (int i = 0; i < SIZE_1; i += step) {
+
+            final int ROW_1 = minutiae1.getRow(i);
+            final int COL_1 = minutiae1.getCol(i);
+            final int ORIENTATION_1 = minutiae1.getOrientation(i);
+
+            for (int j = 0; j < SIZE_2; j += step) {
+
+                // ...rotates the centroid around the second minutia, landing on the first one
+                final int ROTATION = Math.floorMod(ORIENTATION_1 - minutiae2.getOrientation(j), 360);
+                final long COS = FixedPointRotation.COS[ROTATION];
+                final long SIN = FixedPointRotation.SIN[ROTATION];
+
+                final long X = CENTROID_COL - minutiae2.getCol(j);
+                final long Y = minutiae2.getRow(j) - CENTROID_ROW;
+
+                final long ROW = ROW_1 - ((X * SIN + Y * COS) >> FixedPointRotation.FRACTION_BITS);
+                final long COL = COL_1 + ((X * COS - Y * SIN) >> FixedPointRotation.FRACTION_BITS);
+
+                // ...and votes for the cell of the alignment
+                final long CELL = ((ROTATION / ROTATION_BIN_SIZE) * NUM_ROW_BINS
+                        + (ROW - FIRST_ROW) / TRANSLATION_BIN_SIZE) * NUM_COL_BINS
+                        + (COL - FIRST_COL) / TRANSLATION_BIN_SIZE;
+
+                // finds the slot of the cell, or the empty slot where it goes, by linear probing
+                int slot = hash(CELL) & MASK;
+                while (votes[slot] != 0 && cells[slot] != CELL) {
+                    slot = (slot + 1) & MASK;
+                }
+
+                if (votes[slot]++ == 0) {
+                    cells[slot] = CELL;
+                    anchors1[slot] = i;
+                    anchors2[slot] = j;
+                    votedSlots[numVotedSlots++] = slot;
+                }
+            }
+        }
+
+        // endregion
+
+        // region peaks
+
+        // keeps the most voted cells, sorted by decreasing votes (the first voted cell first on ties)
+        for (int k = 0; k < numVotedSlots; k++) {
+
+            final int SLOT = votedSlots[k];
+            final int VOTES = votes[SLOT];
+
+            if (numPeaks == maxPeaks && VOTES <= peakVotes[numPeaks - 1]) {
+                continue;
+            }
+
+            // shifts the less voted peaks down, dropping the last one if there is no room left
+            int position = Math.min(numPeaks, maxPeaks - 1);
+            while (position > 0 && peakVotes[position - 1] < VOTES) {
+                peakSlots[position] = peakSlots[position - 1];
+                peakVotes[position] = peakVotes[position - 1];
+                position--;
+            }
+
+            peakSlots[position] = SLOT;
+            peakVotes[position] = VOTES;
+            numPeaks = Math.min(numPeaks + 1, maxPeaks);
+        }
+
+        for (int k = 0; k < numPeaks; k++) {
+            peakAnchors1[k] = anchors1[peakSlots[k]];
+            peakAnchors2[k] = anchors2[peakSlots[k]];
+        }
+
+        // clears the accumulator for the next call, or releases it if it is too large to be kept
+        if (votes.length > MAX_RETAINED_SLOTS) {
+            cells = new long[0];
+            votes = new int[0];
+            anchors1 = new int[0];
+            anchors2 = new int[0];
+            votedSlots = new int[0];
+        } else {
+            for (int k = 0; k < numVotedSlots; k++) {
+                votes[votedSlots[k]] = 0;
+            }
+        }
+        numVotedSlots = 0;
+
+        // endregion
+
+        return numPeaks;
+    }
+
+    /**
+     * @param peak the index of the peak, between <code>0</code> and the number of peaks (excluded)
+     * @return the number of pairs of minutiae which voted for the peak
+     */
+    public int getPeakVotes(int peak) {
+        checkPeak(peak);
+        return peakVotes[peak];
+    }
+
+    /**
+     * @param peak the index of the peak, between <code>0</code> and the number of peaks (excluded)
+     * @return the index, in the first set, of the minutia of the first pair which voted for the peak
+     */
+    public int getPeakAnchor1(int peak) {
+        checkPeak(peak);
+        return peakAnchors1[peak];
+    }
+
+    /**
+     * @param peak the index of the peak, between <code>0</code> and the number of peaks (excluded)
+     * @return the index, in the second set, of the minutia of the first pair which voted for the peak
+     */
+    public int getPeakAnchor2(int peak) {
+        checkPeak(peak);
+        return peakAnchors2[peak];
+    }
+
+    // region helper methods
+
+    /**
+     * Grows the accumulator and the peaks if they are too small
+     * @param numSlots the number of slots of the hash table, a power of two
+     */
+    private void ensureCapacity(int numSlots, int maxPeaks) {
+
+        if (votes.length < numSlots) {
+            cells = new long[numSlots];
+            votes = new int[numSlots];
+            anchors1 = new int[numSlots];
+            anchors2 = new int[numSlots];
+            votedSlots = new int[numSlots];
+        }
+
+        if (peakSlots.length < maxPeaks) {
+            peakSlots = new int[maxPeaks];
+            peakVotes = new int[maxPeaks];
+            peakAnchors1 = new int[maxPeaks];
+            peakAnchors2 = new int[maxPeaks];
+        }
+    }
+
+    /**
+     * Spreads the index of a cell over the bits of a slot, the neighbouring cells being otherwise
+     * in neighbouring slots
+     */
+    private static int hash(long cell) {
+        final long MIXED = cell * 0x9E3779B97F4A7C15L;
+        return (int) (MIXED ^ (MIXED >>> 32));
+    }
+
+    private void checkPeak(int peak) {
+        if (peak < 0 || peak >= numPeaks) {
+            throw new IndexOutOfBoundsException("peak " + peak + " out of bounds for " + numPeaks + " peaks");
+        }
+    }
+
+    // endregion
+}
@@ -0,0 +1,411 @@
+package cs107;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Identifies a fingerprint among the fingerprints of a {@link Gallery} or of a {@link MappedGallery}.
+ * <p>
+ * Every enrolled fingerprint is scored with
+ * {@link Fingerprint#bestMatchingCount(MinutiaeGrid, MinutiaeSet, Fingerprint.AlignmentMode)},
+ * and the best scores are returned. The gallery is split between the tasks of a
+ * {@link ForkJoinPool}, down to a few fingerprints per task, so that the idle threads steal the
+ * work left by the busy ones. Each task keeps its own best candidates, and the candidates of two
+ * tasks are merged when they are joined.
+ * <p>
+ * An identification can be given a deadline: once it is passed, the fingerprints not scored yet
+ * are skipped, and the best candidates among the scored ones are returned, marked as incomplete.
+ * The fingerprints which cannot be scored, like the corrupted templates of a
+ * {@link MappedGallery}, are skipped in the same way, and returned as {@link Failure}s.
+ * <p>
+ * Instances are thread-safe, and can run many identifications at the same time.
+ */
+public final class Identifier {
+
+    // the largest number of fingerprints scored by a single task
+    private static final int FINGERPRINTS_PER_TASK = 4;
+
+    // the best candidates first, the first enrolled one first on ties
+    private static final Comparator<Candidate> BEST_FIRST =
+            Comparator.comparingInt((Candidate candidate) -> -candidate.score).thenComparingInt(candidate -> candidate.index);
+
+    // the fingerprints of the gallery as they are when an identification starts
+    private final Supplier<GalleryView> gallery;
+
+    private final ForkJoinPool pool;
+    private final Fingerprint.AlignmentMode mode;
+
+    /**
+     * Creates an identifier trying every alignment, as {@link Fingerprint.AlignmentMode#EXHAUSTIVE}
+     * does, so that a candidate matches exactly when {@link Fingerprint#match(List, List)} of the
+     * enrolled fingerprint and the probe says so.
+     *
+     * @param gallery the enrolled fingerprints.
+     * @param pool    the pool scoring the fingerprints, whose parallelism bounds the cores used.
+     */
+    public Identifier(Gallery gallery, ForkJoinPool pool) {
+        this(gallery, pool, Fingerprint.AlignmentMode.EXHAUSTIVE);
+    }
+
+    /**
+     * Creates an identifier.
+     *
+     * @param gallery the enrolled fingerprints.
+     * @param pool    the pool scoring the fingerprints, whose parallelism bounds the cores used.
+     * @param mode    the method finding the alignments tried to score a fingerprint.
+     *                {@link Fingerprint.AlignmentMode#HOUGH} is faster, but only gives a lower
+     *                bound of the score, see {@link Candidate#getScore()}.
+     */
+    public Identifier(Gallery gallery, ForkJoinPool pool, Fingerprint.AlignmentMode mode) {
+        this(gallery::snapshot, pool, mode);
+    }
+
+    /**
+     * Creates an identifier over a gallery file, trying every alignment, as
+     * {@link Fingerprint.AlignmentMode#EXHAUSTIVE} does.
+     *
+     * @param gallery the enrolled fingerprints.
+     * @param pool    the pool scoring the fingerprints, whose parallelism bounds the cores used.
+     */
+    public Identifier(MappedGallery gallery, ForkJoinPool pool) {
+        this(gallery, pool, Fingerprint.AlignmentMode.EXHAUSTIVE);
+    }
+
+    /**
+     * Creates an identifier over a gallery file.
+     *
+     * @param gallery the enrolled fingerprints.
+     * @param pool    the pool scoring the fingerprints, whose parallelism bounds the cores used.
+     * @param mode    the method finding the alignments tried to score a fingerprint.
+     *                {@link Fingerprint.AlignmentMode#HOUGH} is faster, but only gives a lower
+     *                bound of the score, see {@link Candidate#getScore()}.
+     */
+    public Identifier(MappedGallery gallery, ForkJoinPool pool, Fingerprint.AlignmentMode mode) {
+        this(gallery::snapshot, pool, mode);
+    }
+
+    private Identifier(Supplier<GalleryView> gallery, ForkJoinPool pool, Fingerprint.AlignmentMode mode) {
+        this.gallery = gallery;
+        this.pool = Objects.requireNonNull(pool);
+        this.mode = Objects.requireNonNull(mode);
+    }
+
+    /**
+     * Finds the enrolled fingerprints matching a fingerprint best.
+     *
+     * @param probe         the minutiae of the fingerprint to identify.
+     * @param numCandidates the largest number of candidates returned.
+     * @return the best candidates, after scoring every enrolled fingerprint.
+     * @throws IllegalArgumentException if the number of candidates is negative.
+     */
+    public Identification identify(MinutiaeSet probe, int numCandidates) {
+        return identify(probe, numCandidates, Long.MAX_VALUE);
+    }
+
+    /**
+     * Finds the enrolled fingerprints matching a fingerprint best, within a time limit.
+     * <p>
+     * The deadline is checked before scoring every fingerprint, so the identification can take
+     * a little more than the timeout: the time to finish the fingerprints being scored.
+     *
+     * @param probe         the minutiae of the fingerprint to identify.
+     * @param numCandidates the largest number of candidates returned.
+     * @param timeout       the time after which the remaining fingerprints are not scored.
+     * @param unit          the unit of the timeout.
+     * @return the best candidates among the fingerprints scored in time.
+     * @throws IllegalArgumentException if the number of candidates is negative.
+     */
+    public Identification identify(MinutiaeSet probe, int numCandidates, long timeout, TimeUnit unit) {
+
+        final long START = System.nanoTime();
+        final long TIMEOUT = Math.max(0, unit.toNanos(timeout));
+
+        // a deadline too far to be represented is no deadline (the start can be negative, and then
+        // no timeout overflows), and any other one stays below Long.MAX_VALUE, which means no deadline
+        if (START > 0 && TIMEOUT > Long.MAX_VALUE - START) {
+            return identify(probe, numCandidates, Long.MAX_VALUE);
+        }
+
+        return identify(probe, numCandidates, Math.min(START + TIMEOUT, Long.MAX_VALUE - 1));
+    }
+
+    /**
+     * Scores the fingerprints of the gallery until a deadline
+     * @param deadline the value of {@link System#nanoTime()} after which no fingerprint is scored,
+     *                 or {@link Long#MAX_VALUE} for no deadline
+     */
+    private Identification identify(MinutiaeSet probe, int numCandidates, long deadline) {
+
+        if (numCandidates < 0) {
+            throw new IllegalArgumentException("number of candidates must be positive, current number: "
+                    + numCandidates);
+        }
+
+        final GalleryView VIEW = gallery.get();
+        final AtomicInteger NUM_SCORED = new AtomicInteger();
+        final Queue<Failure> FAILED = new ConcurrentLinkedQueue<>();
+
+        final List<Candidate> SCORED = VIEW.size() == 0 || numCandidates == 0
+                ? Collections.emptyList()
+                : pool.invoke(new ScoringTask(VIEW, 0, VIEW.size(), probe, numCandidates, deadline, NUM_SCORED,
+                        FAILED));
+
+        // only the ids of the best candidates are read
+        final List<Candidate> CANDIDATES = new ArrayList<>(SCORED.size());
+        for (Candidate candidate : SCORED) {
+            CANDIDATES.add(new Candidate(VIEW.getId(candidate.index), candidate.score, candidate.index));
+        }
+
+        // the failures in the order of the gallery, whichever task met them first
+        final List<Failure> FAILURES = new ArrayList<>(FAILED.size());
+        for (Failure failure : FAILED) {
+            FAILURES.add(new Failure(VIEW.getId(failure.index), failure.cause, failure.index));
+        }
+        FAILURES.sort(Comparator.comparingInt(failure -> failure.index));
+
+        return new Identification(CANDIDATES, FAILURES, NUM_SCORED.get(), VIEW.size());
+    }
+
+    /**
+     * Scores a range of fingerprints of the gallery, splitting it in two until it is small enough
+     */
+    @SuppressWarnings("serial")
+    private final class ScoringTask extends RecursiveTask<List<Candidate>> {
+
+        private final GalleryView view;
+        private final int from;
+        private final int to;
+        private final MinutiaeSet probe;
+        private final int numCandidates;
+        private final long deadline;
+
+        // the number of fingerprints scored, and the ones which could not be, by every task of the identification
+        private final AtomicInteger numScored;
+        private final Queue<Failure> failures;
+
+        ScoringTask(GalleryView view, int from, int to, MinutiaeSet probe, int numCandidates,
+                    long deadline, AtomicInteger numScored, Queue<Failure> failures) {
+            this.view = view;
+            this.from = from;
+            this.to = to;
+            this.probe = probe;
+            this.numCandidates = numCandidates;
+            this.deadline = deadline;
+            this.numScored = numScored;
+            this.failures = failures;
+        }
+
+        @Override
+        protected List<Candidate> compute() {
+
+            // if the range is small enough, scores its fingerprints until the deadline...
+            if (to - from <= FINGERPRINTS_PER_TASK) {
+
+                final List<Candidate> CANDIDATES = new ArrayList<>(to - from);
+
+                for (int index = from; index < to; index++) {
+
+                    if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+                        break;
+                    }
+
+                    final int SCORE;
+
+                    // a fingerprint which cannot be read is skipped, the others being still scored
+                    try {
+                        SCORE = Fingerprint.bestMatchingCount(view.getGrid(index), probe, mode);
+                    } catch (UncheckedIOException e) {
+                        failures.add(new Failure(null, e, index));
+                        continue;
+                    }
+
+                    CANDIDATES.add(new Candidate(null, SCORE, index));
+                    numScored.incrementAndGet();
+                }
+
+                return best(CANDIDATES);
+            }
+
+            // ...otherwise splits it in two, and keeps the best candidates of both halves
+            final int MIDDLE = (from + to) >>> 1;
+            final ScoringTask LEFT = new ScoringTask(view, from, MIDDLE, probe, numCandidates, deadline, numScored,
+                    failures);
+            final ScoringTask RIGHT = new ScoringTask(view, MIDDLE, to, probe, numCandidates, deadline, numScored,
+                    failures);
+
+            RIGHT.fork();
+            final List<Candidate> CANDIDATES = new ArrayList<>(LEFT.compute());
+            CANDIDATES.addAll(RIGHT.join());
+
+            return best(CANDIDATES);
+        }
+
+        /**
+         * Sorts candidates from the best one, keeping at most the number of candidates asked for
+         */
+        private List<Candidate> best(List<Candidate> candidates) {
+            candidates.sort(BEST_FIRST);
+            return candidates.size() > numCandidates ? candidates.subList(0, numCandidates) : candidates;
+        }
+    }
+
+    /**
+     * An enrolled fingerprint and its score against the fingerprint to identify.
+     */
+    public static final class Candidate {
+
+        // the id of the fingerprint, only read once the best candidates are known
+        private final String id;
+        private final int score;
+
+        // the position of the fingerprint in the gallery, breaking the ties
+        private final int index;
+
+        private Candidate(String id, int score, int index) {
+            this.id = id;
+            this.score = score;
+            this.index = index;
+        }
+
+        /**
+         * @return the id of the enrolled fingerprint
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return the number of matching minutiae at the best alignment, at least
+         * {@link Fingerprint#FOUND_THRESHOLD} if the fingerprints match. With
+         * {@link Fingerprint.AlignmentMode#HOUGH}, only the most voted alignments are tried, so
+         * the score is the best count among them, which can be lower
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * @return whether the fingerprints match, as {@link Fingerprint#match(List, List)} of the
+         * enrolled fingerprint and the probe says with {@link Fingerprint.AlignmentMode#EXHAUSTIVE}.
+         * With {@link Fingerprint.AlignmentMode#HOUGH}, fingerprints which match can be missed, but
+         * never the other way round
+         */
+        public boolean isMatch() {
+            return score >= Fingerprint.FOUND_THRESHOLD;
+        }
+
+        @Override
+        public String toString() {
+            return id + " (" + score + ")";
+        }
+    }
+
+    /**
+     * An enrolled fingerprint which could not be scored.
+     */
+    public static final class Failure {
+
+        // the id of the fingerprint, only read once every fingerprint is scored
+        private final String id;
+        private final Throwable cause;
+
+        // the position of the fingerprint in the gallery, sorting the failures
+        private final int index;
+
+        private Failure(String id, Throwable cause, int index) {
+            this.id = id;
+            this.cause = cause;
+            this.index = index;
+        }
+
+        /**
+         * @return the id of the enrolled fingerprint
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return the exception thrown while reading the fingerprint
+         */
+        public Throwable getCause() {
+            return cause;
+        }
+
+        @Override
+        public String toString() {
+            return id + ": " + cause;
+        }
+    }
+
+    /**
+     * The result of an identification.
+     */
+    public static final class Identification {
+
+        private final List<Candidate> candidates;
+        private final List<Failure> failures;
+        private final int numScored;
+        private final int gallerySize;
+
+        private Identification(List<Candidate> candidates, List<Failure> failures, int numScored, int gallerySize) {
+            this.candidates = Collections.unmodifiableList(new ArrayList<>(candidates));
+            this.failures = Collections.unmodifiableList(new ArrayList<>(failures));
+            this.numScored = numScored;
+            this.gallerySize = gallerySize;
+        }
+
+        /**
+         * @return the best candidates, from the best one, matching or not
+         */
+        public List<Candidate> getCandidates() {
+            return candidates;
+        }
+
+        /**
+         * @return the enrolled fingerprints which could not be scored, in the order of the gallery
+         */
+        public List<Failure> getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return the number of enrolled fingerprints scored before the deadline
+         */
+        public int getNumScored() {
+            return numScored;
+        }
+
+        /**
+         * @return the number of fingerprints enrolled when the identification started
+         */
+        public int getGallerySize() {
+            return gallerySize;
+        }
+
+        /**
+         * @return whether every enrolled fingerprint was scored, so that the candidates are the
+         * best ones of the whole gallery, none being past the deadline or failed
+         */
+        public boolean isComplete() {
+            return numScored == gallerySize;
+        }
+
+        @Override
+        public String toString() {
+            return candidates + (isComplete() ? "" : " (" + numScored + "/" + gallerySize + " scored)")
+                    + (failures.isEmpty() ? "" : ", cannot score " + failures);
+        }
+    }
+}
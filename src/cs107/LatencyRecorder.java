@@ -0,0 +1,98 @@
+package cs107;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Records durations and computes their percentiles.
+ * <p>
+ * The last durations are kept in a ring buffer, so the percentiles describe the recent ones, and
+ * recording never allocates. The number of durations and the largest one count every duration
+ * since the creation of the recorder. Instances are thread-safe.
+ */
+public final class LatencyRecorder {
+
+    // the last durations, in nanoseconds, the next one replacing the oldest one once full
+    private final long[] samples;
+    private int next;
+    private int numSamples;
+
+    private long count;
+    private long max;
+
+    /**
+     * Creates an empty recorder.
+     *
+     * @param capacity the number of durations kept to compute the percentiles.
+     * @throws IllegalArgumentException if the capacity is not strictly positive.
+     */
+    public LatencyRecorder(int capacity) {
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be strictly positive, current capacity: " + capacity);
+        }
+
+        samples = new long[capacity];
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration, in nanoseconds.
+     */
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = next + 1 == samples.length ? 0 : next + 1;
+        numSamples = Math.min(numSamples + 1, samples.length);
+        count++;
+        max = Math.max(max, nanos);
+    }
+
+    /**
+     * @return the number of durations recorded
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the largest duration recorded, in nanoseconds, <code>0</code> if there is none
+     */
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * Computes a percentile of the last durations, with the nearest-rank method.
+     *
+     * @param percentile the percentile, between <code>0</code> (excluded) and <code>100</code>.
+     * @return the smallest duration larger than or equal to this percentage of the last
+     *         durations, in nanoseconds, <code>0</code> if there is none.
+     * @throws IllegalArgumentException if the percentile is not between 0 (excluded) and 100.
+     */
+    public long getPercentile(double percentile) {
+
+        if (!(percentile > 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("percentile must be between 0 (excluded) and 100, current percentile: "
+                    + percentile);
+        }
+
+        final long[] SORTED;
+        synchronized (this) {
+            SORTED = Arrays.copyOf(samples, numSamples);
+        }
+
+        if (SORTED.length == 0) {
+            return 0;
+        }
+
+        Arrays.sort(SORTED);
+        return SORTED[(int) Math.ceil(percentile / 100 * SORTED.length) - 1];
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d requests, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms",
+                getCount(), getPercentile(50) / 1e6, getPercentile(90) / 1e6, getPercentile(99) / 1e6, getMax() / 1e6);
+    }
+}
@@ -1,8 +1,30 @@
 package cs107;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
 
 /**
  * This class will not be graded. You can use it to test your program.
@@ -25,10 +47,25 @@ public class Main {
     //testConnectedPixels2();
     //testConnectedPixels3();
     //testOrientation();
+    //testOrientationAgainstReference();
     //testApplyRotation();
     //testApplyTranslation();
     testThin();
+    //testThinAgainstReference(3000, 0);
     //testWithSkeleton();
+    //benchmarkThinning();
+    //benchmarkOrientation();
+    //benchmarkMatching();
+    //benchmarkAlignment();
+    //benchmarkParallelMatching();
+    //benchmarkIdentification();
+    //benchmarkTemplates("templates");
+    //testTemplateStream();
+    //benchmarkMappedGallery("gallery.fpg", 800);
+    //benchmarkTemplateCache();
+    //enrollDirectory("resources/fingerprints", "templates");
+    //benchmarkServer();
+    //testServerImageSize();
 
     boolean[][] onlyTrue = new boolean[3][3];
 
@@ -278,6 +315,103 @@ public class Main {
     System.out.println("Expected angle: 35\t Computed angle: " + angle);
   }
 
+  /**
+   * Extracts the minutiae of all the fingerprints, and checks that each one gets the orientation
+   * computed by referenceOrientation from the skeleton.
+   */
+  public static void testOrientationAgainstReference() {
+    int count = 0;
+    int different = 0;
+    for (BinaryImage image : readAllFingerprints()) {
+      BinaryImage skeleton = Fingerprint.thin(image);
+      boolean[][] pixels = skeleton.toArray();
+      MinutiaeSet minutiae = Fingerprint.extract(skeleton, Fingerprint.OrientationMode.PER_MINUTIA);
+
+      for (int i = 0; i < minutiae.size(); i++) {
+        int expected = referenceOrientation(pixels, minutiae.getRow(i), minutiae.getCol(i),
+            Fingerprint.ORIENTATION_DISTANCE);
+        count++;
+        if (minutiae.getOrientation(i) != expected) {
+          different++;
+        }
+      }
+    }
+    System.out.println(count + " minutiae, orientations different from the reference: " + different);
+  }
+
+  /**
+   * The orientation of a minutia computed as the statement of the project describes it, without
+   * any of the code of Fingerprint: a recursive search of the connected pixels in a boolean array,
+   * the regression sums of their coordinates, and the count of the pixels on each side of the
+   * perpendicular y = (-1 / slope) * x.
+   */
+  public static int referenceOrientation(boolean[][] image, int row, int col, int distance) {
+    boolean[][] connected = new boolean[image.length][image[0].length];
+    referenceConnect(image, connected, row, col, row, col, distance);
+
+    long sumXX = 0;
+    long sumYY = 0;
+    long sumXY = 0;
+    for (int y = 0; y < connected.length; y++) {
+      for (int x = 0; x < connected[y].length; x++) {
+        if (connected[y][x]) {
+          sumXX += (long) (x - col) * (x - col);
+          sumYY += (long) (row - y) * (row - y);
+          sumXY += (long) (x - col) * (row - y);
+        }
+      }
+    }
+
+    double slope;
+    if (sumXX == 0) {
+      slope = Double.POSITIVE_INFINITY;
+    } else if (sumXX >= sumYY) {
+      slope = (double) sumXY / sumXX;
+    } else {
+      slope = (double) sumYY / sumXY;
+    }
+
+    int above = 0;
+    int below = 0;
+    for (int y = 0; y < connected.length; y++) {
+      for (int x = 0; x < connected[y].length; x++) {
+        if (connected[y][x]) {
+          if (row - y >= (-1 / slope) * (x - col)) {
+            above++;
+          } else {
+            below++;
+          }
+        }
+      }
+    }
+
+    double angle = Math.atan(slope);
+    if ((angle >= 0 && below > above) || (angle < 0 && above > below)) {
+      angle += Math.PI;
+    }
+
+    int orientation = (int) Math.round(Math.toDegrees(angle));
+    return orientation < 0 ? orientation + 360 : orientation;
+  }
+
+  /**
+   * Marks the black pixels connected to (y, x) within the window of the minutia at (row, col).
+   */
+  private static void referenceConnect(boolean[][] image, boolean[][] connected, int y, int x, int row, int col,
+      int distance) {
+    if (y < 0 || y >= image.length || x < 0 || x >= image[y].length
+        || Math.abs(y - row) > distance || Math.abs(x - col) > distance
+        || !image[y][x] || connected[y][x]) {
+      return;
+    }
+    connected[y][x] = true;
+    for (int dy = -1; dy <= 1; dy++) {
+      for (int dx = -1; dx <= 1; dx++) {
+        referenceConnect(image, connected, y + dy, x + dx, row, col, distance);
+      }
+    }
+  }
+
   /**
    * This function is here to help you test the functionalities of
    * applyRotation. You are free to modify and/or delete it.
@@ -337,7 +471,10 @@ public class Main {
    */
   public static void testThin() {
 	    boolean[][] image1 = Helper.readBinary("resources/test_inputs/1_1_small.png");
+	    // saves the thinning steps in debug_fingerprints.png
+	    Fingerprint.setListener(new DebugImageListener("debug_fingerprints.png", "test_connected_pixels.png", 13, 1, 10));
 	    boolean[][] skeleton1 = Fingerprint.thin(image1);
+	    Fingerprint.setListener(null);
 	    Helper.writeBinary("skeleton_1_1_small.png", skeleton1);
   }
 
@@ -393,6 +530,94 @@ public class Main {
     }
   }
 
+  /**
+   * Thins random images with Fingerprint.thin, with and without a listener, and with every
+   * thinning algorithm, and checks that they all give the skeleton of referenceThin, the original
+   * algorithm of Fingerprint.thin.
+   * The images are small, of random density, so that they cover many more shapes than the
+   * fingerprints: lone pixels, lines, blobs, and black pixels on the borders.
+   */
+  public static void testThinAgainstReference(int count, long seed) {
+    Random random = new Random(seed);
+
+    Map<String, Thinner> thinners = new LinkedHashMap<>();
+    thinners.put("full sweep", new DoubleBufferedThinner());
+    thinners.put("frontier", new FrontierThinner());
+    thinners.put("bit-sliced", new BitSlicedThinner());
+    thinners.put("parallel", new ParallelThinner());
+
+    Map<String, Integer> differences = new LinkedHashMap<>();
+    differences.put("Fingerprint.thin", 0);
+    differences.put("with listener", 0);
+    for (String name : thinners.keySet()) {
+      differences.put(name, 0);
+    }
+
+    for (int i = 0; i < count; i++) {
+      boolean[][] image = new boolean[1 + random.nextInt(40)][1 + random.nextInt(100)];
+      double density = random.nextDouble();
+      for (boolean[] row : image) {
+        for (int x = 0; x < row.length; x++) {
+          row[x] = random.nextDouble() < density;
+        }
+      }
+
+      boolean[][] expected = referenceThin(image);
+      BinaryImage packed = BinaryImage.fromArray(image);
+
+      if (!arrayEqual(expected, Fingerprint.thin(image))) {
+        differences.merge("Fingerprint.thin", 1, Integer::sum);
+      }
+      // a listener makes Fingerprint.thin apply the steps one by one, which must not change the skeleton
+      Fingerprint.setListener(new FingerprintListener() {});
+      if (!arrayEqual(expected, Fingerprint.thin(image))) {
+        differences.merge("with listener", 1, Integer::sum);
+      }
+      Fingerprint.setListener(null);
+      for (Map.Entry<String, Thinner> entry : thinners.entrySet()) {
+        if (!arrayEqual(expected, entry.getValue().thin(packed).toArray())) {
+          differences.merge(entry.getKey(), 1, Integer::sum);
+        }
+      }
+    }
+
+    System.out.println(count + " random images, skeletons different from the reference: " + differences);
+  }
+
+  /**
+   * The thinning of Fingerprint.thin as originally written, one step after the other on boolean
+   * arrays, stopping as soon as the second step of an iteration leaves the image unchanged.
+   */
+  public static boolean[][] referenceThin(boolean[][] image) {
+    boolean[][] previousImage = new boolean[image.length][image[0].length];
+    boolean[][] currentImage = new boolean[image.length][];
+    for (int y = 0; y < image.length; y++) {
+      currentImage[y] = image[y].clone();
+    }
+
+    while (!Fingerprint.identical(previousImage, currentImage)) {
+      previousImage = referenceThinningStep(currentImage, 1); // step 1
+      currentImage = referenceThinningStep(previousImage, 0); // step 2
+    }
+    return currentImage;
+  }
+
+  /**
+   * The thinning step of Fingerprint.thinningStep as originally written, without lookup table.
+   */
+  private static boolean[][] referenceThinningStep(boolean[][] image, int step) {
+    boolean[][] thinned = new boolean[image.length][];
+    for (int y = 0; y < image.length; y++) {
+      thinned[y] = image[y].clone();
+      for (int x = 0; x < image[y].length; x++) {
+        if (image[y][x] && Fingerprint.canBeDeleted(Fingerprint.getNeighbours(image, y, x), step)) {
+          thinned[y][x] = false;
+        }
+      }
+    }
+    return thinned;
+  }
+
   /**
    * This function is here to help you test the overall functionalities. It will
    * compare the fingerprint in the file name1.png with the fingerprint in the
@@ -436,6 +661,553 @@ public class Main {
 	  }
   }
 
+  /**
+   * Compares the time taken by each thinning algorithm to compute the skeletons of
+   * all the fingerprints in resources/fingerprints, after checking that they all
+   * give the skeletons of the original algorithm, computed by referenceThin.
+   */
+  public static void benchmarkThinning() {
+    List<BinaryImage> images = readAllFingerprints();
+
+    Map<String, Thinner> thinners = new LinkedHashMap<>();
+    thinners.put("full sweep", new DoubleBufferedThinner());
+    thinners.put("frontier", new FrontierThinner());
+    thinners.put("bit-sliced", new BitSlicedThinner());
+    thinners.put("parallel", new ParallelThinner());
+
+    // the skeletons computed by the original algorithm of Fingerprint.thin, used as reference
+    List<BinaryImage> expected = new ArrayList<>();
+    for (BinaryImage image : images) {
+      expected.add(BinaryImage.fromArray(referenceThin(image.toArray())));
+    }
+
+    double referenceTime = 0;
+    for (Map.Entry<String, Thinner> entry : thinners.entrySet()) {
+      Thinner thinner = entry.getValue();
+
+      boolean identical = true;
+      for (int i = 0; i < images.size(); i++) {
+        identical &= Fingerprint.identical(expected.get(i), thinner.thin(images.get(i)));
+      }
+
+      // keeps the best of several rounds, the first ones warming up the JIT
+      long best = Long.MAX_VALUE;
+      for (int round = 0; round < 15; round++) {
+        long start = System.nanoTime();
+        for (BinaryImage image : images) {
+          thinner.thin(image);
+        }
+        best = Math.min(best, System.nanoTime() - start);
+      }
+
+      double time = best / 1e6;
+      if (referenceTime == 0) {
+        referenceTime = time;
+      }
+      System.out.printf("%-12s %8.1f ms  x%.2f  identical skeletons: %s%n", entry.getKey(), time,
+          referenceTime / time, identical);
+    }
+  }
+
+  /**
+   * Compares the orientation field with the per-minutia regression, on the minutiae of all the
+   * fingerprints: time spent in extract, and difference between the orientations of each minutia.
+   */
+  public static void benchmarkOrientation() {
+    List<BinaryImage> skeletons = new ArrayList<>();
+    for (BinaryImage image : readAllFingerprints()) {
+      skeletons.add(Fingerprint.thin(image));
+    }
+
+    Map<String, List<MinutiaeSet>> minutiae = new LinkedHashMap<>();
+    for (Fingerprint.OrientationMode mode : Fingerprint.OrientationMode.values()) {
+      Fingerprint.setOrientationMode(mode);
+
+      List<MinutiaeSet> extracted = new ArrayList<>();
+      for (BinaryImage skeleton : skeletons) {
+        extracted.add(Fingerprint.extract(skeleton));
+      }
+      minutiae.put(mode.name(), extracted);
+
+      // keeps the best of several rounds, the first ones warming up the JIT
+      long best = Long.MAX_VALUE;
+      for (int round = 0; round < 15; round++) {
+        long start = System.nanoTime();
+        for (BinaryImage skeleton : skeletons) {
+          Fingerprint.extract(skeleton);
+        }
+        best = Math.min(best, System.nanoTime() - start);
+      }
+      System.out.printf("%-12s %8.1f ms%n", mode, best / 1e6);
+    }
+    Fingerprint.setOrientationMode(Fingerprint.OrientationMode.PER_MINUTIA);
+
+    // both modes find the same minutiae, in the same order
+    List<MinutiaeSet> reference = minutiae.get(Fingerprint.OrientationMode.PER_MINUTIA.name());
+    List<MinutiaeSet> field = minutiae.get(Fingerprint.OrientationMode.FIELD.name());
+
+    int count = 0;
+    int close = 0;
+    long totalDifference = 0;
+    for (int i = 0; i < reference.size(); i++) {
+      for (int j = 0; j < reference.get(i).size(); j++) {
+        int difference = Math.abs(reference.get(i).getOrientation(j) - field.get(i).getOrientation(j));
+        difference = Math.min(difference, 360 - difference);
+
+        count++;
+        totalDifference += difference;
+        if (difference <= Fingerprint.ORIENTATION_THRESHOLD) {
+          close++;
+        }
+      }
+    }
+    System.out.printf("%d minutiae, mean difference %.1f degrees, %.1f%% within %d degrees%n", count,
+        (double) totalDifference / count, 100.0 * close / count, Fingerprint.ORIENTATION_THRESHOLD);
+  }
+
+  /**
+   * Compares the first fingerprint of every finger with the 8 fingerprints of the same finger and
+   * of the next one, and prints the time spent matching and the work done by the matcher.
+   */
+  public static void benchmarkMatching() {
+    List<MinutiaeSet> minutiae = new ArrayList<>();
+    for (BinaryImage image : readAllFingerprints()) {
+      minutiae.add(Fingerprint.extract(Fingerprint.thin(image)));
+    }
+
+    MatchCounters counters = new MatchCounters();
+    int correct = 0;
+
+    long start = System.nanoTime();
+    for (int finger = 0; finger < 16; finger++) {
+      MinutiaeGrid grid = new MinutiaeGrid(minutiae.get(finger * 8), Fingerprint.DISTANCE_THRESHOLD);
+
+      for (int other : new int[] {finger, (finger + 1) % 16}) {
+        for (int i = 0; i < 8; i++) {
+          boolean isMatch = Fingerprint.match(grid, minutiae.get(other * 8 + i), counters);
+          if (isMatch == (other == finger)) {
+            correct++;
+          }
+        }
+      }
+    }
+    double time = (System.nanoTime() - start) / 1e6;
+
+    System.out.printf("%.1f ms, %d/%d expected results%n", time, correct, counters.getComparisons());
+    System.out.println(counters);
+  }
+
+  /**
+   * Runs the comparisons of benchmarkMatching with every alignment mode, and prints the time
+   * spent, the work done and how often each mode agrees with the exhaustive one.
+   */
+  public static void benchmarkAlignment() {
+    List<MinutiaeSet> minutiae = new ArrayList<>();
+    for (BinaryImage image : readAllFingerprints()) {
+      minutiae.add(Fingerprint.extract(Fingerprint.thin(image)));
+    }
+
+    Map<Fingerprint.AlignmentMode, List<Boolean>> results = new LinkedHashMap<>();
+
+    for (Fingerprint.AlignmentMode mode : Fingerprint.AlignmentMode.values()) {
+      List<Boolean> modeResults = new ArrayList<>();
+      MatchCounters counters = new MatchCounters();
+      int correct = 0;
+
+      long start = System.nanoTime();
+      for (int finger = 0; finger < 16; finger++) {
+        MinutiaeGrid grid = new MinutiaeGrid(minutiae.get(finger * 8), Fingerprint.DISTANCE_THRESHOLD);
+
+        for (int other : new int[] {finger, (finger + 1) % 16}) {
+          for (int i = 0; i < 8; i++) {
+            boolean isMatch = Fingerprint.match(grid, minutiae.get(other * 8 + i), mode, counters);
+            modeResults.add(isMatch);
+            if (isMatch == (other == finger)) {
+              correct++;
+            }
+          }
+        }
+      }
+      double time = (System.nanoTime() - start) / 1e6;
+      results.put(mode, modeResults);
+
+      List<Boolean> exhaustive = results.get(Fingerprint.AlignmentMode.EXHAUSTIVE);
+      int agreements = 0;
+      for (int i = 0; i < modeResults.size(); i++) {
+        if (modeResults.get(i).equals(exhaustive.get(i))) {
+          agreements++;
+        }
+      }
+
+      System.out.printf("%-12s %9.1f ms, %d/%d expected results, %d/%d agreeing with %s%n", mode, time, correct,
+          modeResults.size(), agreements, modeResults.size(), Fingerprint.AlignmentMode.EXHAUSTIVE);
+      System.out.println("             " + counters);
+    }
+  }
+
+  /**
+   * Runs the comparisons of benchmarkMatching sequentially and on pools of growing parallelism,
+   * and prints the time spent and whether every result is the same as the sequential one.
+   */
+  public static void benchmarkParallelMatching() {
+    List<MinutiaeSet> minutiae = new ArrayList<>();
+    for (BinaryImage image : readAllFingerprints()) {
+      minutiae.add(Fingerprint.extract(Fingerprint.thin(image)));
+    }
+
+    List<Boolean> sequential = new ArrayList<>();
+    long start = System.nanoTime();
+    for (int finger = 0; finger < 16; finger++) {
+      MinutiaeGrid grid = new MinutiaeGrid(minutiae.get(finger * 8), Fingerprint.DISTANCE_THRESHOLD);
+      for (int other : new int[] {finger, (finger + 1) % 16}) {
+        for (int i = 0; i < 8; i++) {
+          sequential.add(Fingerprint.match(grid, minutiae.get(other * 8 + i), null));
+        }
+      }
+    }
+    System.out.printf("%-14s %9.1f ms%n", "sequential", (System.nanoTime() - start) / 1e6);
+
+    for (int parallelism = 1; parallelism <= Runtime.getRuntime().availableProcessors() * 2; parallelism *= 2) {
+      ForkJoinPool pool = new ForkJoinPool(parallelism);
+      MatchCounters counters = new MatchCounters();
+      int identical = 0;
+      int k = 0;
+
+      start = System.nanoTime();
+      for (int finger = 0; finger < 16; finger++) {
+        MinutiaeGrid grid = new MinutiaeGrid(minutiae.get(finger * 8), Fingerprint.DISTANCE_THRESHOLD);
+        for (int other : new int[] {finger, (finger + 1) % 16}) {
+          for (int i = 0; i < 8; i++) {
+            if (Fingerprint.match(grid, minutiae.get(other * 8 + i), pool, counters) == sequential.get(k++)) {
+              identical++;
+            }
+          }
+        }
+      }
+      double time = (System.nanoTime() - start) / 1e6;
+      pool.shutdown();
+
+      System.out.printf("%-14s %9.1f ms, %d/%d identical results%n", parallelism + " threads", time, identical,
+          sequential.size());
+      System.out.println("               " + counters);
+    }
+  }
+
+  /**
+   * Enrolls every fingerprint but the first one of each finger, identifies the first ones among
+   * them, and prints the time spent and how often the best candidate is the right finger.
+   */
+  public static void benchmarkIdentification() {
+    List<MinutiaeSet> minutiae = new ArrayList<>();
+    for (BinaryImage image : readAllFingerprints()) {
+      minutiae.add(Fingerprint.extract(Fingerprint.thin(image)));
+    }
+
+    Gallery gallery = new Gallery();
+    for (int finger = 0; finger < 16; finger++) {
+      for (int i = 1; i < 8; i++) {
+        gallery.enroll((finger + 1) + "_" + (i + 1), minutiae.get(finger * 8 + i));
+      }
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    Identifier identifier = new Identifier(gallery, pool);
+    int correct = 0;
+
+    long start = System.nanoTime();
+    for (int finger = 0; finger < 16; finger++) {
+      Identifier.Identification identification = identifier.identify(minutiae.get(finger * 8), 3);
+      Identifier.Candidate best = identification.getCandidates().get(0);
+      if (best.isMatch() && best.getId().startsWith((finger + 1) + "_")) {
+        correct++;
+      }
+      System.out.println((finger + 1) + "_1: " + identification);
+    }
+    double time = (System.nanoTime() - start) / 1e6;
+    pool.shutdown();
+
+    System.out.printf("%.1f ms for 16 probes against %d fingerprints, %d/16 identified%n", time, gallery.size(),
+        correct);
+  }
+
+  /**
+   * Enrolls every fingerprint of resources/fingerprints as a template file in a directory, reads
+   * the templates back, and prints the time spent by both and whether the templates are identical.
+   *
+   * @param directory the directory receiving the templates, created if needed.
+   */
+  public static void benchmarkTemplates(String directory) {
+    new File(directory).mkdirs();
+
+    List<Template> enrolled = new ArrayList<>();
+    long start = System.nanoTime();
+    for (int finger = 1; finger <= 16; finger++) {
+      for (int i = 1; i <= 8; i++) {
+        Template template = Template.extract(Helper.readBinaryImage("resources/fingerprints/" + finger + "_" + i + ".png"));
+        Helper.writeTemplate(directory + "/" + finger + "_" + i + ".fpt", template);
+        enrolled.add(template);
+      }
+    }
+    double enrollTime = (System.nanoTime() - start) / 1e6;
+
+    List<Template> loaded = new ArrayList<>();
+    start = System.nanoTime();
+    for (int finger = 1; finger <= 16; finger++) {
+      for (int i = 1; i <= 8; i++) {
+        loaded.add(Helper.readTemplate(directory + "/" + finger + "_" + i + ".fpt"));
+      }
+    }
+    double loadTime = (System.nanoTime() - start) / 1e6;
+
+    long bytes = 0;
+    for (Template template : loaded) {
+      bytes += TemplateFormat.size(template);
+    }
+
+    System.out.printf("enrolled %d templates in %.1f ms (%.2f ms each)%n", enrolled.size(), enrollTime,
+        enrollTime / enrolled.size());
+    System.out.printf("loaded %d templates in %.1f ms (%.1f us each), %d bytes in total%n", loaded.size(), loadTime,
+        1000 * loadTime / loaded.size(), bytes);
+    System.out.println(enrolled.equals(loaded) ? "identical templates" : "ERROR: different templates");
+  }
+
+  /**
+   * Writes the templates of all the fingerprints one after the other in a stream, and reads them
+   * back one by one. Then reads a header announcing 357 million minutiae followed by nothing,
+   * which must fail with an EOFException instead of allocating the records announced.
+   */
+  public static void testTemplateStream() {
+    try {
+      List<Template> written = new ArrayList<>();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      for (BinaryImage image : readAllFingerprints()) {
+        Template template = Template.extract(image);
+        TemplateFormat.write(template, out);
+        written.add(template);
+      }
+
+      List<Template> read = new ArrayList<>();
+      ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+      for (int i = 0; i < written.size(); i++) {
+        read.add(TemplateFormat.read(in));
+      }
+      System.out.println(written.equals(read) && in.available() == 0
+          ? "identical templates" : "ERROR: different templates");
+
+      byte[] header = Arrays.copyOf(TemplateFormat.toBytes(written.get(0)), TemplateFormat.HEADER_SIZE);
+      ByteBuffer.wrap(header).putInt(TemplateFormat.COUNT_OFFSET, (Integer.MAX_VALUE - TemplateFormat.HEADER_SIZE) / TemplateFormat.RECORD_SIZE);
+      try {
+        TemplateFormat.read(new ByteArrayInputStream(header));
+        System.out.println("ERROR: truncated template read");
+      } catch (EOFException e) {
+        System.out.println("truncated template rejected: " + e.getMessage());
+      }
+
+    } catch (IOException e) {
+      System.out.println(e);
+    }
+  }
+
+  /**
+   * Writes a gallery file holding many copies of every fingerprint of resources/fingerprints,
+   * maps it, and identifies the first fingerprint against it within one second.
+   *
+   * @param path   the path of the gallery file, replaced if it exists.
+   * @param copies the number of copies of each fingerprint, 800 giving a gallery of 102400 fingerprints.
+   */
+  public static void benchmarkMappedGallery(String path, int copies) {
+    List<Template> templates = new ArrayList<>();
+    for (BinaryImage image : readAllFingerprints()) {
+      templates.add(Template.extract(image));
+    }
+
+    try {
+      long start = System.nanoTime();
+      try (MappedGallery.Writer writer = MappedGallery.create(Paths.get(path))) {
+        for (int copy = 0; copy < copies; copy++) {
+          for (int i = 0; i < templates.size(); i++) {
+            writer.add((i / 8 + 1) + "_" + (i % 8 + 1) + "#" + copy, templates.get(i));
+          }
+        }
+      }
+      System.out.printf("wrote %d fingerprints (%d bytes) in %.1f ms%n", copies * templates.size(),
+          new File(path).length(), (System.nanoTime() - start) / 1e6);
+
+      start = System.nanoTime();
+      MappedGallery gallery = MappedGallery.open(Paths.get(path));
+      System.out.printf("opened %d fingerprints in %.1f ms%n", gallery.size(), (System.nanoTime() - start) / 1e6);
+
+      ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+      // only tries the most voted alignments, to scan as much of the large gallery as possible in time
+      Identifier identifier = new Identifier(gallery, pool, Fingerprint.AlignmentMode.HOUGH);
+
+      start = System.nanoTime();
+      Identifier.Identification identification = identifier.identify(templates.get(0).getMinutiae(), 3, 1,
+          TimeUnit.SECONDS);
+      System.out.printf("identified 1_1 in %.1f ms: %s%n", (System.nanoTime() - start) / 1e6, identification);
+      pool.shutdown();
+
+    } catch (IOException e) {
+      System.out.println(e + " Filename: " + path);
+    }
+  }
+
+  /**
+   * Looks up every fingerprint of resources/fingerprints twice in a template cache, and prints
+   * the time spent by both passes and the counters of the cache.
+   */
+  public static void benchmarkTemplateCache() {
+    TemplateCache cache = new TemplateCache(256);
+
+    try {
+      for (String pass : new String[] {"cold", "warm"}) {
+        long start = System.nanoTime();
+        for (int finger = 1; finger <= 16; finger++) {
+          for (int i = 1; i <= 8; i++) {
+            cache.get(Paths.get("resources/fingerprints/" + finger + "_" + i + ".png"));
+          }
+        }
+        System.out.printf("%s: %.1f ms%n", pass, (System.nanoTime() - start) / 1e6);
+      }
+    } catch (IOException e) {
+      System.out.println(e);
+    }
+
+    System.out.println(cache);
+  }
+
+  /**
+   * Enrolls every image of a directory as a template file with the enrollment pipeline, and
+   * prints the work done by every stage. Running it again only enrolls the images whose template
+   * is missing, for instance after an interruption.
+   *
+   * @param inputDirectory  the directory of the images.
+   * @param outputDirectory the directory receiving the templates.
+   */
+  public static void enrollDirectory(String inputDirectory, String outputDirectory) {
+    EnrollmentPipeline pipeline = new EnrollmentPipeline(Paths.get(inputDirectory), Paths.get(outputDirectory));
+
+    try {
+      System.out.print(pipeline.run());
+    } catch (IOException e) {
+      System.out.println(e + " Directory: " + inputDirectory);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      System.out.println("enrollment interrupted, run it again to resume");
+    }
+  }
+
+  /**
+   * Starts a fingerprint server on localhost, enrolls every fingerprint but the first one of each
+   * finger through it, verifies and identifies the first ones, all the identifications being sent
+   * at the same time, and prints the responses and the latencies reported by the server.
+   */
+  public static void benchmarkServer() {
+    int cpuThreads = Runtime.getRuntime().availableProcessors();
+    // accepts all the identifications sent at the same time, instead of answering 503 to some
+    try (FingerprintServer server = new FingerprintServer(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), new Gallery(), cpuThreads, 32,
+        new TemplateCache(256), Fingerprint.AlignmentMode.HOUGH)) {
+      server.start();
+      String url = "http://localhost:" + server.getPort();
+      HttpClient client = HttpClient.newHttpClient();
+
+      for (int finger = 1; finger <= 16; finger++) {
+        for (int i = 2; i <= 8; i++) {
+          post(client, url + "/enroll?id=" + finger + "_" + i, finger + "_" + i);
+        }
+      }
+
+      System.out.println("1_1 against 1_2: " + post(client, url + "/verify?id=1_2", "1_1").body());
+      System.out.println("1_1 against 2_2: " + post(client, url + "/verify?id=2_2", "1_1").body());
+      System.out.println("1_1 against 0_0: " + post(client, url + "/verify?id=0_0", "1_1").body());
+
+      List<CompletableFuture<HttpResponse<String>>> identifications = new ArrayList<>();
+      for (int finger = 1; finger <= 16; finger++) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/identify?k=3"))
+            .POST(HttpRequest.BodyPublishers.ofFile(Paths.get("resources/fingerprints/" + finger + "_1.png")))
+            .build();
+        identifications.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+      }
+      for (int finger = 1; finger <= 16; finger++) {
+        System.out.println(finger + "_1: " + identifications.get(finger - 1).join().body());
+      }
+
+      HttpRequest stats = HttpRequest.newBuilder(URI.create(url + "/stats")).build();
+      System.out.println(client.send(stats, HttpResponse.BodyHandlers.ofString()).body());
+      for (FingerprintServer.Operation operation : FingerprintServer.Operation.values()) {
+        System.out.println(operation + ": " + server.getLatencies(operation));
+      }
+
+    } catch (IOException e) {
+      System.out.println(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      System.out.println("interrupted");
+    }
+  }
+
+  /**
+   * Posts to a fingerprint server a blank image larger than FingerprintServer.MAX_IMAGE_SIZE, and
+   * checks that it is answered 400 from its header, before being extracted or cached.
+   */
+  public static void testServerImageSize() {
+    int size = 12_000;
+    BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_BYTE_BINARY);
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+
+    TemplateCache cache = new TemplateCache(16);
+    try (FingerprintServer server = new FingerprintServer(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), new Gallery(), 1, 4, cache,
+        Fingerprint.AlignmentMode.HOUGH)) {
+      ImageIO.write(image, "png", png);
+      server.start();
+
+      HttpRequest request = HttpRequest.newBuilder(
+              URI.create("http://localhost:" + server.getPort() + "/enroll?id=large"))
+          .POST(HttpRequest.BodyPublishers.ofByteArray(png.toByteArray()))
+          .build();
+      long start = System.nanoTime();
+      HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+      double time = (System.nanoTime() - start) / 1e6;
+
+      boolean rejected = response.statusCode() == 400 && cache.getMisses() == 0;
+      System.out.printf("%dx%d image (%d bytes): %d %s in %.1f ms, rejected before extraction: %s%n", size, size,
+          png.size(), response.statusCode(), response.body(), time, rejected);
+
+    } catch (IOException e) {
+      System.out.println(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      System.out.println("interrupted");
+    }
+  }
+
+  /**
+   * Posts a fingerprint of resources/fingerprints to a server.
+   */
+  private static HttpResponse<String> post(HttpClient client, String url, String name)
+      throws IOException, InterruptedException {
+    HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+        .POST(HttpRequest.BodyPublishers.ofByteArray(
+            Files.readAllBytes(Paths.get("resources/fingerprints/" + name + ".png"))))
+        .build();
+    return client.send(request, HttpResponse.BodyHandlers.ofString());
+  }
+
+  /**
+   * Reads all the fingerprints in resources/fingerprints as bit-packed images.
+   */
+  public static List<BinaryImage> readAllFingerprints() {
+    List<BinaryImage> images = new ArrayList<>();
+    for (int finger = 1; finger <= 16; finger++) {
+      for (int i = 1; i <= 8; i++) {
+        images.add(Helper.readBinaryImage("resources/fingerprints/" + finger + "_" + i + ".png"));
+      }
+    }
+    return images;
+  }
+
   /*
    * Helper functions to print and compare arrays
    */
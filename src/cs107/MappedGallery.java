@@ -0,0 +1,444 @@
+package cs107;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Gallery of fingerprints stored in a single file, and read straight from a memory mapping of
+ * the file.
+ * <p>
+ * The file holds a header, the templates of the fingerprints one after the other, each one in
+ * {@link TemplateFormat}, an index of fixed-size entries and the ids, every value being big-endian:
+ * <pre>
+ *  offset  size  content
+ *       0     4  the magic number "FPGL"
+ *       4     1  the version of the format, {@link #VERSION}
+ *       5     3  zeros
+ *       8     4  the number of fingerprints
+ *      12     4  zeros
+ *      16     8  the offset of the index
+ *      24   ...  the templates
+ *   index   ...  for every fingerprint, {@link #INDEX_ENTRY_SIZE} bytes: the offset of its template
+ *                (8 bytes), the offset of its id after the index (4 bytes) and the length of its id (4 bytes)
+ *     ...   ...  the ids, in UTF-8
+ * </pre>
+ * Opening a gallery only maps the file and checks its index: no template is read into the heap,
+ * and the pages of the file are loaded, and kept in the page cache, by the operating system. The
+ * minutiae of a fingerprint are decoded from the mapping when it is scored, and the ids are only
+ * decoded for the best candidates of an identification.
+ * <p>
+ * A gallery file is written once with a {@link Writer}, and never modified: instances are
+ * immutable and thread-safe. The mapping is released when the instance is garbage collected.
+ *
+ * @see Identifier
+ */
+public final class MappedGallery implements GalleryView {
+
+    /**
+     * The first 4 bytes of every gallery file, "FPGL" in ASCII.
+     */
+    public static final int MAGIC = 0x4650474C;
+
+    /**
+     * The version of the format written and read.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The size of the header of the file, in bytes.
+     */
+    public static final int HEADER_SIZE = 24;
+
+    /**
+     * The size of an entry of the index, in bytes.
+     */
+    public static final int INDEX_ENTRY_SIZE = 16;
+
+    // the offsets of the fields of the header
+    private static final int VERSION_OFFSET = 4;
+    private static final int COUNT_OFFSET = 8;
+    private static final int INDEX_OFFSET_OFFSET = 16;
+
+    // the mapped file, only read with absolute methods so that it can be shared between threads
+    private final ByteBuffer mapping;
+
+    private final int size;
+
+    // the offsets of the index and of the ids
+    private final int indexOffset;
+    private final int idsOffset;
+
+    private MappedGallery(ByteBuffer mapping, int size, int indexOffset) {
+        this.mapping = mapping;
+        this.size = size;
+        this.indexOffset = indexOffset;
+        this.idsOffset = indexOffset + size * INDEX_ENTRY_SIZE;
+    }
+
+    // region opening
+
+    /**
+     * Maps a gallery file and checks its structure.
+     *
+     * @param path the path of the file.
+     * @return the gallery.
+     * @throws IOException if the file cannot be mapped, is larger than 2 GB, or is not a gallery of this version.
+     */
+    public static MappedGallery open(Path path) throws IOException {
+
+        final MappedByteBuffer MAPPING;
+
+        // the mapping stays valid once the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("gallery file larger than 2 GB: " + channel.size() + " bytes");
+            }
+
+            MAPPING = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        MAPPING.order(ByteOrder.BIG_ENDIAN);
+        final int FILE_SIZE = MAPPING.capacity();
+
+        // region header
+
+        if (FILE_SIZE < HEADER_SIZE) {
+            throw new IOException("gallery truncated: header of " + HEADER_SIZE + " bytes expected, "
+                    + FILE_SIZE + " found");
+        }
+
+        if (MAPPING.getInt(0) != MAGIC) {
+            throw new IOException(String.format("not a gallery: magic number %08x instead of %08x",
+                    MAPPING.getInt(0), MAGIC));
+        }
+
+        final int VERSION_READ = Byte.toUnsignedInt(MAPPING.get(VERSION_OFFSET));
+        if (VERSION_READ != VERSION) {
+            throw new IOException("unsupported gallery version " + VERSION_READ + ", expected " + VERSION);
+        }
+
+        final int SIZE = MAPPING.getInt(COUNT_OFFSET);
+        final long INDEX_OFFSET = MAPPING.getLong(INDEX_OFFSET_OFFSET);
+
+        if (SIZE < 0 || INDEX_OFFSET < HEADER_SIZE
+                || INDEX_OFFSET + (long) SIZE * INDEX_ENTRY_SIZE > FILE_SIZE) {
+            throw new IOException("corrupted gallery: " + Integer.toUnsignedString(SIZE)
+                    + " fingerprints indexed at offset " + INDEX_OFFSET + " of a file of " + FILE_SIZE + " bytes");
+        }
+
+        // endregion
+
+        final MappedGallery GALLERY = new MappedGallery(MAPPING, SIZE, (int) INDEX_OFFSET);
+
+        // region index
+
+        // every template and id must start inside the file, the templates themselves being only
+        // read, and checked, when they are used so that opening never touches their pages
+        for (int index = 0; index < SIZE; index++) {
+
+            final long TEMPLATE_OFFSET = GALLERY.templateOffset(index);
+
+            if (TEMPLATE_OFFSET < HEADER_SIZE || TEMPLATE_OFFSET > INDEX_OFFSET - TemplateFormat.HEADER_SIZE) {
+                throw new IOException("corrupted gallery: template " + index + " at offset " + TEMPLATE_OFFSET);
+            }
+
+            final long ID_END = (long) GALLERY.idsOffset + GALLERY.idOffset(index) + GALLERY.idLength(index);
+
+            if (GALLERY.idOffset(index) < 0 || GALLERY.idLength(index) < 0 || ID_END > FILE_SIZE) {
+                throw new IOException("corrupted gallery: id " + index + " outside of the file");
+            }
+        }
+
+        // endregion
+
+        return GALLERY;
+    }
+
+    /**
+     * Creates a gallery file, replacing it if it exists.
+     *
+     * @param path the path of the file.
+     * @return the writer adding the fingerprints to the file, which must be closed to complete it.
+     * @throws IOException if the file cannot be created.
+     */
+    public static Writer create(Path path) throws IOException {
+        return new Writer(path);
+    }
+
+    // endregion
+
+    // region accessors
+
+    /**
+     * @return the number of fingerprints in the gallery
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index the index of the fingerprint, between <code>0</code> and {@link #size()} (excluded)
+     * @return the id of the fingerprint
+     */
+    @Override
+    public String getId(int index) {
+        checkIndex(index);
+
+        final byte[] BYTES = new byte[idLength(index)];
+        final ByteBuffer IDS = mapping.duplicate();
+        IDS.position(idsOffset + idOffset(index));
+        IDS.get(BYTES);
+
+        return new String(BYTES, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param index the index of the fingerprint, between <code>0</code> and {@link #size()} (excluded)
+     * @return the number of minutiae of the fingerprint, read without decoding them
+     * @throws UncheckedIOException if the template of the fingerprint is corrupted
+     */
+    public int getNumMinutiae(int index) {
+        return mapping.getInt(checkedTemplateOffset(index) + TemplateFormat.COUNT_OFFSET);
+    }
+
+    /**
+     * @param index the index of the fingerprint, between <code>0</code> and {@link #size()} (excluded)
+     * @return a new set containing the minutiae of the fingerprint
+     * @throws UncheckedIOException if the template of the fingerprint is corrupted
+     */
+    public MinutiaeSet getMinutiae(int index) {
+
+        final int OFFSET = checkedTemplateOffset(index);
+        final int NUM_MINUTIAE = mapping.getInt(OFFSET + TemplateFormat.COUNT_OFFSET);
+        final int WIDTH = Short.toUnsignedInt(mapping.getShort(OFFSET + TemplateFormat.WIDTH_OFFSET));
+        final int HEIGHT = Short.toUnsignedInt(mapping.getShort(OFFSET + TemplateFormat.HEIGHT_OFFSET));
+        final MinutiaeSet MINUTIAE = new MinutiaeSet(NUM_MINUTIAE);
+
+        // decodes the records in place, without copying the template first, checking them as a Template would
+        int record = OFFSET + TemplateFormat.HEADER_SIZE;
+        for (int i = 0; i < NUM_MINUTIAE; i++, record += TemplateFormat.RECORD_SIZE) {
+
+            final int ROW = Short.toUnsignedInt(mapping.getShort(record));
+            final int COL = Short.toUnsignedInt(mapping.getShort(record + 2));
+
+            if (ROW >= HEIGHT || COL >= WIDTH) {
+                final String MESSAGE = "minutia (" + ROW + ", " + COL + ") of template " + index
+                        + " outside of its image of " + WIDTH + "x" + HEIGHT;
+                throw new UncheckedIOException("corrupted gallery: " + MESSAGE, new IOException(MESSAGE));
+            }
+
+            MINUTIAE.add(ROW, COL, Short.toUnsignedInt(mapping.getShort(record + 4)));
+        }
+
+        return MINUTIAE;
+    }
+
+    /**
+     * @param index the index of the fingerprint, between <code>0</code> and {@link #size()} (excluded)
+     * @return the template of the fingerprint
+     * @throws IOException if the template is not a template of this version
+     */
+    public Template getTemplate(int index) throws IOException {
+        checkIndex(index);
+        return TemplateFormat.read(mapping.duplicate().position((int) templateOffset(index)).limit(indexOffset));
+    }
+
+    /**
+     * @param index the index of the fingerprint, between <code>0</code> and {@link #size()} (excluded)
+     * @return a new grid of the minutiae of the fingerprint, decoded from the mapping
+     * @throws UncheckedIOException if the template of the fingerprint is corrupted
+     */
+    @Override
+    public MinutiaeGrid getGrid(int index) {
+        return new MinutiaeGrid(getMinutiae(index), Fingerprint.DISTANCE_THRESHOLD);
+    }
+
+    /**
+     * @return this gallery, which never changes
+     */
+    GalleryView snapshot() {
+        return this;
+    }
+
+    // endregion
+
+    // region index helper methods
+
+    /**
+     * Checks the header of the template of a fingerprint
+     * @return the offset of the template, whose records are all before the index
+     * @throws UncheckedIOException if the template is corrupted
+     */
+    private int checkedTemplateOffset(int index) {
+        checkIndex(index);
+
+        final int OFFSET = (int) templateOffset(index);
+
+        try {
+            final int NUM_MINUTIAE = TemplateFormat.checkHeader(mapping.duplicate().position(OFFSET).limit(indexOffset));
+
+            if (OFFSET + (long) TemplateFormat.size(NUM_MINUTIAE) > indexOffset) {
+                throw new EOFException("template " + index + " truncated");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("corrupted gallery: " + e.getMessage(), e);
+        }
+
+        return OFFSET;
+    }
+
+    private long templateOffset(int index) {
+        return mapping.getLong(indexOffset + index * INDEX_ENTRY_SIZE);
+    }
+
+    private int idOffset(int index) {
+        return mapping.getInt(indexOffset + index * INDEX_ENTRY_SIZE + 8);
+    }
+
+    private int idLength(int index) {
+        return mapping.getInt(indexOffset + index * INDEX_ENTRY_SIZE + 12);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for size " + size);
+        }
+    }
+
+    // endregion
+
+    /**
+     * Writes the fingerprints of a gallery file, in the order they are added.
+     * <p>
+     * The templates are written as they are added, and only their offsets and ids are kept until
+     * the writer is closed, when the index and the ids are written after them. Instances are not
+     * thread-safe.
+     */
+    public static final class Writer implements Closeable {
+
+        private final Path path;
+        private final DataOutputStream out;
+
+        // the offset of the next template
+        private long offset = HEADER_SIZE;
+
+        // the offsets of the templates and the ids, in the order they were added
+        private final List<Long> templateOffsets = new ArrayList<>();
+        private final List<byte[]> ids = new ArrayList<>();
+
+        // the total length of the ids
+        private long idsLength;
+
+        private boolean closed;
+
+        private Writer(Path path) throws IOException {
+            this.path = path;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+
+            // the header is written again once the index is known
+            out.write(new byte[HEADER_SIZE]);
+        }
+
+        /**
+         * Adds a fingerprint at the end of the gallery.
+         *
+         * @param id       the id of the fingerprint.
+         * @param template the template of the fingerprint.
+         * @throws IOException if the file cannot be written, or if the fingerprint would make it
+         *                     larger than the 2 GB {@link #open(Path)} can map. Nothing is then
+         *                     written, and the fingerprints already added can still be closed.
+         * @throws IllegalArgumentException if a value of the template cannot be stored in {@link TemplateFormat}.
+         * @throws IllegalStateException if the writer is closed.
+         */
+        public void add(String id, Template template) throws IOException {
+
+            if (closed) {
+                throw new IllegalStateException("gallery writer closed");
+            }
+
+            final byte[] TEMPLATE = TemplateFormat.toBytes(template);
+            final byte[] ID = Objects.requireNonNull(id).getBytes(StandardCharsets.UTF_8);
+
+            // the file must still be mapped once the index and the ids are written after the templates
+            final long FILE_SIZE = offset + TEMPLATE.length
+                    + (ids.size() + 1L) * INDEX_ENTRY_SIZE + idsLength + ID.length;
+
+            if (FILE_SIZE > Integer.MAX_VALUE) {
+                throw new IOException("gallery file full: adding " + id + " would make it " + FILE_SIZE
+                        + " bytes, larger than 2 GB");
+            }
+
+            out.write(TEMPLATE);
+
+            templateOffsets.add(offset);
+            ids.add(ID);
+            offset += TEMPLATE.length;
+            idsLength += ID.length;
+        }
+
+        /**
+         * Writes the index and the ids, and closes the file. Closing a closed writer has no effect.
+         *
+         * @throws IOException if the file cannot be written.
+         */
+        @Override
+        public void close() throws IOException {
+
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            try {
+                // the index...
+                int idOffset = 0;
+                for (int index = 0; index < ids.size(); index++) {
+                    out.writeLong(templateOffsets.get(index));
+                    out.writeInt(idOffset);
+                    out.writeInt(ids.get(index).length);
+                    idOffset += ids.get(index).length;
+                }
+
+                // ...and the ids
+                for (byte[] id : ids) {
+                    out.write(id);
+                }
+            } finally {
+                out.close();
+            }
+
+            // the header, now that the offset of the index is known
+            final ByteBuffer HEADER = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+            HEADER.putInt(MAGIC);
+            HEADER.put((byte) VERSION);
+            HEADER.position(COUNT_OFFSET);
+            HEADER.putInt(ids.size());
+            HEADER.position(INDEX_OFFSET_OFFSET);
+            HEADER.putLong(offset);
+            HEADER.flip();
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                while (HEADER.hasRemaining()) {
+                    channel.write(HEADER, HEADER_SIZE - HEADER.remaining());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package cs107;
+
+/**
+ * Counters describing the work done by {@link Fingerprint#match(MinutiaeGrid, MinutiaeSet, MatchCounters)}.
+ * <p>
+ * The counters add up over every comparison they are passed to, until {@link #reset()} is called.
+ * Instances are not thread-safe: use one per thread, and add them up with {@link #add(MatchCounters)}.
+ */
+public final class MatchCounters {
+
+    // the number of comparisons, and how many of them matched
+    private long comparisons;
+    private long matches;
+
+    // the number of alignments tried, and how many of them were abandoned early
+    private long candidates;
+    private long prunedCandidates;
+
+    // the number of minutiae looked up in the grid of the first fingerprint
+    private long lookups;
+
+    /**
+     * @return the number of comparisons counted
+     */
+    public long getComparisons() {
+        return comparisons;
+    }
+
+    /**
+     * @return the number of comparisons which found a match
+     */
+    public long getMatches() {
+        return matches;
+    }
+
+    /**
+     * @return the number of alignments (pair of minutiae and rotation) tried
+     */
+    public long getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * @return the number of alignments abandoned because they could no longer reach
+     * {@link Fingerprint#FOUND_THRESHOLD} matching minutiae
+     */
+    public long getPrunedCandidates() {
+        return prunedCandidates;
+    }
+
+    /**
+     * @return the number of transformed minutiae looked up
+     */
+    public long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * Sets every counter back to zero
+     */
+    public void reset() {
+        comparisons = 0;
+        matches = 0;
+        candidates = 0;
+        prunedCandidates = 0;
+        lookups = 0;
+    }
+
+    /**
+     * Adds the counters of another instance to these ones
+     * @param other the counters to add
+     */
+    public void add(MatchCounters other) {
+        comparisons += other.comparisons;
+        matches += other.matches;
+        candidates += other.candidates;
+        prunedCandidates += other.prunedCandidates;
+        lookups += other.lookups;
+    }
+
+    // region recording
+
+    void recordComparison(boolean matched) {
+        comparisons++;
+        if (matched) {
+            matches++;
+        }
+    }
+
+    void recordCandidate(boolean pruned, int numLookups) {
+        candidates++;
+        if (pruned) {
+            prunedCandidates++;
+        }
+        lookups += numLookups;
+    }
+
+    // endregion
+
+    @Override
+    public String toString() {
+        return String.format("%d comparisons (%d matches), %d candidates (%d pruned), %d lookups",
+                comparisons, matches, candidates, prunedCandidates, lookups);
+    }
+}
@@ -0,0 +1,412 @@
+package cs107;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid bucketing a set of minutiae by position, to find the minutiae close to a point.
+ * <p>
+ * The minutiae are sorted by cell, row-major, and stored contiguously: the minutiae of a cell are
+ * the entries between its start and the start of the next cell. With cells at least as wide as
+ * the maximum distance between two matching minutiae, the minutiae close to a point are always in
+ * the cell of the point or in one of its 8 neighbours, so a lookup only checks a handful of
+ * minutiae instead of the whole set.
+ * <p>
+ * The grid is built once per set of minutiae, and reused for every transformation tried by
+ * {@link Fingerprint#match(MinutiaeSet, MinutiaeSet)}: the set being indexed is the one that
+ * does not move, and the transformed minutiae are looked up in it.
+ * <p>
+ * Counting the matches reuses a buffer of the grid, so instances are not thread-safe: each thread
+ * needs its own {@link #copy()}.
+ */
+public final class MinutiaeGrid {
+
+    // the indexed minutiae
+    private final MinutiaeSet minutiae;
+
+    // the dimensions of the grid, covering the bounding box of the minutiae
+    private final int cellSize;
+    private final int minRow;
+    private final int minCol;
+    private final int numCellRows;
+    private final int numCellCols;
+
+    // the minutiae of cell c are the entries between cellStarts[c] (included) and cellStarts[c + 1] (excluded)
+    private final int[] cellStarts;
+    private final int[] entries;
+
+    // the cell of every row and column of the grid extended by one cell on each side
+    // (-1 and numCellRows or numCellCols for the extension), so that no lookup has to divide
+    private final int firstRow;
+    private final int firstCol;
+    private final int[] cellRowOf;
+    private final int[] cellColOf;
+
+    // the number of entries in the 3 by 3 cells around every cell of the extended grid
+    private final int[] entriesAround;
+
+    // the coordinates and orientation of each entry, copied so that a lookup reads contiguous memory
+    private final int[] rows;
+    private final int[] cols;
+    private final int[] orientations;
+
+    // the last count during which each entry was matched, so the marks never need to be cleared
+    private final int[] matchedInCount;
+    private int count;
+
+    // the number of minutiae looked up during the last count
+    private int lastLookups;
+
+    /**
+     * Buckets a set of minutiae.
+     *
+     * @param minutiae the minutiae, which must not be modified while the grid is used.
+     * @param cellSize the width and height of the cells, at least the largest distance used to look up the grid.
+     * @throws IllegalArgumentException if the cell size is not strictly positive.
+     */
+    public MinutiaeGrid(MinutiaeSet minutiae, int cellSize) {
+
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("cell size must be strictly positive, current size: " + cellSize);
+        }
+
+        this.minutiae = minutiae;
+        this.cellSize = cellSize;
+
+        final int SIZE = minutiae.size();
+
+        // region bounding box
+
+        int minRow = Integer.MAX_VALUE;
+        int minCol = Integer.MAX_VALUE;
+        int maxRow = Integer.MIN_VALUE;
+        int maxCol = Integer.MIN_VALUE;
+
+        for (int i = 0; i < SIZE; i++) {
+            minRow = Math.min(minRow, minutiae.getRow(i));
+            minCol = Math.min(minCol, minutiae.getCol(i));
+            maxRow = Math.max(maxRow, minutiae.getRow(i));
+            maxCol = Math.max(maxCol, minutiae.getCol(i));
+        }
+
+        // an empty set gets a single empty cell
+        if (SIZE == 0) {
+            minRow = maxRow = minCol = maxCol = 0;
+        }
+
+        this.minRow = minRow;
+        this.minCol = minCol;
+        this.numCellRows = (maxRow - minRow) / cellSize + 1;
+        this.numCellCols = (maxCol - minCol) / cellSize + 1;
+
+        // endregion
+
+        // region counting sort of the minutiae by cell
+
+        cellStarts = new int[numCellRows * numCellCols + 1];
+        entries = new int[SIZE];
+
+        // counts the minutiae of each cell...
+        for (int i = 0; i < SIZE; i++) {
+            cellStarts[cellOf(minutiae.getRow(i), minutiae.getCol(i)) + 1]++;
+        }
+
+        // ...turns the counts into the starts of the cells...
+        for (int cell = 0; cell < numCellRows * numCellCols; cell++) {
+            cellStarts[cell + 1] += cellStarts[cell];
+        }
+
+        // ...and places every minutia in its cell, keeping their order inside each cell
+        final int[] NEXT_ENTRY = Arrays.copyOf(cellStarts, cellStarts.length - 1);
+        for (int i = 0; i < SIZE; i++) {
+            entries[NEXT_ENTRY[cellOf(minutiae.getRow(i), minutiae.getCol(i))]++] = i;
+        }
+
+        // endregion
+
+        rows = new int[SIZE];
+        cols = new int[SIZE];
+        orientations = new int[SIZE];
+
+        for (int entry = 0; entry < SIZE; entry++) {
+            rows[entry] = minutiae.getRow(entries[entry]);
+            cols[entry] = minutiae.getCol(entries[entry]);
+            orientations[entry] = minutiae.getOrientation(entries[entry]);
+        }
+
+        // region division-free lookups
+
+        firstRow = minRow - cellSize;
+        firstCol = minCol - cellSize;
+        cellRowOf = new int[(numCellRows + 2) * cellSize];
+        cellColOf = new int[(numCellCols + 2) * cellSize];
+
+        for (int row = 0; row < cellRowOf.length; row++) {
+            cellRowOf[row] = row / cellSize - 1;
+        }
+
+        for (int col = 0; col < cellColOf.length; col++) {
+            cellColOf[col] = col / cellSize - 1;
+        }
+
+        entriesAround = new int[(numCellRows + 2) * (numCellCols + 2)];
+
+        for (int cellRow = -1; cellRow <= numCellRows; cellRow++) {
+            for (int cellCol = -1; cellCol <= numCellCols; cellCol++) {
+
+                final int FROM_CELL_COL = Math.max(0, cellCol - 1);
+                final int TO_CELL_COL = Math.min(numCellCols - 1, cellCol + 1);
+
+                int around = 0;
+                for (int y = Math.max(0, cellRow - 1); y <= Math.min(numCellRows - 1, cellRow + 1); y++) {
+                    around += cellStarts[y * numCellCols + TO_CELL_COL + 1] - cellStarts[y * numCellCols + FROM_CELL_COL];
+                }
+
+                entriesAround[(cellRow + 1) * (numCellCols + 2) + cellCol + 1] = around;
+            }
+        }
+
+        // endregion
+
+        matchedInCount = new int[SIZE];
+    }
+
+    /**
+     * Creates a grid sharing the buckets of another one, with its own buffers
+     * @param other the grid whose buckets are shared
+     */
+    private MinutiaeGrid(MinutiaeGrid other) {
+        minutiae = other.minutiae;
+        cellSize = other.cellSize;
+        minRow = other.minRow;
+        minCol = other.minCol;
+        numCellRows = other.numCellRows;
+        numCellCols = other.numCellCols;
+        cellStarts = other.cellStarts;
+        entries = other.entries;
+        firstRow = other.firstRow;
+        firstCol = other.firstCol;
+        cellRowOf = other.cellRowOf;
+        cellColOf = other.cellColOf;
+        entriesAround = other.entriesAround;
+        rows = other.rows;
+        cols = other.cols;
+        orientations = other.orientations;
+        matchedInCount = new int[entries.length];
+    }
+
+    /**
+     * Creates a grid indexing the same minutiae, which can count matches at the same time as this
+     * one on another thread.
+     * <p>
+     * The buckets are never modified once built, so they are shared instead of copied: only the
+     * buffer used to count the matches is allocated.
+     *
+     * @return a new grid indexing the same minutiae, in the same cells
+     */
+    public MinutiaeGrid copy() {
+        return new MinutiaeGrid(this);
+    }
+
+    /**
+     * @return the indexed minutiae
+     */
+    public MinutiaeSet getMinutiae() {
+        return minutiae;
+    }
+
+    /**
+     * @return the width and height of the cells
+     */
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * @return the number of minutiae looked up during the last count, less than the size of the
+     * minutiae counted if the count stopped early
+     */
+    public int getLastLookups() {
+        return lastLookups;
+    }
+
+    /**
+     * Counts the indexed minutiae overlapping at least one of the given minutiae.
+     * <p>
+     * This is the same count as {@link Fingerprint#matchingMinutiaeCount(MinutiaeSet, MinutiaeSet, int, int)}
+     * with the indexed minutiae as the first set.
+     *
+     * @param other          the minutiae to look up.
+     * @param maxDistance    the maximum distance between two minutiae to consider
+     *                       them as overlapping, at most the cell size.
+     * @param maxOrientation the maximum difference of orientation between two
+     *                       minutiae to consider them as overlapping.
+     * @return the number of indexed minutiae overlapping at least one minutia of <code>other</code>.
+     * @throws IllegalArgumentException if the distance is larger than the cell size.
+     */
+    public int countMatches(MinutiaeSet other, int maxDistance, int maxOrientation) {
+        return countMatches(other, maxDistance, maxOrientation, Integer.MAX_VALUE, false, false);
+    }
+
+    /**
+     * Checks whether at least <code>target</code> indexed minutiae overlap one of the given minutiae.
+     * <p>
+     * A minutia can only overlap the indexed minutiae of the 3 by 3 cells around it, which are
+     * counted with a few subtractions. The sum of these counts over the minutiae left to look up
+     * therefore bounds the number of matches they can still bring. The count is abandoned as soon
+     * as this bound (or the number of indexed minutiae not matched yet) cannot bring it to the
+     * target anymore, possibly before any distance is computed, and stops as soon as it reaches
+     * the target.
+     *
+     * @param other          the minutiae to look up.
+     * @param maxDistance    the maximum distance between two minutiae to consider
+     *                       them as overlapping, at most the cell size.
+     * @param maxOrientation the maximum difference of orientation between two
+     *                       minutiae to consider them as overlapping.
+     * @param target         the number of overlapping minutiae looked for.
+     * @return the number of overlapping minutiae found before stopping, at least <code>target</code>
+     *         if and only if {@link #countMatches(MinutiaeSet, int, int)} is at least <code>target</code>.
+     * @throws IllegalArgumentException if the distance is larger than the cell size.
+     */
+    public int countMatches(MinutiaeSet other, int maxDistance, int maxOrientation, int target) {
+        return countMatches(other, maxDistance, maxOrientation, target, true, true);
+    }
+
+    /**
+     * Counts the indexed minutiae overlapping at least one of the given minutiae, unless there are
+     * fewer than <code>target</code> of them.
+     * <p>
+     * The count is abandoned like in {@link #countMatches(MinutiaeSet, int, int, int)} as soon as
+     * it cannot reach the target anymore, but it goes on once the target is reached, so that a
+     * count reaching it is exact. This finds the best of many counts, with the best count so far
+     * plus one as the target.
+     *
+     * @param other          the minutiae to look up.
+     * @param maxDistance    the maximum distance between two minutiae to consider
+     *                       them as overlapping, at most the cell size.
+     * @param maxOrientation the maximum difference of orientation between two
+     *                       minutiae to consider them as overlapping.
+     * @param target         the smallest count looked for.
+     * @return the same count as {@link #countMatches(MinutiaeSet, int, int)} if it is at least
+     *         <code>target</code>, and a number smaller than <code>target</code> otherwise.
+     * @throws IllegalArgumentException if the distance is larger than the cell size.
+     */
+    public int countMatchesIfAtLeast(MinutiaeSet other, int maxDistance, int maxOrientation, int target) {
+        return countMatches(other, maxDistance, maxOrientation, target, true, false);
+    }
+
+    private int countMatches(MinutiaeSet other, int maxDistance, int maxOrientation, int target, boolean prune,
+                             boolean stopAtTarget) {
+
+        // the neighbouring cells would not be enough to find every close minutia
+        if (maxDistance > cellSize) {
+            throw new IllegalArgumentException("distance must be at most the cell size " + cellSize
+                    + ", current distance: " + maxDistance);
+        }
+
+        final int MAX_SQUARED_DISTANCE = maxDistance * maxDistance;
+        final int SIZE = entries.length;
+        final int OTHER_SIZE = other.size();
+
+        // the most matches the minutiae left to look up could bring
+        int potential = 0;
+
+        if (prune) {
+            for (int i = 0; i < OTHER_SIZE; i++) {
+                potential += entriesAround(other.getRow(i), other.getCol(i));
+            }
+        }
+
+        // starts a new count, the entries marked during the previous ones not being matched anymore
+        // (once every 2^32 counts, the marks are cleared so that an old count cannot come back)
+        if (++count == 0) {
+            Arrays.fill(matchedInCount, 0);
+            count = 1;
+        }
+
+        int numMatches = 0;
+        int i = 0;
+
+        // for every minutia looked up...
+        for (; i < OTHER_SIZE; i++) {
+
+            final int ROW = other.getRow(i);
+            final int COL = other.getCol(i);
+            final int ORIENTATION = other.getOrientation(i);
+
+            // ...unless the target is reached, or out of reach
+            if (prune) {
+                if ((stopAtTarget && numMatches >= target)
+                        || numMatches + Math.min(SIZE - numMatches, potential) < target) {
+                    break;
+                }
+                potential -= entriesAround(ROW, COL);
+            }
+
+            // a minutia outside of the extended grid has no neighbour
+            final int EXTENDED_ROW = ROW - firstRow;
+            final int EXTENDED_COL = COL - firstCol;
+
+            if (EXTENDED_ROW < 0 || EXTENDED_ROW >= cellRowOf.length
+                    || EXTENDED_COL < 0 || EXTENDED_COL >= cellColOf.length) {
+                continue;
+            }
+
+            // the cells around the minutia, clamped to the grid
+            final int CELL_ROW = cellRowOf[EXTENDED_ROW];
+            final int CELL_COL = cellColOf[EXTENDED_COL];
+
+            final int FROM_CELL_ROW = Math.max(0, CELL_ROW - 1);
+            final int TO_CELL_ROW = Math.min(numCellRows - 1, CELL_ROW + 1);
+            final int FROM_CELL_COL = Math.max(0, CELL_COL - 1);
+            final int TO_CELL_COL = Math.min(numCellCols - 1, CELL_COL + 1);
+
+            // ...marks every indexed minutia of these cells which overlaps it
+            for (int cellRow = FROM_CELL_ROW; cellRow <= TO_CELL_ROW; cellRow++) {
+
+                // the cells of a row of the grid are contiguous
+                final int FROM_ENTRY = cellStarts[cellRow * numCellCols + FROM_CELL_COL];
+                final int TO_ENTRY = cellStarts[cellRow * numCellCols + TO_CELL_COL + 1];
+
+                for (int entry = FROM_ENTRY; entry < TO_ENTRY; entry++) {
+
+                    final int DELTA_ROW = rows[entry] - ROW;
+                    final int DELTA_COL = cols[entry] - COL;
+
+                    if (matchedInCount[entry] != count
+                            && DELTA_ROW * DELTA_ROW + DELTA_COL * DELTA_COL <= MAX_SQUARED_DISTANCE
+                            && Math.abs(orientations[entry] - ORIENTATION) <= maxOrientation) {
+                        matchedInCount[entry] = count;
+                        numMatches++;
+                    }
+                }
+            }
+        }
+
+        lastLookups = i;
+        return numMatches;
+    }
+
+    /**
+     * Counts the indexed minutiae in the 3 by 3 cells around a position
+     * @param row the row of the position
+     * @param col the column of the position
+     * @return the number of minutiae the position could overlap
+     */
+    private int entriesAround(int row, int col) {
+
+        final int EXTENDED_ROW = row - firstRow;
+        final int EXTENDED_COL = col - firstCol;
+
+        if (EXTENDED_ROW < 0 || EXTENDED_ROW >= cellRowOf.length
+                || EXTENDED_COL < 0 || EXTENDED_COL >= cellColOf.length) {
+            return 0;
+        }
+
+        return entriesAround[(cellRowOf[EXTENDED_ROW] + 1) * (numCellCols + 2) + cellColOf[EXTENDED_COL] + 1];
+    }
+
+    // the index of the cell containing a position inside the bounding box
+    private int cellOf(int row, int col) {
+        return ((row - minRow) / cellSize) * numCellCols + (col - minCol) / cellSize;
+    }
+}
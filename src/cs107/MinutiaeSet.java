@@ -0,0 +1,339 @@
+package cs107;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Set of minutiae stored as three parallel arrays of <code>int</code>.
+ * <p>
+ * A <code>List&lt;int[]&gt;</code> holds one array object per minutia, behind a list of references,
+ * and every transformation allocates a new list and new arrays. Here the rows, columns and
+ * orientations of the minutiae are stored in their own arrays, which grow like an
+ * {@link ArrayList} and are reused when the set is cleared or used as the destination of a
+ * transformation. The minutiae are read by index, so iterating over a set allocates nothing.
+ * <p>
+ * A minutia is described like in {@link Fingerprint#extract(boolean[][])}: a row, a column and an
+ * orientation in degrees.
+ */
+public final class MinutiaeSet {
+
+    // the initial capacity of an empty set
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // the coordinates and orientation of each minutia
+    private int[] rows;
+    private int[] cols;
+    private int[] orientations;
+
+    // the number of minutiae in the set
+    private int size;
+
+    /**
+     * Creates an empty set
+     */
+    public MinutiaeSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty set able to hold some minutiae without growing
+     * @param capacity the number of minutiae the set can hold before growing
+     * @throws IllegalArgumentException if the capacity is negative
+     */
+    public MinutiaeSet(int capacity) {
+
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must be positive, current capacity: " + capacity);
+        }
+
+        rows = new int[capacity];
+        cols = new int[capacity];
+        orientations = new int[capacity];
+    }
+
+    // region adapters
+
+    /**
+     * Creates a set from a list of minutiae
+     * @param minutiae the minutiae, as returned by {@link Fingerprint#extract(boolean[][])}
+     * @return a set containing the same minutiae, in the same order
+     */
+    public static MinutiaeSet fromList(List<int[]> minutiae) {
+
+        MinutiaeSet set = new MinutiaeSet(minutiae.size());
+
+        for (int[] minutia : minutiae) {
+            set.add(minutia[0], minutia[1], minutia[2]);
+        }
+
+        return set;
+    }
+
+    /**
+     * @return a new list containing the minutiae of the set, in the same order
+     */
+    public List<int[]> toList() {
+
+        List<int[]> minutiae = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            minutiae.add(get(i));
+        }
+
+        return minutiae;
+    }
+
+    /**
+     * @return a new set containing the same minutiae, in the same order
+     */
+    public MinutiaeSet copy() {
+
+        MinutiaeSet copy = new MinutiaeSet(size);
+
+        System.arraycopy(rows, 0, copy.rows, 0, size);
+        System.arraycopy(cols, 0, copy.cols, 0, size);
+        System.arraycopy(orientations, 0, copy.orientations, 0, size);
+        copy.size = size;
+
+        return copy;
+    }
+
+    // endregion
+
+    // region accessors
+
+    /**
+     * @return the number of minutiae in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return whether the set contains no minutia
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param index the index of the minutia, between <code>0</code> and {@link #size()} (excluded)
+     * @return the row of the minutia
+     */
+    public int getRow(int index) {
+        checkIndex(index);
+        return rows[index];
+    }
+
+    /**
+     * @param index the index of the minutia, between <code>0</code> and {@link #size()} (excluded)
+     * @return the column of the minutia
+     */
+    public int getCol(int index) {
+        checkIndex(index);
+        return cols[index];
+    }
+
+    /**
+     * @param index the index of the minutia, between <code>0</code> and {@link #size()} (excluded)
+     * @return the orientation of the minutia, in degrees
+     */
+    public int getOrientation(int index) {
+        checkIndex(index);
+        return orientations[index];
+    }
+
+    /**
+     * @param index the index of the minutia, between <code>0</code> and {@link #size()} (excluded)
+     * @return a new array containing the row, column and orientation of the minutia
+     */
+    public int[] get(int index) {
+        checkIndex(index);
+        return new int[]{rows[index], cols[index], orientations[index]};
+    }
+
+    /**
+     * Adds a minutia at the end of the set
+     * @param row the row of the minutia
+     * @param col the column of the minutia
+     * @param orientation the orientation of the minutia, in degrees
+     */
+    public void add(int row, int col, int orientation) {
+
+        // grows the arrays by half if they are full
+        if (size == rows.length) {
+            final int NEW_CAPACITY = Math.max(DEFAULT_CAPACITY, size + (size >> 1));
+            rows = Arrays.copyOf(rows, NEW_CAPACITY);
+            cols = Arrays.copyOf(cols, NEW_CAPACITY);
+            orientations = Arrays.copyOf(orientations, NEW_CAPACITY);
+        }
+
+        rows[size] = row;
+        cols[size] = col;
+        orientations[size] = orientation;
+        size++;
+    }
+
+    /**
+     * Removes every minutia from the set, keeping its arrays
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    // endregion
+
+    // region transformations
+
+    /**
+     * Applies a transformation to every minutia of the set, in place.
+     *
+     * @param centerRow      the row around which the minutiae are rotated.
+     * @param centerCol      the column around which the minutiae are rotated.
+     * @param rowTranslation the vertical translation.
+     * @param colTranslation the horizontal translation.
+     * @param rotation       the rotation, in degrees.
+     * @see Fingerprint#applyTransformation(int[], int, int, int, int, int)
+     */
+    public void transform(int centerRow, int centerCol, int rowTranslation, int colTranslation, int rotation) {
+        transformInto(this, centerRow, centerCol, rowTranslation, colTranslation, rotation);
+    }
+
+    /**
+     * Applies a transformation to every minutia of the set, writing the result into another set.
+     * <p>
+     * The destination is cleared first and then holds the transformed minutiae, in the same
+     * order. Its arrays are reused when they are large enough, so transforming repeatedly into the
+     * same destination allocates nothing.
+     * <p>
+     * The rotation uses the fixed-point tables of {@link FixedPointRotation}, falling back to the
+     * <code>double</code> computation for the rare coordinates close to a rounding boundary, so the
+     * result is always the same as {@link Fingerprint#applyTransformation(int[], int, int, int, int, int)}.
+     *
+     * @param destination    the set receiving the transformed minutiae, possibly this set.
+     * @param centerRow      the row around which the minutiae are rotated.
+     * @param centerCol      the column around which the minutiae are rotated.
+     * @param rowTranslation the vertical translation.
+     * @param colTranslation the horizontal translation.
+     * @param rotation       the rotation, in degrees.
+     * @see Fingerprint#applyTransformation(int[], int, int, int, int, int)
+     */
+    public void transformInto(MinutiaeSet destination, int centerRow, int centerCol, int rowTranslation,
+                              int colTranslation, int rotation) {
+
+        destination.ensureCapacity(size);
+
+        // the rotation is the same for every minutia
+        final int TABLE_INDEX = Math.floorMod(rotation, 360);
+        final long COS_FIXED = FixedPointRotation.COS[TABLE_INDEX];
+        final long SIN_FIXED = FixedPointRotation.SIN[TABLE_INDEX];
+
+        // whether the orientations can be turned without a division, for orientations between 0 and 359
+        final boolean SMALL_ROTATION = rotation > Integer.MIN_VALUE + 360 && rotation < Integer.MAX_VALUE - 360;
+
+        // the exact rotation, only computed if a minutia needs it
+        double cos = Double.NaN;
+        double sin = Double.NaN;
+
+        for (int i = 0; i < size; i++) {
+
+            // translates the minutia
+            final int X = (cols[i] - colTranslation) - centerCol;
+            final int Y = centerRow - (rows[i] - rowTranslation);
+
+            final int ORIENTATION = orientations[i];
+
+            if (SMALL_ROTATION && ORIENTATION >= 0 && ORIENTATION < 360) {
+                final int NEW_ORIENTATION = ORIENTATION + TABLE_INDEX;
+                destination.orientations[i] = NEW_ORIENTATION >= 360 ? NEW_ORIENTATION - 360 : NEW_ORIENTATION;
+            } else {
+                destination.orientations[i] = Math.floorMod(ORIENTATION + rotation, 360);
+            }
+
+            // rotates it around the center in fixed point, offset by one half so that rounding is a shift...
+            if (Math.abs(X) < FixedPointRotation.MAX_COORDINATE && Math.abs(Y) < FixedPointRotation.MAX_COORDINATE) {
+
+                final long NEW_X = X * COS_FIXED - Y * SIN_FIXED + FixedPointRotation.HALF;
+                final long NEW_Y = FixedPointRotation.HALF - (X * SIN_FIXED + Y * COS_FIXED);
+
+                // ...unless the result is too close to a half to be sure it is rounded the same way
+                if (!FixedPointRotation.isNearHalf(NEW_X) && !FixedPointRotation.isNearHalf(NEW_Y)) {
+                    destination.rows[i] = centerRow + (int) (NEW_Y >> FixedPointRotation.FRACTION_BITS);
+                    destination.cols[i] = centerCol + (int) (NEW_X >> FixedPointRotation.FRACTION_BITS);
+                    continue;
+                }
+            }
+
+            // otherwise rotates it with the same operations as Fingerprint.applyTransformation
+            if (Double.isNaN(cos)) {
+                final double ANGLE = Math.toRadians(rotation);
+                cos = Math.cos(ANGLE);
+                sin = Math.sin(ANGLE);
+            }
+
+            final double NEW_X = X * cos - Y * sin;
+            final double NEW_Y = X * sin + Y * cos;
+
+            destination.rows[i] = (int) Math.round(centerRow - NEW_Y);
+            destination.cols[i] = (int) Math.round(NEW_X + centerCol);
+        }
+
+        destination.size = size;
+    }
+
+    // endregion
+
+    // region helper methods
+
+    /**
+     * Grows the arrays, discarding their content, if they cannot hold some minutiae
+     */
+    private void ensureCapacity(int capacity) {
+        if (rows.length < capacity) {
+            rows = Arrays.copyOf(rows, capacity);
+            cols = Arrays.copyOf(cols, capacity);
+            orientations = Arrays.copyOf(orientations, capacity);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for size " + size);
+        }
+    }
+
+    // endregion
+
+    @Override
+    public boolean equals(Object other) {
+
+        if (this == other) {
+            return true;
+        }
+
+        if (!(other instanceof MinutiaeSet)) {
+            return false;
+        }
+
+        MinutiaeSet that = (MinutiaeSet) other;
+        return size == that.size
+                && Arrays.equals(rows, 0, size, that.rows, 0, size)
+                && Arrays.equals(cols, 0, size, that.cols, 0, size)
+                && Arrays.equals(orientations, 0, size, that.orientations, 0, size);
+    }
+
+    @Override
+    public int hashCode() {
+
+        int hash = size;
+
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + rows[i];
+            hash = 31 * hash + cols[i];
+            hash = 31 * hash + orientations[i];
+        }
+
+        return hash;
+    }
+}
@@ -0,0 +1,49 @@
+package cs107;
+
+/**
+ * Computes the orientation of minutiae in a single pass over their connected pixels.
+ * <p>
+ * The reference method of {@link Fingerprint#computeOrientation(boolean[][], int, int, int)} builds
+ * an image of the connected pixels, scans it once for the regression sums of the slope and once
+ * more to count the pixels on each side of the perpendicular. Here the sums are accumulated by
+ * {@link ConnectedPixels} while the pixels are found, and only the pixels found (a few dozens for a
+ * ridge ending) are visited again to count the sides, which depends on the slope. The formulas are
+ * shared with the reference method, so both give exactly the same orientation.
+ * <p>
+ * The buffers are kept between calls, so instances are not thread-safe: use one per thread.
+ */
+public final class OrientationEstimator {
+
+    // the buffers of the connected pixels search
+    private final ConnectedPixels window = new ConnectedPixels();
+
+    /**
+     * Computes the orientation of the minutia at coordinates <code>(row, col)</code>.
+     *
+     * @param image    bit-packed image.
+     * @param row      the first coordinate of the minutia.
+     * @param col      the second coordinate of the minutia.
+     * @param distance the distance to be considered in each direction to compute
+     *                 the orientation.
+     * @return The orientation in degrees.
+     * @see Fingerprint#computeOrientation(boolean[][], int, int, int)
+     */
+    public int computeOrientation(BinaryImage image, int row, int col, int distance) {
+
+        // finds the pixels of the ridge, accumulating the regression sums on the way
+        window.compute(image, row, col, distance);
+
+        final double SLOPE = Fingerprint.slope(window.getSumXX(), window.getSumYY(), window.getSumXY());
+
+        // the number of connected pixels on each side of the perpendicular
+        int numAbove = 0;
+
+        for (int i = 0; i < window.size(); i++) {
+            if (Fingerprint.isAbovePerpendicular(window.getCol(i) - col, row - window.getRow(i), SLOPE)) {
+                numAbove++;
+            }
+        }
+
+        return Fingerprint.orientation(Fingerprint.angle(SLOPE, numAbove, window.size() - numAbove));
+    }
+}
@@ -0,0 +1,269 @@
+package cs107;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Ridge orientation of a skeleton, computed once per block of pixels.
+ * <p>
+ * Every pair of adjacent black pixels of the skeleton votes for the direction of its ridge:
+ * horizontal, vertical or one of the two diagonals. The votes are averaged per square block as
+ * doubled angles, so that opposite directions (a ridge going left or right) add up instead of
+ * cancelling out. The pairs are counted 64 pixels at a time from the bit planes of the skeleton,
+ * and every row of blocks is independent, so the field can be computed in parallel.
+ * <p>
+ * The orientation of a minutia is then read from the field, interpolated between the 4 closest
+ * blocks, and only its sense (which of the two ends of the ridge it points to) is decided from the
+ * few pixels connected to it. This avoids a regression over the whole
+ * {@link Fingerprint#ORIENTATION_DISTANCE} window for every minutia, at the price of a smoother,
+ * less local orientation than {@link Fingerprint#computeOrientation(boolean[][], int, int, int)}.
+ * <p>
+ * The buffers used for the sense are kept between calls, so instances are not thread-safe.
+ */
+public final class OrientationField {
+
+    /**
+     * The default width and height of the blocks, in pixels.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 16;
+
+    // the distance of the connected pixels deciding the sense of a minutia
+    private static final int SENSE_DISTANCE = 4;
+
+    // the skeleton the field was computed from
+    private final BinaryImage skeleton;
+
+    // the dimensions of the field
+    private final int blockSize;
+    private final int numBlockRows;
+    private final int numBlockCols;
+
+    // the sum of the votes of each block, as the cosine and sine of the doubled angles
+    private final double[] cos2;
+    private final double[] sin2;
+
+    // the buffers used to decide the sense of the minutiae
+    private final ConnectedPixels window = new ConnectedPixels();
+    private OrientationEstimator fallback;
+
+    /**
+     * Computes the orientation field of a skeleton.
+     *
+     * @param skeleton  the thinned image.
+     * @param blockSize the width and height of the blocks, a power of two between 1 and 64.
+     * @throws IllegalArgumentException if the block size is not a power of two between 1 and 64.
+     */
+    public OrientationField(BinaryImage skeleton, int blockSize) {
+        this(skeleton, blockSize, null);
+    }
+
+    /**
+     * Computes the orientation field of a skeleton, splitting the rows of blocks across a pool.
+     *
+     * @param skeleton  the thinned image.
+     * @param blockSize the width and height of the blocks, a power of two between 1 and 64.
+     * @param pool      the pool computing the rows of blocks, or <code>null</code> to compute
+     *                  them on the calling thread.
+     * @throws IllegalArgumentException if the block size is not a power of two between 1 and 64.
+     */
+    public OrientationField(BinaryImage skeleton, int blockSize, ForkJoinPool pool) {
+
+        // the blocks must not straddle two words
+        if (blockSize <= 0 || blockSize > BinaryImage.WORD_SIZE || Integer.bitCount(blockSize) != 1) {
+            throw new IllegalArgumentException("block size must be a power of two between 1 and 64, current size: "
+                    + blockSize);
+        }
+
+        this.skeleton = skeleton;
+        this.blockSize = blockSize;
+        this.numBlockRows = Math.max(1, (skeleton.getHeight() + blockSize - 1) / blockSize);
+        this.numBlockCols = Math.max(1, (skeleton.getWidth() + blockSize - 1) / blockSize);
+        this.cos2 = new double[numBlockRows * numBlockCols];
+        this.sin2 = new double[numBlockRows * numBlockCols];
+
+        if (pool == null) {
+            computeBlockRows(0, numBlockRows);
+        } else {
+            pool.invoke(new BlockRowsTask(0, numBlockRows));
+        }
+    }
+
+    /**
+     * @return the width and height of the blocks, in pixels
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Computes the orientation of the minutia at coordinates <code>(row, col)</code> of the skeleton.
+     * <p>
+     * Where the field holds no ridge at all, the orientation is computed with the per-minutia
+     * regression instead.
+     *
+     * @param row the first coordinate of the minutia.
+     * @param col the second coordinate of the minutia.
+     * @return The orientation in degrees, between <code>0</code> and <code>359</code>.
+     */
+    public int computeOrientation(int row, int col) {
+
+        // region interpolating the field
+
+        // the position of the minutia relatively to the centers of the blocks
+        final double BLOCK_ROW = (row - (blockSize - 1) / 2.0) / blockSize;
+        final double BLOCK_COL = (col - (blockSize - 1) / 2.0) / blockSize;
+
+        // the 4 closest blocks, clamped to the field
+        final int ROW_0 = clamp((int) Math.floor(BLOCK_ROW), 0, numBlockRows - 1);
+        final int COL_0 = clamp((int) Math.floor(BLOCK_COL), 0, numBlockCols - 1);
+        final int ROW_1 = Math.min(ROW_0 + 1, numBlockRows - 1);
+        final int COL_1 = Math.min(COL_0 + 1, numBlockCols - 1);
+
+        // the weights of the blocks below and to the right
+        final double ROW_WEIGHT = Math.max(0, Math.min(1, BLOCK_ROW - ROW_0));
+        final double COL_WEIGHT = Math.max(0, Math.min(1, BLOCK_COL - COL_0));
+
+        final double COS_2 = interpolate(cos2, ROW_0, COL_0, ROW_1, COL_1, ROW_WEIGHT, COL_WEIGHT);
+        final double SIN_2 = interpolate(sin2, ROW_0, COL_0, ROW_1, COL_1, ROW_WEIGHT, COL_WEIGHT);
+
+        // if there is no ridge around the minutia, falls back to the regression
+        if (COS_2 == 0 && SIN_2 == 0) {
+            if (fallback == null) {
+                fallback = new OrientationEstimator();
+            }
+            return fallback.computeOrientation(skeleton, row, col, Fingerprint.ORIENTATION_DISTANCE);
+        }
+
+        // endregion
+
+        // region choosing the sense
+
+        // the direction of the ridges, between -PI / 2 and PI / 2 (x growing to the right and y upwards)
+        double angle = Math.atan2(SIN_2, COS_2) / 2;
+
+        // the closest pixels of the ridge of the minutia should be in front of it
+        window.compute(skeleton, row, col, SENSE_DISTANCE);
+
+        final double COS = Math.cos(angle);
+        final double SIN = Math.sin(angle);
+        double projection = 0;
+
+        for (int i = 0; i < window.size(); i++) {
+            projection += (window.getCol(i) - col) * COS + (row - window.getRow(i)) * SIN;
+        }
+
+        // if they are behind it, turns the angle around
+        if (projection < 0) {
+            angle += Math.PI;
+        }
+
+        // endregion
+
+        return Math.floorMod((int) Math.round(Math.toDegrees(angle)), 360);
+    }
+
+    // region field computation helper methods
+
+    /**
+     * Counts the votes of the pairs of pixels in a range of rows of blocks
+     * @param fromBlockRow the first row of blocks (included)
+     * @param toBlockRow the last row of blocks (excluded)
+     */
+    private void computeBlockRows(int fromBlockRow, int toBlockRow) {
+
+        final long[] WORDS = skeleton.words();
+        final int IMAGE_HEIGHT = skeleton.getHeight();
+        final int WORDS_PER_ROW = skeleton.getWordsPerRow();
+
+        // the number of blocks per word, and the bits of the first block of a word
+        final int BLOCKS_PER_WORD = BinaryImage.WORD_SIZE / blockSize;
+        final long BLOCK_MASK = blockSize == BinaryImage.WORD_SIZE ? -1L : (1L << blockSize) - 1;
+
+        final int FROM_ROW = fromBlockRow * blockSize;
+        final int TO_ROW = Math.min(IMAGE_HEIGHT, toBlockRow * blockSize);
+
+        // loops through every word of the rows...
+        for (int y = FROM_ROW; y < TO_ROW; y++) {
+            for (int w = 0; w < WORDS_PER_ROW; w++) {
+
+                final long PIXELS = WORDS[y * WORDS_PER_ROW + w];
+
+                if (PIXELS == 0) {
+                    continue;
+                }
+
+                // ...pairs every black pixel with its neighbours on the right, above, above right and above left
+                final long HORIZONTAL = PIXELS & BitPlanes.eastNeighbours(WORDS, y, IMAGE_HEIGHT, WORDS_PER_ROW, w);
+                final long VERTICAL = PIXELS & BitPlanes.row(WORDS, y - 1, IMAGE_HEIGHT, WORDS_PER_ROW, w);
+                final long RISING = PIXELS & BitPlanes.eastNeighbours(WORDS, y - 1, IMAGE_HEIGHT, WORDS_PER_ROW, w);
+                final long FALLING = PIXELS & BitPlanes.westNeighbours(WORDS, y - 1, IMAGE_HEIGHT, WORDS_PER_ROW, w);
+
+                // ...and adds their votes to the blocks of the word
+                for (int b = 0; b < BLOCKS_PER_WORD; b++) {
+
+                    final int BLOCK_COL = w * BLOCKS_PER_WORD + b;
+                    if (BLOCK_COL >= numBlockCols) {
+                        break;
+                    }
+
+                    final long MASK = BLOCK_MASK << (b * blockSize);
+                    final int BLOCK = (y / blockSize) * numBlockCols + BLOCK_COL;
+
+                    // doubled angles: 0 for horizontal, 180 for vertical, 90 and 270 for the diagonals
+                    cos2[BLOCK] += Long.bitCount(HORIZONTAL & MASK) - Long.bitCount(VERTICAL & MASK);
+                    sin2[BLOCK] += Long.bitCount(RISING & MASK) - Long.bitCount(FALLING & MASK);
+                }
+            }
+        }
+    }
+
+    /**
+     * Interpolates the value of the field between 4 blocks
+     * @return the weighted sum of the values of the blocks
+     */
+    private double interpolate(double[] values, int row0, int col0, int row1, int col1,
+                               double rowWeight, double colWeight) {
+
+        final double TOP = values[row0 * numBlockCols + col0] * (1 - colWeight)
+                + values[row0 * numBlockCols + col1] * colWeight;
+        final double BOTTOM = values[row1 * numBlockCols + col0] * (1 - colWeight)
+                + values[row1 * numBlockCols + col1] * colWeight;
+
+        return TOP * (1 - rowWeight) + BOTTOM * rowWeight;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Computes a range of rows of blocks, splitting it in two until it is a single row
+     */
+    @SuppressWarnings("serial")
+    private final class BlockRowsTask extends RecursiveAction {
+
+        private final int fromBlockRow;
+        private final int toBlockRow;
+
+        BlockRowsTask(int fromBlockRow, int toBlockRow) {
+            this.fromBlockRow = fromBlockRow;
+            this.toBlockRow = toBlockRow;
+        }
+
+        @Override
+        protected void compute() {
+
+            // if the range is a single row, computes it directly
+            if (toBlockRow - fromBlockRow <= 1) {
+                computeBlockRows(fromBlockRow, toBlockRow);
+                return;
+            }
+
+            // otherwise splits it in two, each half writing its own blocks
+            final int MIDDLE = (fromBlockRow + toBlockRow) >>> 1;
+            invokeAll(new BlockRowsTask(fromBlockRow, MIDDLE), new BlockRowsTask(MIDDLE, toBlockRow));
+        }
+    }
+
+    // endregion
+}
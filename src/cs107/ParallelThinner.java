@@ -0,0 +1,118 @@
+package cs107;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Thinning algorithm splitting each step across several cores.
+ * <p>
+ * The image is split into horizontal bands of rows, each band being thinned by its own fork-join
+ * task with the word-parallel kernel of {@link BitSlicedThinner}. A step reads one buffer and
+ * writes the other: every band reads the row directly above and below it (its one-row halos) from
+ * the shared buffer being read, and writes only its own rows to the other buffer. Since each row
+ * starts on a new word, no two bands ever write the same word. All the bands of a step are joined
+ * before the next step starts, which keeps the result exactly the same as the sequential algorithm.
+ * <p>
+ * Each call allocates its own buffers, so a single instance can be shared between threads.
+ */
+public final class ParallelThinner implements Thinner {
+
+    // the minimum number of rows thinned by a single task
+    private static final int MIN_BAND_HEIGHT = 16;
+
+    // the pool running the bands
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a thinner running on the common fork-join pool
+     */
+    public ParallelThinner() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a thinner running on a caller-supplied pool, whose parallelism bounds the cores used
+     * to thin an image, and which the caller shuts down once done
+     * @param pool the pool running the bands
+     */
+    public ParallelThinner(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public BinaryImage thin(BinaryImage image) {
+
+        // the buffers the steps read from and write to
+        final BinaryImage BUFFER_1 = image.copy();
+        final BinaryImage BUFFER_2 = new BinaryImage(image.getHeight(), image.getWidth());
+
+        // the number of rows thinned by each task
+        final int BAND_HEIGHT = Math.max(MIN_BAND_HEIGHT, ceilDiv(image.getHeight(), pool.getParallelism()));
+
+        // the number of pixels deleted by the second step of the current iteration
+        int deletedInStep2;
+
+        // while the second step of the last iteration still removed some pixels...
+        do {
+            // ...applies both steps, waiting for every band of a step before starting the next one
+            pool.invoke(new BandTask(BUFFER_1, BUFFER_2, 1, 0, image.getHeight(), BAND_HEIGHT));
+            deletedInStep2 = pool.invoke(new BandTask(BUFFER_2, BUFFER_1, 0, 0, image.getHeight(), BAND_HEIGHT));
+
+        } while (deletedInStep2 != 0);
+
+        // returns the thinned image
+        return BUFFER_1;
+    }
+
+    /**
+     * @return the pool running the bands
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    private static int ceilDiv(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    /**
+     * Applies one thinning step to a range of rows, splitting it into bands
+     */
+    @SuppressWarnings("serial")
+    private static final class BandTask extends RecursiveTask<Integer> {
+
+        private final BinaryImage source;
+        private final BinaryImage destination;
+        private final int step;
+        private final int fromRow;
+        private final int toRow;
+        private final int bandHeight;
+
+        BandTask(BinaryImage source, BinaryImage destination, int step, int fromRow, int toRow, int bandHeight) {
+            this.source = source;
+            this.destination = destination;
+            this.step = step;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.bandHeight = bandHeight;
+        }
+
+        @Override
+        protected Integer compute() {
+
+            // if the range is small enough, thins it directly
+            if (toRow - fromRow <= bandHeight) {
+                return BitSlicedThinner.thinningStep(source, destination, step, fromRow, toRow);
+            }
+
+            // otherwise splits it in two, on a band boundary
+            final int MIDDLE = fromRow + ceilDiv((toRow - fromRow) / 2, bandHeight) * bandHeight;
+
+            BandTask upper = new BandTask(source, destination, step, fromRow, MIDDLE, bandHeight);
+            BandTask lower = new BandTask(source, destination, step, MIDDLE, toRow, bandHeight);
+
+            upper.fork();
+            return lower.compute() + upper.join();
+        }
+    }
+}
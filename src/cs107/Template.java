@@ -0,0 +1,147 @@
+package cs107;
+
+import java.util.Objects;
+
+/**
+ * The minutiae extracted from a fingerprint, with the dimensions of its image and the parameters
+ * of the extraction.
+ * <p>
+ * A template is everything needed to compare a fingerprint once its image has been thinned and
+ * its minutiae extracted, so it can be stored with {@link TemplateFormat} and compared later
+ * without reading the image again. Templates are immutable.
+ */
+public final class Template {
+
+    // the dimensions of the image the minutiae were extracted from
+    private final int width;
+    private final int height;
+
+    // the parameters of the extraction
+    private final Fingerprint.OrientationMode orientationMode;
+    private final int orientationDistance;
+
+    private final MinutiaeSet minutiae;
+
+    /**
+     * Creates a template.
+     *
+     * @param width               the width of the image, in pixels.
+     * @param height              the height of the image, in pixels.
+     * @param orientationMode     the method which computed the orientation of the minutiae.
+     * @param orientationDistance the distance used to compute the orientation of the minutiae.
+     * @param minutiae            the minutiae, which are copied.
+     * @throws IllegalArgumentException if a dimension or the distance is negative, or if a minutia
+     *                                  is outside of the image.
+     */
+    public Template(int width, int height, Fingerprint.OrientationMode orientationMode, int orientationDistance,
+                    MinutiaeSet minutiae) {
+
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("dimensions must be positive, current dimensions: "
+                    + width + "x" + height);
+        }
+
+        if (orientationDistance < 0) {
+            throw new IllegalArgumentException("orientation distance must be positive, current distance: "
+                    + orientationDistance);
+        }
+
+        // the minutiae bound the memory used to compare them, so they must stay within the image
+        for (int i = 0; i < minutiae.size(); i++) {
+            final int ROW = minutiae.getRow(i);
+            final int COL = minutiae.getCol(i);
+
+            if (ROW < 0 || ROW >= height || COL < 0 || COL >= width) {
+                throw new IllegalArgumentException("minutiae must be inside the image of " + width + "x" + height
+                        + ", current minutia: (" + ROW + ", " + COL + ")");
+            }
+        }
+
+        this.width = width;
+        this.height = height;
+        this.orientationMode = Objects.requireNonNull(orientationMode);
+        this.orientationDistance = orientationDistance;
+        this.minutiae = minutiae.copy();
+    }
+
+    /**
+     * Thins a fingerprint and extracts its minutiae, with the current orientation mode.
+     *
+     * @param image the image of the fingerprint, which is not modified.
+     * @return the template of the fingerprint.
+     * @see Fingerprint#extract(BinaryImage)
+     */
+    public static Template extract(BinaryImage image) {
+
+        // the mode is read once, so that the minutiae are extracted with the mode recorded
+        final Fingerprint.OrientationMode MODE = Fingerprint.getOrientationMode();
+        final MinutiaeSet MINUTIAE = Fingerprint.extract(Fingerprint.thin(image), MODE);
+
+        return new Template(image.getWidth(), image.getHeight(), MODE, Fingerprint.ORIENTATION_DISTANCE, MINUTIAE);
+    }
+
+    /**
+     * @return the width of the image, in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the image, in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the method which computed the orientation of the minutiae
+     */
+    public Fingerprint.OrientationMode getOrientationMode() {
+        return orientationMode;
+    }
+
+    /**
+     * @return the distance used to compute the orientation of the minutiae
+     */
+    public int getOrientationDistance() {
+        return orientationDistance;
+    }
+
+    /**
+     * @return the minutiae, which must not be modified
+     */
+    public MinutiaeSet getMinutiae() {
+        return minutiae;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+
+        if (this == other) {
+            return true;
+        }
+
+        if (!(other instanceof Template)) {
+            return false;
+        }
+
+        Template that = (Template) other;
+        return width == that.width
+                && height == that.height
+                && orientationMode == that.orientationMode
+                && orientationDistance == that.orientationDistance
+                && minutiae.equals(that.minutiae);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(width, height, orientationMode, orientationDistance, minutiae);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Template[%dx%d, %s, distance %d, %d minutiae]", width, height, orientationMode,
+                orientationDistance, minutiae.size());
+    }
+}
@@ -0,0 +1,304 @@
+package cs107;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Cache of the templates extracted from images, keyed by the content of the images.
+ * <p>
+ * The key of an image is the SHA-256 digest of its bytes and of the parameters of the extraction
+ * (the orientation mode when the image is looked up, and {@link Fingerprint#ORIENTATION_DISTANCE}),
+ * so the same image submitted twice, under any name, is only read, thinned and extracted once. At
+ * most a given number of templates are kept, the least recently used one being evicted first,
+ * apart from the templates being extracted, which are only evicted once they are done.
+ * <p>
+ * Instances are thread-safe. The extraction runs outside of the lock of the cache, and the
+ * threads looking up an image being extracted wait for its template instead of extracting it
+ * again, so an image is never extracted twice at the same time. An extraction which fails is not
+ * cached, and its exception is thrown to every thread waiting for it.
+ */
+public final class TemplateCache {
+
+    // the largest number of templates kept
+    private final int maxEntries;
+
+    // the templates, extracted or being extracted, from the least recently used one
+    private final LinkedHashMap<Key, CompletableFuture<Template>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // the number of lookups finding their template, extracted or not, of lookups extracting it, and of evictions
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxEntries the largest number of templates kept.
+     * @throws IllegalArgumentException if the number of templates is not strictly positive.
+     */
+    public TemplateCache(int maxEntries) {
+
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("number of entries must be strictly positive, current number: "
+                    + maxEntries);
+        }
+
+        this.maxEntries = maxEntries;
+    }
+
+    // region lookups
+
+    /**
+     * Returns the template of an image file, extracting it if it is not cached.
+     *
+     * @param imageFile the path of the image.
+     * @return the template of the image.
+     * @throws IOException if the file cannot be read or is not an image.
+     */
+    public Template get(Path imageFile) throws IOException {
+        return get(Files.readAllBytes(imageFile));
+    }
+
+    /**
+     * Returns the template of an image, extracting it if it is not cached.
+     *
+     * @param imageBytes the content of an image file, which must not be modified.
+     * @return the template of the image.
+     * @throws IOException if the content is not an image.
+     */
+    public Template get(byte[] imageBytes) throws IOException {
+
+        // the mode is read once, so that the template is extracted with the mode of its key
+        final Fingerprint.OrientationMode MODE = Fingerprint.getOrientationMode();
+        final Key KEY = new Key(digest(imageBytes, MODE));
+
+        final CompletableFuture<Template> FUTURE;
+        boolean extracting = false;
+
+        // finds the template, or becomes the thread extracting it
+        synchronized (entries) {
+
+            CompletableFuture<Template> future = entries.get(KEY);
+
+            if (future != null) {
+                hits++;
+            } else {
+                misses++;
+                future = new CompletableFuture<>();
+                entries.put(KEY, future);
+                extracting = true;
+                evict();
+            }
+
+            FUTURE = future;
+        }
+
+        if (extracting) {
+            try {
+                final Template TEMPLATE = extract(imageBytes, MODE);
+
+                // the template can now be evicted, if the cache went over its size meanwhile
+                synchronized (entries) {
+                    FUTURE.complete(TEMPLATE);
+                    evict();
+                }
+                return TEMPLATE;
+
+            } catch (IOException | RuntimeException | Error e) {
+
+                // the next lookup tries again
+                synchronized (entries) {
+                    entries.remove(KEY, FUTURE);
+                }
+                FUTURE.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        return await(FUTURE);
+    }
+
+    /**
+     * Removes every template, keeping the counters
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    // endregion
+
+    // region counters
+
+    /**
+     * @return the number of templates cached, including the ones being extracted
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the largest number of templates kept
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return the number of lookups which found their template in the cache, extracted or being extracted
+     */
+    public long getHits() {
+        synchronized (entries) {
+            return hits;
+        }
+    }
+
+    /**
+     * @return the number of lookups which extracted their template
+     */
+    public long getMisses() {
+        synchronized (entries) {
+            return misses;
+        }
+    }
+
+    /**
+     * @return the number of templates evicted to make room for new ones
+     */
+    public long getEvictions() {
+        synchronized (entries) {
+            return evictions;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (entries) {
+            return String.format("%d/%d templates, %d hits, %d misses, %d evictions", entries.size(), maxEntries,
+                    hits, misses, evictions);
+        }
+    }
+
+    // endregion
+
+    // region helper methods
+
+    /**
+     * Removes the least recently used templates until there are at most the largest number of
+     * templates, while holding the lock.
+     * <p>
+     * The templates still being extracted are never evicted, otherwise a lookup of the same image
+     * would extract it a second time: while more of them are extracted than there is room for,
+     * the cache holds more than the largest number of templates, until they are done.
+     */
+    private void evict() {
+        final Iterator<Map.Entry<Key, CompletableFuture<Template>>> ENTRIES = entries.entrySet().iterator();
+
+        while (entries.size() > maxEntries && ENTRIES.hasNext()) {
+            if (ENTRIES.next().getValue().isDone()) {
+                ENTRIES.remove();
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Decodes, thins and extracts an image
+     */
+    private static Template extract(byte[] imageBytes, Fingerprint.OrientationMode mode) throws IOException {
+
+        final BinaryImage IMAGE = Helper.decodeBinaryImage(imageBytes);
+
+        if (IMAGE == null) {
+            throw new IOException("not an image: " + imageBytes.length + " bytes");
+        }
+
+        final MinutiaeSet MINUTIAE = Fingerprint.extract(Fingerprint.thin(IMAGE), mode);
+        return new Template(IMAGE.getWidth(), IMAGE.getHeight(), mode, Fingerprint.ORIENTATION_DISTANCE, MINUTIAE);
+    }
+
+    /**
+     * Waits for a template extracted by another thread
+     * @throws IOException if the extraction failed to read the image
+     */
+    private static Template await(CompletableFuture<Template> future) throws IOException {
+        try {
+            return future.join();
+
+        } catch (CompletionException e) {
+
+            final Throwable CAUSE = e.getCause();
+
+            if (CAUSE instanceof IOException) {
+                throw new IOException(CAUSE.getMessage(), CAUSE);
+            }
+            if (CAUSE instanceof RuntimeException) {
+                throw (RuntimeException) CAUSE;
+            }
+            if (CAUSE instanceof Error) {
+                throw (Error) CAUSE;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the SHA-256 digest of the bytes of an image and of the parameters of the extraction
+     */
+    private static byte[] digest(byte[] imageBytes, Fingerprint.OrientationMode mode) {
+
+        final MessageDigest DIGEST;
+
+        try {
+            DIGEST = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform must support SHA-256
+            throw new IllegalStateException(e);
+        }
+
+        DIGEST.update(imageBytes);
+        DIGEST.update((byte) mode.ordinal());
+        DIGEST.update((byte) (Fingerprint.ORIENTATION_DISTANCE >>> 8));
+        DIGEST.update((byte) Fingerprint.ORIENTATION_DISTANCE);
+
+        return DIGEST.digest();
+    }
+
+    /**
+     * A digest, compared by content
+     */
+    private static final class Key {
+
+        private final byte[] digest;
+        private final int hash;
+
+        Key(byte[] digest) {
+            this.digest = digest;
+            this.hash = Arrays.hashCode(digest);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(digest, ((Key) other).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // endregion
+}
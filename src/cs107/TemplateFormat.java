@@ -0,0 +1,349 @@
+package cs107;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compact binary format of a {@link Template}.
+ * <p>
+ * A template is a header of {@link #HEADER_SIZE} bytes followed by one record of
+ * {@link #RECORD_SIZE} bytes per minutia, every value being big-endian:
+ * <pre>
+ *  offset  size  content
+ *       0     4  the magic number "FPTM"
+ *       4     1  the version of the format, {@link #VERSION}
+ *       5     1  the orientation mode, by ordinal in {@link Fingerprint.OrientationMode}
+ *       6     2  the orientation distance
+ *       8     2  the width of the image
+ *      10     2  the height of the image
+ *      12     4  the number of minutiae
+ *      16     6  the first minutia: its row, column and orientation, 2 bytes each
+ *      22   ...  the other minutiae
+ * </pre>
+ * The dimensions, coordinates, orientations and distance are unsigned, so they must all be
+ * between <code>0</code> and {@link #MAX_VALUE}. A template of 100 minutiae takes 616 bytes.
+ * <p>
+ * A reader refuses any other version than its own: a new version of the format must change
+ * {@link #VERSION}, and new orientation modes must be added at the end of the enum.
+ */
+public final class TemplateFormat {
+
+    /**
+     * The first 4 bytes of every template, "FPTM" in ASCII.
+     */
+    public static final int MAGIC = 0x4650544D;
+
+    /**
+     * The version of the format written and read.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The size of the header, in bytes.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * The size of the record of a minutia, in bytes.
+     */
+    public static final int RECORD_SIZE = 6;
+
+    /**
+     * The largest value of a dimension, a coordinate, an orientation or a distance.
+     */
+    public static final int MAX_VALUE = 0xFFFF;
+
+    // the offsets of the fields of the header
+    static final int VERSION_OFFSET = 4;
+    static final int MODE_OFFSET = 5;
+    static final int DISTANCE_OFFSET = 6;
+    static final int WIDTH_OFFSET = 8;
+    static final int HEIGHT_OFFSET = 10;
+    static final int COUNT_OFFSET = 12;
+
+    // the number of records read at once from a stream
+    private static final int CHUNK_RECORDS = 4096;
+
+    private TemplateFormat() {}
+
+    // region sizes
+
+    /**
+     * @param template the template
+     * @return the number of bytes taken by the template
+     */
+    public static int size(Template template) {
+        return size(template.getMinutiae().size());
+    }
+
+    /**
+     * @param numMinutiae the number of minutiae of a template
+     * @return the number of bytes taken by a template with this number of minutiae
+     */
+    public static int size(int numMinutiae) {
+        return HEADER_SIZE + numMinutiae * RECORD_SIZE;
+    }
+
+    // endregion
+
+    // region writing
+
+    /**
+     * Writes a template at the position of a buffer, and moves the position after it.
+     *
+     * @param template the template.
+     * @param buffer   the buffer, with at least {@link #size(Template)} bytes remaining.
+     * @throws IllegalArgumentException if a value of the template cannot be stored on 2 bytes.
+     * @throws java.nio.BufferOverflowException if the buffer is too small.
+     */
+    public static void write(Template template, ByteBuffer buffer) {
+
+        final MinutiaeSet MINUTIAE = template.getMinutiae();
+
+        // checks every value first, so that nothing is written for an invalid template
+        checkValue("width", template.getWidth());
+        checkValue("height", template.getHeight());
+        checkValue("orientation distance", template.getOrientationDistance());
+
+        for (int i = 0; i < MINUTIAE.size(); i++) {
+            checkValue("row", MINUTIAE.getRow(i));
+            checkValue("column", MINUTIAE.getCol(i));
+            checkValue("orientation", MINUTIAE.getOrientation(i));
+        }
+
+        final ByteBuffer OUT = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+
+        OUT.putInt(MAGIC);
+        OUT.put((byte) VERSION);
+        OUT.put((byte) template.getOrientationMode().ordinal());
+        OUT.putShort((short) template.getOrientationDistance());
+        OUT.putShort((short) template.getWidth());
+        OUT.putShort((short) template.getHeight());
+        OUT.putInt(MINUTIAE.size());
+
+        for (int i = 0; i < MINUTIAE.size(); i++) {
+            OUT.putShort((short) MINUTIAE.getRow(i));
+            OUT.putShort((short) MINUTIAE.getCol(i));
+            OUT.putShort((short) MINUTIAE.getOrientation(i));
+        }
+
+        buffer.position(OUT.position());
+    }
+
+    /**
+     * @param template the template
+     * @return a new array containing the template
+     * @throws IllegalArgumentException if a value of the template cannot be stored on 2 bytes.
+     */
+    public static byte[] toBytes(Template template) {
+        final byte[] BYTES = new byte[size(template)];
+        write(template, ByteBuffer.wrap(BYTES));
+        return BYTES;
+    }
+
+    /**
+     * Writes a template to a stream, which is not closed.
+     *
+     * @param template the template.
+     * @param out      the stream.
+     * @throws IOException if the stream cannot be written.
+     * @throws IllegalArgumentException if a value of the template cannot be stored on 2 bytes.
+     */
+    public static void write(Template template, OutputStream out) throws IOException {
+        out.write(toBytes(template));
+    }
+
+    /**
+     * Writes a template to a file, replacing it if it exists.
+     *
+     * @param template the template.
+     * @param path     the path of the file.
+     * @throws IOException if the file cannot be written.
+     * @throws IllegalArgumentException if a value of the template cannot be stored on 2 bytes.
+     */
+    public static void write(Template template, Path path) throws IOException {
+        Files.write(path, toBytes(template));
+    }
+
+    // endregion
+
+    // region reading
+
+    /**
+     * Reads a template at the position of a buffer, and moves the position after it.
+     *
+     * @param buffer the buffer.
+     * @return the template.
+     * @throws IOException if the buffer does not start with a template of this version, or if a
+     *                     minutia of the template is outside of its image.
+     */
+    public static Template read(ByteBuffer buffer) throws IOException {
+
+        final ByteBuffer IN = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        final int START = IN.position();
+        final int NUM_MINUTIAE = checkHeader(IN);
+
+        if (IN.remaining() < size(NUM_MINUTIAE)) {
+            throw new EOFException("template truncated: " + size(NUM_MINUTIAE) + " bytes expected, "
+                    + IN.remaining() + " found");
+        }
+
+        IN.position(START + HEADER_SIZE);
+        final MinutiaeSet MINUTIAE = new MinutiaeSet(NUM_MINUTIAE);
+
+        for (int i = 0; i < NUM_MINUTIAE; i++) {
+            MINUTIAE.add(Short.toUnsignedInt(IN.getShort()), Short.toUnsignedInt(IN.getShort()),
+                    Short.toUnsignedInt(IN.getShort()));
+        }
+
+        final Template TEMPLATE = template(IN, START, MINUTIAE);
+
+        buffer.position(IN.position());
+        return TEMPLATE;
+    }
+
+    /**
+     * @param bytes the bytes of a template, as returned by {@link #toBytes(Template)}
+     * @return the template
+     * @throws IOException if the bytes are not a template of this version.
+     */
+    public static Template fromBytes(byte[] bytes) throws IOException {
+        return read(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Reads a template from a stream, which is not closed, and no further than the template.
+     *
+     * @param in the stream.
+     * @return the template.
+     * @throws IOException if the stream cannot be read or does not continue with a template of this version.
+     */
+    public static Template read(InputStream in) throws IOException {
+
+        final DataInputStream DATA = new DataInputStream(in);
+
+        // reads the header first, to know the number of minutiae
+        final ByteBuffer HEADER = ByteBuffer.allocate(HEADER_SIZE);
+        DATA.readFully(HEADER.array());
+
+        final int NUM_MINUTIAE = checkHeader(HEADER);
+
+        // the count of the header is not trusted: the records are read by chunks into a set which
+        // grows as they arrive, so a truncated stream fails before much memory is allocated
+        final ByteBuffer CHUNK = ByteBuffer.allocate(Math.min(NUM_MINUTIAE, CHUNK_RECORDS) * RECORD_SIZE);
+        final MinutiaeSet MINUTIAE = new MinutiaeSet(Math.min(NUM_MINUTIAE, CHUNK_RECORDS));
+
+        for (int read = 0; read < NUM_MINUTIAE; ) {
+
+            final int RECORDS = Math.min(NUM_MINUTIAE - read, CHUNK_RECORDS);
+
+            try {
+                DATA.readFully(CHUNK.array(), 0, RECORDS * RECORD_SIZE);
+            } catch (EOFException e) {
+                throw new EOFException("template truncated: " + size(NUM_MINUTIAE) + " bytes expected, end of stream within the first "
+                        + size(read + RECORDS) + " bytes");
+            }
+
+            CHUNK.clear();
+            for (int i = 0; i < RECORDS; i++) {
+                MINUTIAE.add(Short.toUnsignedInt(CHUNK.getShort()), Short.toUnsignedInt(CHUNK.getShort()),
+                        Short.toUnsignedInt(CHUNK.getShort()));
+            }
+
+            read += RECORDS;
+        }
+
+        return template(HEADER, 0, MINUTIAE);
+    }
+
+    /**
+     * Reads a template from a file.
+     *
+     * @param path the path of the file.
+     * @return the template.
+     * @throws IOException if the file cannot be read or is not a template of this version.
+     */
+    public static Template read(Path path) throws IOException {
+        return fromBytes(Files.readAllBytes(path));
+    }
+
+    // endregion
+
+    // region helper methods
+
+    /**
+     * Checks the header of a template, without moving the position of the buffer
+     * @param in a big-endian buffer positioned at the start of a template
+     * @return the number of minutiae announced by the header
+     * @throws IOException if the header is not the header of a template of this version
+     */
+    static int checkHeader(ByteBuffer in) throws IOException {
+
+        if (in.remaining() < HEADER_SIZE) {
+            throw new EOFException("template truncated: header of " + HEADER_SIZE + " bytes expected, "
+                    + in.remaining() + " found");
+        }
+
+        final int START = in.position();
+
+        final int MAGIC_READ = in.getInt(START);
+        if (MAGIC_READ != MAGIC) {
+            throw new IOException(String.format("not a template: magic number %08x instead of %08x", MAGIC_READ, MAGIC));
+        }
+
+        final int VERSION_READ = Byte.toUnsignedInt(in.get(START + VERSION_OFFSET));
+        if (VERSION_READ != VERSION) {
+            throw new IOException("unsupported template version " + VERSION_READ + ", expected " + VERSION);
+        }
+
+        final int MODE = Byte.toUnsignedInt(in.get(START + MODE_OFFSET));
+        if (MODE >= Fingerprint.OrientationMode.values().length) {
+            throw new IOException("unknown orientation mode " + MODE);
+        }
+
+        // a template can hold at most about 357 million minutiae, far more than any image
+        final int NUM_MINUTIAE = in.getInt(START + COUNT_OFFSET);
+        if (NUM_MINUTIAE < 0 || NUM_MINUTIAE > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE) {
+            throw new IOException("invalid number of minutiae " + Integer.toUnsignedString(NUM_MINUTIAE));
+        }
+
+        return NUM_MINUTIAE;
+    }
+
+    /**
+     * Creates the template described by a header
+     * @param in a big-endian buffer holding a checked header
+     * @param start the position of the header in the buffer
+     * @param minutiae the minutiae read after the header
+     * @return the template
+     * @throws IOException if a minutia is outside of the image
+     */
+    private static Template template(ByteBuffer in, int start, MinutiaeSet minutiae) throws IOException {
+
+        try {
+            return new Template(Short.toUnsignedInt(in.getShort(start + WIDTH_OFFSET)),
+                    Short.toUnsignedInt(in.getShort(start + HEIGHT_OFFSET)),
+                    Fingerprint.OrientationMode.values()[in.get(start + MODE_OFFSET)],
+                    Short.toUnsignedInt(in.getShort(start + DISTANCE_OFFSET)),
+                    minutiae);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("invalid template: " + e.getMessage(), e);
+        }
+    }
+
+    private static void checkValue(String name, int value) {
+        if (value < 0 || value > MAX_VALUE) {
+            throw new IllegalArgumentException(name + " must be between 0 and " + MAX_VALUE + ", current " + name
+                    + ": " + value);
+        }
+    }
+
+    // endregion
+}
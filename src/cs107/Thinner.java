@@ -0,0 +1,20 @@
+package cs107;
+
+/**
+ * Algorithm computing the skeleton of a bit-packed image.
+ * <p>
+ * Every implementation must give exactly the same skeleton as {@link Fingerprint#thin(boolean[][])}.
+ * In particular, the thinning stops as soon as the second step of an iteration deletes nothing,
+ * even if the first step of that iteration deleted some pixels.
+ */
+public interface Thinner {
+
+    /**
+     * Compute the skeleton of a bit-packed image.
+     *
+     * @param image bit-packed image, left untouched.
+     * @return a new image containing the value of each pixel after
+     *         applying the thinning algorithm.
+     */
+    BinaryImage thin(BinaryImage image);
+}
@@ -0,0 +1,184 @@
+package cs107;
+
+/**
+ * Lookup tables deciding whether a pixel is removed by a thinning step.
+ * <p>
+ * The 8 neighbours of a pixel are packed into a single <code>int</code> between
+ * <code>0</code> and <code>255</code>, neighbour <code>i</code> (following the convention described in
+ * {@link Fingerprint#getNeighbours(boolean[][], int, int)}) being stored in bit <code>i</code>.
+ * Every possible neighbourhood is evaluated once with the reference conditions of
+ * {@link Fingerprint#thinningStep(boolean[][], int)}, so that deciding whether a black pixel
+ * should be deleted becomes a single table load, with no allocation. The number of transitions,
+ * used to find the minutiae, is tabulated the same way.
+ */
+public final class ThinningTable {
+
+    // the number of distinct neighbourhoods of a pixel
+    private static final int NUM_NEIGHBOURHOODS = 1 << 8;
+
+    // whether a black pixel with the given neighbourhood is deleted during each step
+    private static final boolean[] STEP_1_DELETIONS = computeDeletions(1);
+    private static final boolean[] STEP_2_DELETIONS = computeDeletions(0);
+
+    // the number of white to black transitions of each neighbourhood
+    private static final byte[] TRANSITIONS = computeTransitions();
+
+    private ThinningTable() {}
+
+    /**
+     * Evaluates the deletion conditions of a step for every possible neighbourhood
+     * @param step the step to apply, Step 0 or Step 1
+     * @return the deletion table of the step
+     */
+    private static boolean[] computeDeletions(int step) {
+
+        boolean[] deletions = new boolean[NUM_NEIGHBOURHOODS];
+        boolean[] neighbours = new boolean[8];
+
+        // goes through every possible neighbourhood...
+        for (int neighbourhood = 0; neighbourhood < NUM_NEIGHBOURHOODS; neighbourhood++) {
+
+            // ...unpacks it...
+            for (int neighbour = 0; neighbour < 8; neighbour++) {
+                neighbours[neighbour] = ((neighbourhood >>> neighbour) & 1) != 0;
+            }
+
+            // ...and stores whether it leads to the pixel being deleted
+            deletions[neighbourhood] = Fingerprint.canBeDeleted(neighbours, step);
+        }
+
+        return deletions;
+    }
+
+    /**
+     * Counts the transitions of every possible neighbourhood with the reference method
+     * @return the transition table
+     */
+    private static byte[] computeTransitions() {
+
+        byte[] transitions = new byte[NUM_NEIGHBOURHOODS];
+        boolean[] neighbours = new boolean[8];
+
+        for (int neighbourhood = 0; neighbourhood < NUM_NEIGHBOURHOODS; neighbourhood++) {
+
+            for (int neighbour = 0; neighbour < 8; neighbour++) {
+                neighbours[neighbour] = ((neighbourhood >>> neighbour) & 1) != 0;
+            }
+
+            transitions[neighbourhood] = (byte) Fingerprint.transitions(neighbours);
+        }
+
+        return transitions;
+    }
+
+    /**
+     * Checks whether a black pixel should be removed during a thinning step
+     * @param neighbourhood the packed neighbours of the pixel
+     * @param step the step to apply, Step 0 or Step 1
+     * @return whether the pixel should be set to white
+     */
+    public static boolean canBeDeleted(int neighbourhood, int step) {
+        return (step == 1 ? STEP_1_DELETIONS : STEP_2_DELETIONS)[neighbourhood];
+    }
+
+    /**
+     * Counts the white to black transitions around a pixel
+     * @param neighbourhood the packed neighbours of the pixel
+     * @return the number of transitions, as computed by {@link Fingerprint#transitions(boolean[])}
+     */
+    public static int transitions(int neighbourhood) {
+        return TRANSITIONS[neighbourhood];
+    }
+
+    /**
+     * Packs the neighbours of a pixel into a single int, neighbours outside the image being white
+     * @param image array containing each pixel's boolean value
+     * @param row y-coordinates of the pixel
+     * @param col x-coordinates of the pixel
+     * @return the packed neighbours, neighbour <code>i</code> being stored in bit <code>i</code>
+     */
+    public static int neighbourhood(boolean[][] image, int row, int col) {
+
+        // whether there are pixels on each side of the current pixel
+        final boolean HAS_ABOVE = row > 0;
+        final boolean HAS_BELOW = row < image.length - 1;
+        final boolean HAS_LEFT = col > 0;
+        final boolean HAS_RIGHT = col < image[row].length - 1;
+
+        int neighbourhood = 0;
+
+        // pixels above the current pixel
+        if (HAS_ABOVE) {
+            final boolean[] ABOVE = image[row - 1];
+            if (ABOVE[col])                   neighbourhood |= 1;         // the pixel in position 0
+            if (HAS_RIGHT && ABOVE[col + 1])  neighbourhood |= 1 << 1;    // the pixel in position 1
+            if (HAS_LEFT && ABOVE[col - 1])   neighbourhood |= 1 << 7;    // the pixel in position 7
+        }
+
+        // pixels on the same row as the current pixel
+        final boolean[] CURRENT = image[row];
+        if (HAS_RIGHT && CURRENT[col + 1])    neighbourhood |= 1 << 2;    // the pixel in position 2
+        if (HAS_LEFT && CURRENT[col - 1])     neighbourhood |= 1 << 6;    // the pixel in position 6
+
+        // pixels below the current pixel
+        if (HAS_BELOW) {
+            final boolean[] BELOW = image[row + 1];
+            if (HAS_RIGHT && BELOW[col + 1])  neighbourhood |= 1 << 3;    // the pixel in position 3
+            if (BELOW[col])                   neighbourhood |= 1 << 4;    // the pixel in position 4
+            if (HAS_LEFT && BELOW[col - 1])   neighbourhood |= 1 << 5;    // the pixel in position 5
+        }
+
+        return neighbourhood;
+    }
+
+    /**
+     * Packs the neighbours of a pixel into a single int, neighbours outside the image being white
+     * @param image bit-packed image
+     * @param row y-coordinates of the pixel
+     * @param col x-coordinates of the pixel
+     * @return the packed neighbours, neighbour <code>i</code> being stored in bit <code>i</code>
+     */
+    public static int neighbourhood(BinaryImage image, int row, int col) {
+
+        final long[] WORDS = image.words();
+        final int WORDS_PER_ROW = image.getWordsPerRow();
+
+        // whether there are pixels on each side of the current pixel
+        final boolean HAS_ABOVE = row > 0;
+        final boolean HAS_BELOW = row < image.getHeight() - 1;
+        final boolean HAS_LEFT = col > 0;
+        final boolean HAS_RIGHT = col < image.getWidth() - 1;
+
+        // the index of the word containing the pixel, and of the words containing its left and right neighbours
+        final int WORD = row * WORDS_PER_ROW + (col >>> BinaryImage.ADDRESS_BITS);
+        final int LEFT_WORD = row * WORDS_PER_ROW + ((col - 1) >> BinaryImage.ADDRESS_BITS);
+        final int RIGHT_WORD = row * WORDS_PER_ROW + ((col + 1) >>> BinaryImage.ADDRESS_BITS);
+
+        int neighbourhood = 0;
+
+        // pixels above the current pixel
+        if (HAS_ABOVE) {
+            neighbourhood |= bit(WORDS[WORD - WORDS_PER_ROW], col);                             // pixel 0
+            if (HAS_RIGHT) neighbourhood |= bit(WORDS[RIGHT_WORD - WORDS_PER_ROW], col + 1) << 1; // pixel 1
+            if (HAS_LEFT)  neighbourhood |= bit(WORDS[LEFT_WORD - WORDS_PER_ROW], col - 1) << 7;  // pixel 7
+        }
+
+        // pixels on the same row as the current pixel
+        if (HAS_RIGHT) neighbourhood |= bit(WORDS[RIGHT_WORD], col + 1) << 2;                    // pixel 2
+        if (HAS_LEFT)  neighbourhood |= bit(WORDS[LEFT_WORD], col - 1) << 6;                     // pixel 6
+
+        // pixels below the current pixel
+        if (HAS_BELOW) {
+            if (HAS_RIGHT) neighbourhood |= bit(WORDS[RIGHT_WORD + WORDS_PER_ROW], col + 1) << 3; // pixel 3
+            neighbourhood |= bit(WORDS[WORD + WORDS_PER_ROW], col) << 4;                        // pixel 4
+            if (HAS_LEFT)  neighbourhood |= bit(WORDS[LEFT_WORD + WORDS_PER_ROW], col - 1) << 5;  // pixel 5
+        }
+
+        return neighbourhood;
+    }
+
+    // the value of the bit storing a column in its word
+    private static int bit(long word, int col) {
+        return (int) (word >>> col) & 1;
+    }
+}